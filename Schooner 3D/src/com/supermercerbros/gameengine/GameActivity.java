@@ -4,7 +4,6 @@ import android.app.Activity;
 import android.graphics.Color;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,6 +13,7 @@ import com.supermercerbros.gameengine.engine.Camera;
 import com.supermercerbros.gameengine.engine.DataPipe;
 import com.supermercerbros.gameengine.engine.Engine;
 import com.supermercerbros.gameengine.engine.GameRenderer;
+import com.supermercerbros.gameengine.util.Log;
 
 /**
  * An Activity that handles much of setting up the Engine and Renderer. At the
@@ -26,6 +26,10 @@ public class Schooner3D {
 	 * The default maximum number of light.
 	 */
 	public static final int DEFAULT_MAX_LIGHTS = 10;
+	/**
+	 * The default size of the Engine's command queue.
+	 */
+	public static final int DEFAULT_COMMAND_QUEUE_SIZE = 1024;
 	
 	/**
 	 * The render backgroundColor color.
@@ -43,4 +47,10 @@ public class Schooner3D {
 	 * The maximum number of objects to allow.
 	 */
 	public static int maxObjects = DEFAULT_MAX_OBJECTS;
+	/**
+	 * The number of commands (Runnables, and GameObjects to add or remove)
+	 * that can be waiting for the Engine at once. Rounded up to a power of
+	 * two.
+	 */
+	public static int commandQueueSize = DEFAULT_COMMAND_QUEUE_SIZE;
 }
@@ -5,12 +5,12 @@ import java.util.Random;
 
 import android.graphics.Color;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.MotionEvent;
 
 import com.supermercerbros.gameengine.engine.Camera;
 import com.supermercerbros.gameengine.engine.Engine;
 import com.supermercerbros.gameengine.engine.TextureLib;
+import com.supermercerbros.gameengine.util.Log;
 
 public class TestActivity extends GameActivity {
 	@SuppressWarnings("unused")
@@ -56,7 +56,9 @@ public class TestActivity extends GameActivity {
 		switchCamPosition();
 		Random rand = new Random();
 		setBG(event.getX() / getWidth(), event.getY(0) / getHeight(), rand.nextFloat());
-		Log.d("onTouch", "x: " + event.getX() + " y: " + event.getY());
+		if (Log.D) {
+			Log.d("onTouch", "x: " + event.getX() + " y: " + event.getY());
+		}
 		return true;
 	}
 	
@@ -4,13 +4,11 @@ import java.util.List;
 
 import com.supermercerbros.gameengine.objects.AnimatedMeshObject;
 import com.supermercerbros.gameengine.util.IPO;
-import android.util.Log;
 
 /**
  * Contains the data of one animation of an {@link AnimatedMeshObject}.
  */
 public class MeshAnimation {
-	private static final String TAG = "com.supermercerbros.gameengine.objects.MeshAnimation";
 
 	public static final int STOPPED = 0;
 	public static final int PAUSED = 1;
@@ -46,10 +44,7 @@ public class MeshAnimation {
 
 	public void getFrame(long frameTime, AnimationData data,
 			AnimatedMeshObject object) { // frameTime is world time
-		Log.d(TAG, "MeshAnimation.getFrame() was called.");
-
 		double framePoint = ((float) (frameTime - data.startTime)) / (float) data.duration;
-		Log.d(TAG, framePoint + " = (" + (frameTime - data.startTime) + ") / " + data.duration);
 
 		if (framePoint < 0.0) {
 			framePoint = (frameTime - data.callTime)
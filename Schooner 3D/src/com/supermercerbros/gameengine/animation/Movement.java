@@ -9,7 +9,13 @@ package com.supermercerbros.gameengine.animation;
  */
 public interface Movement{
 	/** Draws a frame to the given matrix.
+	 * <p>
+	 * This is called from {@link GameObject#draw(long)}, so it may run on a
+	 * worker thread, alongside other Movements. It must only write the 16
+	 * floats of <code>matrix</code> at <code>mOffset</code> and the state of
+	 * this Movement, which must not be shared by more than one GameObject.
 	 * @param matrix The array in which to store the resulting transformation matrix
+	 * @param mOffset The offset into <code>matrix</code> of the matrix
 	 * @param time The time of the frame being drawn
 	 */
 	public void getFrame(float[] matrix, int mOffset, long time);
@@ -0,0 +1,240 @@
+package com.supermercerbros.gameengine.debug;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Times the phases of each frame of a loop, such as the Engine's or the
+ * GameRenderer's. The owning thread calls {@link #beginFrame()} at the start
+ * of each frame, {@link #mark(int)} at the end of each phase, and
+ * {@link #endFrame()} at the end of the frame. The time since the previous
+ * call is attributed to the phase passed to <code>mark()</code>, so a phase
+ * can be marked several times per frame and its times are added up.
+ * <p>
+ * For each phase, and for whole frames, the profiler keeps a
+ * {@link Histogram} of all frames since the last reset, and a ring buffer of
+ * the phase times of the most recent frames. Recording never allocates or
+ * blocks. Other threads can query the results with
+ * {@link #copyHistogram(int, Histogram)} and
+ * {@link #getRecentFrame(int, long[])}, or dump them with
+ * {@link #writeCsv(Writer)} and {@link #writeFramesCsv(Writer)}; these may
+ * be slightly inconsistent if the owning thread is recording at the same
+ * time.
+ */
+public class FrameProfiler {
+	private final String[] phaseNames;
+	private final int phases;
+	/**
+	 * One Histogram per phase, then one for whole frames.
+	 */
+	private final Histogram[] histograms;
+	/**
+	 * The phase times of the most recent frames, with <code>phases + 1</code>
+	 * entries per frame (the last being the frame's total).
+	 */
+	private final long[] history;
+	private final int historyFrames;
+	/**
+	 * The phase times of the current frame.
+	 */
+	private final long[] current;
+
+	private long frameStart;
+	private long lastMark;
+	private volatile long frameCount = 0;
+	private volatile boolean resetRequested = false;
+
+	/**
+	 * @param phaseNames
+	 *            The names of the phases. Phases are referred to by their
+	 *            indices in this array.
+	 * @param historyFrames
+	 *            The number of recent frames to keep individual times for.
+	 */
+	public FrameProfiler(String[] phaseNames, int historyFrames) {
+		if (historyFrames < 1) {
+			throw new IllegalArgumentException("historyFrames < 1");
+		}
+		this.phaseNames = phaseNames.clone();
+		this.phases = phaseNames.length;
+		this.historyFrames = historyFrames;
+		this.histograms = new Histogram[phases + 1];
+		for (int i = 0; i <= phases; i++) {
+			histograms[i] = new Histogram();
+		}
+		this.history = new long[historyFrames * (phases + 1)];
+		this.current = new long[phases];
+	}
+
+	/**
+	 * Starts timing a new frame. Only called by the owning thread.
+	 */
+	public void beginFrame() {
+		if (resetRequested) {
+			for (Histogram h : histograms) {
+				h.reset();
+			}
+			frameCount = 0;
+			resetRequested = false;
+		}
+		for (int i = 0; i < phases; i++) {
+			current[i] = 0;
+		}
+		frameStart = lastMark = System.nanoTime();
+	}
+
+	/**
+	 * Attributes the time since the last call to {@link #beginFrame()} or
+	 * <code>mark()</code> to the given phase. Only called by the owning
+	 * thread.
+	 *
+	 * @param phase
+	 *            The index of the phase that just ended.
+	 */
+	public void mark(int phase) {
+		final long now = System.nanoTime();
+		current[phase] += now - lastMark;
+		lastMark = now;
+	}
+
+	/**
+	 * Finishes timing the current frame and records it. Time since the last
+	 * mark is not attributed to any phase, but counts towards the frame's
+	 * total. Only called by the owning thread.
+	 */
+	public void endFrame() {
+		final long total = System.nanoTime() - frameStart;
+		final int base = (int) (frameCount % historyFrames) * (phases + 1);
+		for (int i = 0; i < phases; i++) {
+			histograms[i].record(current[i]);
+			history[base + i] = current[i];
+		}
+		histograms[phases].record(total);
+		history[base + phases] = total;
+		frameCount++;
+	}
+
+	/**
+	 * Clears all recorded times. This may be called from any thread; it takes
+	 * effect at the start of the next frame.
+	 */
+	public void reset() {
+		resetRequested = true;
+	}
+
+	/**
+	 * @return The number of phases.
+	 */
+	public int getPhaseCount() {
+		return phases;
+	}
+
+	/**
+	 * @param phase
+	 *            The index of a phase, or {@link #getPhaseCount()} for whole
+	 *            frames.
+	 * @return The name of the phase.
+	 */
+	public String getPhaseName(int phase) {
+		return (phase == phases) ? "frame" : phaseNames[phase];
+	}
+
+	/**
+	 * @return The number of frames recorded since the last reset.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Copies the histogram of a phase's times, in nanoseconds, into
+	 * <code>dest</code>.
+	 *
+	 * @param phase
+	 *            The index of the phase, or {@link #getPhaseCount()} for whole
+	 *            frames.
+	 * @param dest
+	 *            The Histogram to overwrite.
+	 */
+	public void copyHistogram(int phase, Histogram dest) {
+		histograms[phase].copyInto(dest);
+	}
+
+	/**
+	 * Copies the phase times of a recent frame, in nanoseconds, into
+	 * <code>out</code>, followed by the frame's total time.
+	 *
+	 * @param framesAgo
+	 *            0 for the most recent frame, 1 for the one before, etc.
+	 * @param out
+	 *            An array of at least <code>getPhaseCount() + 1</code>
+	 *            elements.
+	 * @return false if that frame is no longer (or not yet) recorded.
+	 */
+	public boolean getRecentFrame(int framesAgo, long[] out) {
+		final long frame = frameCount - 1 - framesAgo;
+		if (framesAgo < 0 || frame < 0 || framesAgo >= historyFrames) {
+			return false;
+		}
+		final int base = (int) (frame % historyFrames) * (phases + 1);
+		System.arraycopy(history, base, out, 0, phases + 1);
+		return true;
+	}
+
+	/**
+	 * Writes a summary of each phase as CSV, with one row per phase (and one
+	 * for whole frames). Times are in microseconds.
+	 */
+	public void writeCsv(Writer out) throws IOException {
+		out.write("phase,count,mean_us,min_us,p50_us,p90_us,p99_us,p999_us,max_us\n");
+		final Histogram h = new Histogram();
+		for (int i = 0; i <= phases; i++) {
+			copyHistogram(i, h);
+			out.write(getPhaseName(i));
+			out.write(',');
+			out.write(Long.toString(h.getCount()));
+			writeMicros(out, h.getMean());
+			writeMicros(out, h.getMin());
+			writeMicros(out, h.getValueAtPercentile(50));
+			writeMicros(out, h.getValueAtPercentile(90));
+			writeMicros(out, h.getValueAtPercentile(99));
+			writeMicros(out, h.getValueAtPercentile(99.9));
+			writeMicros(out, h.getMax());
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the phase times of the recent frames as CSV, oldest first, with
+	 * one row per frame and one column per phase. Times are in microseconds.
+	 */
+	public void writeFramesCsv(Writer out) throws IOException {
+		out.write("frame");
+		for (int i = 0; i <= phases; i++) {
+			out.write(',');
+			out.write(getPhaseName(i));
+		}
+		out.write('\n');
+
+		final long last = frameCount;
+		final long[] times = new long[phases + 1];
+		for (int ago = (int) Math.min(last, historyFrames) - 1; ago >= 0; ago--) {
+			if (!getRecentFrame(ago, times)) {
+				continue;
+			}
+			out.write(Long.toString(last - 1 - ago));
+			for (long t : times) {
+				writeMicros(out, t);
+			}
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	private static void writeMicros(Writer out, double nanos)
+			throws IOException {
+		out.write(',');
+		out.write(Double.toString(Math.round(nanos / 100.0) / 10.0));
+	}
+}
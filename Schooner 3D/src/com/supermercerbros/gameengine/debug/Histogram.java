@@ -0,0 +1,189 @@
+package com.supermercerbros.gameengine.debug;
+
+/**
+ * A histogram of non-negative long values (typically durations in
+ * nanoseconds) with log-linear buckets, in the style of HdrHistogram. Values
+ * are recorded with a relative error of at most 1 / {@link #SUB_BUCKETS}
+ * (about 3%), from 0 up to 2<sup>41</sup> (about 36 minutes, in
+ * nanoseconds). Larger values are counted in an overflow bucket, and
+ * percentiles that fall in it are reported as the largest value recorded.
+ * <p>
+ * Recording never allocates. A Histogram is not synchronized; it should only
+ * be written by one thread. Reading it from another thread while it is being
+ * written may give slightly inconsistent results.
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	/**
+	 * The number of linear sub-buckets per power of two.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Values of 2<sup>MAX_EXPONENT + SUB_BUCKET_BITS</sup> or more overflow.
+	 */
+	private static final int MAX_EXPONENT = 36;
+	/**
+	 * The sub-buckets of each exponent below MAX_EXPONENT, after the
+	 * SUB_BUCKETS buckets of single values, and then the overflow bucket.
+	 */
+	private static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT + 1) + 1;
+	private static final int OVERFLOW = BUCKETS - 1;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	/**
+	 * Returns the index of the bucket that <code>value</code> is counted in.
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value)
+				- SUB_BUCKET_BITS;
+		if (exponent >= MAX_EXPONENT) {
+			return OVERFLOW;
+		}
+		// The top SUB_BUCKET_BITS + 1 bits of value, minus the leading 1
+		final int sub = (int) (value >>> exponent) - SUB_BUCKETS;
+		return SUB_BUCKETS + exponent * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the smallest value that is counted in the bucket at
+	 * <code>index</code>.
+	 */
+	static long lowestValueAt(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		final long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << exponent;
+	}
+
+	/**
+	 * Returns the largest value that is counted in the bucket at
+	 * <code>index</code>.
+	 */
+	static long highestValueAt(int index) {
+		if (index == OVERFLOW) {
+			return Long.MAX_VALUE;
+		}
+		return lowestValueAt(index + 1) - 1;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[indexOf(value)]++;
+		count++;
+		sum += value;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = 0;
+		}
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Replaces the contents of <code>dest</code> with the contents of this
+	 * Histogram.
+	 */
+	public void copyInto(Histogram dest) {
+		System.arraycopy(counts, 0, dest.counts, 0, BUCKETS);
+		dest.count = count;
+		dest.sum = sum;
+		dest.min = min;
+		dest.max = max;
+	}
+
+	/**
+	 * Adds the values recorded in <code>other</code> to this Histogram.
+	 */
+	public void add(Histogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @return The number of values recorded.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The smallest value recorded, or 0 if there are none.
+	 */
+	public long getMin() {
+		return (count == 0) ? 0 : min;
+	}
+
+	/**
+	 * @return The largest value recorded, or 0 if there are none.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return The exact mean of the values recorded, or 0 if there are none.
+	 */
+	public double getMean() {
+		return (count == 0) ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Returns the value at the given percentile, to within the precision of
+	 * the histogram. The result is never larger than {@link #getMax()}.
+	 *
+	 * @param percentile
+	 *            The percentile, from 0 to 100.
+	 * @return The highest value in the bucket containing the given
+	 *         percentile, or 0 if no values have been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(percentile / 100.0 * count);
+		if (target < 1) {
+			target = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highestValueAt(i), max);
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,299 @@
+package com.supermercerbros.gameengine.debug;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Records timed spans of work on every thread, and writes them in the Chrome
+ * trace-event format, which can be opened in <code>chrome://tracing</code>
+ * or Perfetto to see the UI, Engine and GL threads side by side.
+ * <p>
+ * Tracing is off until {@link #start(int)} is called. Code is instrumented
+ * like this:
+ *
+ * <pre>
+ * final long t = Tracer.begin();
+ * doWork();
+ * Tracer.end(&quot;doWork&quot;, t);
+ * </pre>
+ *
+ * When tracing is off, <code>begin()</code> returns Long.MIN_VALUE and
+ * <code>end()</code> returns immediately. When it is on, each thread records into its own
+ * preallocated ring buffer, so recording never blocks or allocates (except
+ * once per thread, when the thread records its first span). If a thread
+ * records more spans than its buffer holds, its oldest spans are overwritten.
+ * <p>
+ * Span names should be constants, since they are stored by reference.
+ */
+public class Tracer {
+	/**
+	 * The default number of spans kept per thread.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	/**
+	 * Returned by {@link #begin()} when tracing is off. System.nanoTime() can
+	 * return 0 like any other long, so 0 cannot mean "off"; at worst, a span
+	 * that begins at exactly this instant is not recorded.
+	 */
+	private static final long OFF = Long.MIN_VALUE;
+
+	/**
+	 * The spans recorded by one thread.
+	 */
+	private static class ThreadBuffer {
+		final String threadName;
+		final long threadId;
+		/**
+		 * The generation of the trace this buffer belongs to.
+		 */
+		final int generation;
+		final String[] names;
+		final long[] starts;
+		final long[] durations;
+		final int[] ids;
+		/**
+		 * The number of spans recorded, including overwritten ones. Written
+		 * after each span, so that other threads see complete spans.
+		 */
+		volatile long count = 0;
+
+		ThreadBuffer(Thread thread, int capacity, int generation) {
+			this.generation = generation;
+			threadName = thread.getName();
+			threadId = thread.getId();
+			names = new String[capacity];
+			starts = new long[capacity];
+			durations = new long[capacity];
+			ids = new int[capacity];
+		}
+
+		void record(String name, long start, long duration, int id) {
+			final long n = count;
+			final int i = (int) (n % names.length);
+			names[i] = name;
+			starts[i] = start;
+			durations[i] = duration;
+			ids[i] = id;
+			count = n + 1;
+		}
+	}
+
+	/**
+	 * Incremented by every call to {@link #start(int)}, so that threads
+	 * replace buffers from an earlier trace.
+	 */
+	private static volatile int generation = 0;
+	private static volatile boolean enabled = false;
+	private static volatile int capacity = DEFAULT_CAPACITY;
+	private static volatile long slowThreshold = 100000;
+	private static long origin;
+
+	/**
+	 * All ThreadBuffers of the current trace. Access must be synchronized on
+	 * <code>buffers</code>.
+	 */
+	private static final ArrayList<ThreadBuffer> buffers = new ArrayList<ThreadBuffer>();
+	private static final ThreadLocal<ThreadBuffer> localBuffer = new ThreadLocal<ThreadBuffer>();
+
+	private Tracer() {
+	} // This class should never be instantiated
+
+	/**
+	 * Discards any previous trace and starts recording.
+	 *
+	 * @param capacityPerThread
+	 *            The number of spans to keep per thread.
+	 */
+	public static void start(int capacityPerThread) {
+		if (capacityPerThread < 1) {
+			throw new IllegalArgumentException("capacityPerThread < 1");
+		}
+		synchronized (buffers) {
+			enabled = false;
+			buffers.clear();
+			capacity = capacityPerThread;
+			origin = System.nanoTime();
+			generation++;
+			enabled = true;
+		}
+	}
+
+	/**
+	 * Stops recording. The recorded spans are kept until the next call to
+	 * {@link #start(int)}.
+	 */
+	public static void stop() {
+		enabled = false;
+	}
+
+	/**
+	 * @return true if spans are being recorded.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets the minimum duration of spans recorded with
+	 * {@link #endIfSlow(String, long, int)}. The default is 0.1 ms.
+	 *
+	 * @param nanos
+	 *            The threshold, in nanoseconds.
+	 */
+	public static void setSlowThreshold(long nanos) {
+		slowThreshold = nanos;
+	}
+
+	/**
+	 * Starts a span.
+	 *
+	 * @return The start time of the span, to pass to
+	 *         {@link #end(String, long)}, or a value that marks the span
+	 *         as not traced if tracing is off.
+	 */
+	public static long begin() {
+		return enabled ? System.nanoTime() : OFF;
+	}
+
+	/**
+	 * Ends a span, recording it if tracing was on when it began.
+	 *
+	 * @param name
+	 *            The name of the span.
+	 * @param start
+	 *            The value returned by {@link #begin()}.
+	 */
+	public static void end(String name, long start) {
+		if (start != OFF) {
+			record(name, start, System.nanoTime() - start, -1);
+		}
+	}
+
+	/**
+	 * Ends a span, recording it only if tracing was on when it began and it
+	 * took at least as long as the threshold set by
+	 * {@link #setSlowThreshold(long)}. This is for spans that are too
+	 * frequent to record every time, like the drawing of a single object.
+	 *
+	 * @param name
+	 *            The name of the span.
+	 * @param start
+	 *            The value returned by {@link #begin()}.
+	 * @param id
+	 *            A number identifying what the span worked on (such as an
+	 *            object's index), which is written as an argument of the
+	 *            event, or -1 for none.
+	 */
+	public static void endIfSlow(String name, long start, int id) {
+		if (start != OFF) {
+			final long duration = System.nanoTime() - start;
+			if (duration >= slowThreshold) {
+				record(name, start, duration, id);
+			}
+		}
+	}
+
+	private static void record(String name, long start, long duration, int id) {
+		ThreadBuffer buffer = localBuffer.get();
+		if (buffer == null || buffer.generation != generation) {
+			synchronized (buffers) {
+				if (!enabled) {
+					return;
+				}
+				buffer = new ThreadBuffer(Thread.currentThread(), capacity,
+						generation);
+				buffers.add(buffer);
+			}
+			localBuffer.set(buffer);
+		}
+		buffer.record(name, start, duration, id);
+	}
+
+	/**
+	 * Writes the recorded spans as a Chrome trace-event JSON object. This
+	 * should be called after {@link #stop()}; spans recorded while this runs
+	 * may or may not be included.
+	 *
+	 * @param out
+	 *            The Writer to write to. It is flushed, but not closed.
+	 */
+	public static void writeJson(Writer out) throws IOException {
+		final ArrayList<ThreadBuffer> list;
+		final long t0;
+		synchronized (buffers) {
+			list = new ArrayList<ThreadBuffer>(buffers);
+			t0 = origin;
+		}
+
+		out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+		boolean first = true;
+		for (ThreadBuffer b : list) {
+			if (!first) {
+				out.write(",\n");
+			}
+			first = false;
+			out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+			out.write(Long.toString(b.threadId));
+			out.write(",\"args\":{\"name\":");
+			writeString(out, b.threadName);
+			out.write("}}");
+
+			final long count = b.count;
+			final int capacity = b.names.length;
+			for (long n = Math.max(0, count - capacity); n < count; n++) {
+				final int i = (int) (n % capacity);
+				// nanoTime values can wrap, so only their differences are
+				// compared.
+				if (b.starts[i] - t0 < 0) {
+					continue; // Began before this trace started
+				}
+				out.write(",\n{\"name\":");
+				writeString(out, b.names[i]);
+				out.write(",\"ph\":\"X\",\"pid\":1,\"tid\":");
+				out.write(Long.toString(b.threadId));
+				out.write(",\"ts\":");
+				writeMicros(out, b.starts[i] - t0);
+				out.write(",\"dur\":");
+				writeMicros(out, b.durations[i]);
+				if (b.ids[i] >= 0) {
+					out.write(",\"args\":{\"id\":");
+					out.write(Integer.toString(b.ids[i]));
+					out.write('}');
+				}
+				out.write('}');
+			}
+		}
+		out.write("\n]}\n");
+		out.flush();
+	}
+
+	private static void writeMicros(Writer out, long nanos) throws IOException {
+		out.write(Long.toString(nanos / 1000));
+		out.write('.');
+		final long frac = Math.abs(nanos % 1000);
+		if (frac < 100) {
+			out.write('0');
+		}
+		if (frac < 10) {
+			out.write('0');
+		}
+		out.write(Long.toString(frac));
+	}
+
+	private static void writeString(Writer out, String s) throws IOException {
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.write('\\');
+				out.write(c);
+			} else if (c < 0x20) {
+				out.write(String.format("\\u%04x", (int) c));
+			} else {
+				out.write(c);
+			}
+		}
+		out.write('"');
+	}
+}
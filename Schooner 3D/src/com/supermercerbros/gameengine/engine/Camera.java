@@ -1,7 +1,6 @@
 package com.supermercerbros.gameengine.engine;
 
-import android.opengl.Matrix;
-
+import com.supermercerbros.gameengine.math.Matrix;
 import com.supermercerbros.gameengine.util.IPO;
 
 public class Camera {
@@ -0,0 +1,135 @@
+package com.supermercerbros.gameengine.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of commands that any number of threads can post to and one
+ * thread (the Engine thread) takes from. The commands are stored in
+ * preallocated slots of a ring buffer, which are reused, so posting a command
+ * never allocates.
+ * <p>
+ * A command is a kind (an int chosen by the user of the ring), an Object, and
+ * an int. Each slot has a sequence number that tells producers when the slot
+ * is free and the consumer when it has been filled, so producers only
+ * contend on claiming a position, and never wait for each other to finish
+ * writing.
+ */
+class CommandRing {
+	/**
+	 * Receives the commands taken from a CommandRing.
+	 */
+	interface Handler {
+		void handle(int kind, Object object, int arg);
+	}
+
+	private final int mask;
+	private final int[] kinds;
+	private final Object[] objects;
+	private final int[] args;
+	/**
+	 * For each slot, the position it can next be written at, or one more than
+	 * the position it was written at if it is waiting to be read.
+	 */
+	private final AtomicLongArray sequences;
+	/**
+	 * The next position to be claimed by a producer.
+	 */
+	private final AtomicLong tail = new AtomicLong(0);
+	/**
+	 * The next position to be read by the consumer.
+	 */
+	private long head = 0;
+
+	/**
+	 * @param capacity
+	 *            The number of slots, which is rounded up to a power of two.
+	 */
+	CommandRing(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		kinds = new int[size];
+		objects = new Object[size];
+		args = new int[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Posts a command. This may be called from any thread.
+	 *
+	 * @return false if the ring is full.
+	 */
+	boolean offer(int kind, Object object, int arg) {
+		long pos = tail.get();
+		int i;
+		while (true) {
+			i = (int) pos & mask;
+			final long diff = sequences.get(i) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				return false; // The consumer hasn't read this slot yet.
+			} else {
+				pos = tail.get(); // Another producer claimed pos.
+			}
+		}
+		kinds[i] = kind;
+		objects[i] = object;
+		args[i] = arg;
+		sequences.set(i, pos + 1); // Publishes the fields above
+		return true;
+	}
+
+	/**
+	 * Takes up to <code>max</code> commands, in the order they were posted,
+	 * and passes them to <code>handler</code>. Only called by the consumer
+	 * thread.
+	 *
+	 * @return The number of commands taken.
+	 */
+	int drain(Handler handler, int max) {
+		int n = 0;
+		while (n < max) {
+			final int i = (int) head & mask;
+			if (sequences.get(i) != head + 1) {
+				break; // Empty, or the next command is still being written
+			}
+			final int kind = kinds[i];
+			final Object object = objects[i];
+			final int arg = args[i];
+			objects[i] = null;
+			sequences.set(i, head + mask + 1); // Frees the slot
+			head++;
+			n++;
+			handler.handle(kind, object, arg);
+		}
+		return n;
+	}
+
+	/**
+	 * @return true if there are no commands waiting. Only reliable on the
+	 *         consumer thread.
+	 */
+	boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+
+	/**
+	 * @return The number of slots.
+	 */
+	int getCapacity() {
+		return mask + 1;
+	}
+}
@@ -1,6 +1,9 @@
 package com.supermercerbros.gameengine.engine;
 
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
 import android.content.Context;
 
 import com.supermercerbros.gameengine.Schooner3D;
@@ -8,81 +11,159 @@ import com.supermercerbros.gameengine.Schooner3D;
 /**
  * Used for communication between the main thread, the Engine thread, and the
  * renderer thread.
+ * <p>
+ * Frames are passed from the Engine to the renderer through three
+ * {@link RenderData} buffers. At any time, the Engine owns one of them (the
+ * free buffer, which it is filling), the renderer owns another (the one it is
+ * drawing), and the third holds the most recent complete frame. Handing off a
+ * frame is a single atomic swap, so neither thread ever blocks the other: the
+ * Engine always has a buffer to write to, and the renderer always draws the
+ * newest complete frame, or draws the last one again if nothing new is ready.
  */
 public class DataPipe {
 	@SuppressWarnings("unused")
 	private static final String TAG = "com.supermercerbros.gameengine.engine.DataPipe";
 
+	/**
+	 * Set in {@link #ready} when the ready buffer holds a frame that the
+	 * renderer has not retrieved yet.
+	 */
+	private static final int FRESH = 4;
+	private static final int INDEX_MASK = 3;
+	/**
+	 * The longest time, in milliseconds, that
+	 * {@link #waitForRetrieval()} will wait, so the Engine keeps running
+	 * even if the renderer stalls.
+	 */
+	private static final long MAX_WAIT = 1000 / 30;
+
 	final int VBO_capacity = Schooner3D.vboSize;
 	final int IBO_capacity = Schooner3D.iboSize;
 
-	private RenderData data;
-	private long lastReadTime;
-	private boolean isRead = false;
+	private final RenderData[] buffers = new RenderData[3];
+	/**
+	 * The index of the buffer holding the most recent complete frame, OR'd
+	 * with {@link #FRESH} if that frame has not been retrieved yet.
+	 */
+	private final AtomicInteger ready = new AtomicInteger(1);
+	/**
+	 * The index of the buffer owned by the Engine. Only used by the Engine
+	 * thread.
+	 */
+	private int free = 0;
+	/**
+	 * The index of the buffer owned by the renderer. Only used by the renderer
+	 * thread.
+	 */
+	private int front = 2;
+	/**
+	 * True once the renderer has retrieved its first frame. Only used by the
+	 * renderer thread.
+	 */
+	private boolean hasFrame = false;
+	private volatile Thread producer;
+	/**
+	 * True if this DataPipe initialized ShaderLib and TextureLib.
+	 */
+	private boolean ownsLibs = false;
 
 	/**
 	 * Constructs a new DataPipe. This also initializes <code>ShaderLib</code>
 	 * and <code>TextureLib</code>
-	 * 
+	 *
 	 * @param context
 	 *            The app Context
-	 * @param mtl
-	 *            The material to render GameObjects with.
 	 */
 	public DataPipe(Context context) {
+		this();
 		ShaderLib.init(context);
 		TextureLib.init(context);
+		ownsLibs = true;
+	}
+
+	/**
+	 * Constructs a new DataPipe without initializing <code>ShaderLib</code>
+	 * and <code>TextureLib</code>, for running the Engine without Android
+	 * (see {@link HeadlessRenderer}).
+	 */
+	public DataPipe() {
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = new RenderData(VBO_capacity, IBO_capacity,
+					Schooner3D.maxObjects);
+		}
 	}
 
 	public void close() {
-		TextureLib.close();
-		ShaderLib.close();
+		if (ownsLibs) {
+			TextureLib.close();
+			ShaderLib.close();
+			ownsLibs = false;
+		}
 		EGLContextLostHandler.clear();
 	}
 
 	/**
-	 * Loads the data for the next frame into the DataPipe. Also returns the
-	 * time of the frame to compute next.
-	 * 
-	 * @param frameTime
-	 *            the time of the frame represented by the data
+	 * Returns the buffer that the Engine should load the next frame into. This
+	 * should only be called by the Engine thread.
+	 *
+	 * @return The free RenderData buffer.
+	 */
+	RenderData getFreeBuffer() {
+		return buffers[free];
+	}
+
+	/**
+	 * Publishes the data for the next frame. After this is called, the Engine
+	 * must not touch <code>data</code> again, and must get a new buffer from
+	 * {@link #getFreeBuffer()}. This never blocks.
+	 *
 	 * @param data
-	 *            a RenderData object containing the data to be rendered. This
-	 *            is cloned in this method, so changes made to the original are
-	 *            not automatically reflected in this DataPipe
-	 * @return The time of the next frame that the Engine should calculate
+	 *            The buffer returned by {@link #getFreeBuffer()}, containing
+	 *            the data to be rendered.
 	 */
-	public synchronized long putData(long frameTime, RenderData data) {
-		while (!isRead) {
-			try {
-				wait(1000 / 30);
-				if (isRead){
-					break;
-				} else {
-					return lastReadTime + 3*(1000 / 30);
-				}
-			} catch (InterruptedException e) {
-				return lastReadTime + 3*(1000 / 30);
-			}
+	void putData(RenderData data) {
+		if (data != buffers[free]) {
+			throw new IllegalArgumentException(
+					"data is not the DataPipe's free buffer.");
 		}
-		this.data = data;
-
-		isRead = false;
-		notify();
-		return lastReadTime + 2*(1000/30);
+		free = ready.getAndSet(free | FRESH) & INDEX_MASK;
 	}
 
-	public synchronized RenderData retrieveData() {
-		while (isRead) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
+	/**
+	 * Waits until the renderer has retrieved the last frame passed to
+	 * {@link #putData(RenderData)}, or until a short timeout elapses. The
+	 * Engine calls this so that it does not compute frames faster than they
+	 * can be drawn. This should only be called by the Engine thread.
+	 */
+	void waitForRetrieval() {
+		producer = Thread.currentThread();
+		final long deadline = System.nanoTime() + MAX_WAIT * 1000000;
+		while ((ready.get() & FRESH) != 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 || Thread.interrupted()) {
+				break;
 			}
+			LockSupport.parkNanos(remaining);
 		}
+	}
 
-		lastReadTime = System.currentTimeMillis();
-		isRead = true;
-		notify();
-		return data;
+	/**
+	 * Returns the most recent complete frame. If the Engine has not finished a
+	 * new frame since the last call, the previous frame is returned again.
+	 * This never blocks, and should only be called by the renderer thread.
+	 *
+	 * @return The RenderData to draw, or null if the Engine has not produced
+	 *         any frames yet.
+	 */
+	public RenderData retrieveData() {
+		if ((ready.get() & FRESH) != 0) {
+			front = ready.getAndSet(front) & INDEX_MASK;
+			hasFrame = true;
+			Thread p = producer;
+			if (p != null) {
+				LockSupport.unpark(p);
+			}
+		}
+		return hasFrame ? buffers[front] : null;
 	}
 }
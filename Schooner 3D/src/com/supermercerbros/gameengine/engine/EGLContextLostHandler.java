@@ -26,6 +26,9 @@ class EGLContextLostHandler{
 	}
 	
 	static void clear() {
+		if (listeners == null) {
+			return;
+		}
 		listeners.clear();
 		listeners = null;		
 	}
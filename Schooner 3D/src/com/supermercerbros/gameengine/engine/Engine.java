@@ -1,17 +1,17 @@
 package com.supermercerbros.gameengine.engine;
 
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.DelayQueue;
-
-import android.util.Log;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.debug.FrameProfiler;
+import com.supermercerbros.gameengine.debug.Tracer;
 import com.supermercerbros.gameengine.objects.GameObject;
-import com.supermercerbros.gameengine.objects.Metadata;
-import com.supermercerbros.gameengine.util.DelayedRunnable;
+import com.supermercerbros.gameengine.objects.StaticMesh;
+import com.supermercerbros.gameengine.util.Log;
 import com.supermercerbros.gameengine.util.Toggle;
 
 /**
@@ -21,58 +21,208 @@ import com.supermercerbros.gameengine.util.Toggle;
  */
 public class Engine extends Thread {
 	private static final String TAG = "Engine";
-	private DataPipe pipe;
-	private RenderData out = new RenderData();
-	private Camera cam;
 
-	private int[] vboA;
-	private short[] iboA;
-	private float[] mmA;
-	private float[] lightA;
-	private float[] colorA;
+	/** Phase of the {@link FrameProfiler}: waiting for the renderer. */
+	public static final int PHASE_WAIT = 0;
+	/** Phase of the {@link FrameProfiler}: running queued Runnables. */
+	public static final int PHASE_ACTIONS = 1;
+	/** Phase of the {@link FrameProfiler}: adding and deleting objects. */
+	public static final int PHASE_OBJECTS = 2;
+	/** Phase of the {@link FrameProfiler}: running delayed Runnables. */
+	public static final int PHASE_DELAYED = 3;
+	/** Phase of the {@link FrameProfiler}: {@link #doSpecialStuff(long)}. */
+	public static final int PHASE_SPECIAL = 4;
+	/** Phase of the {@link FrameProfiler}: drawing objects. */
+	public static final int PHASE_COMPUTE = 5;
+	/** Phase of the {@link FrameProfiler}: packing the frame for the renderer. */
+	public static final int PHASE_UPDATE_PIPE = 6;
+	/**
+	 * The names of the phases, for constructing a {@link FrameProfiler} to
+	 * pass to {@link #setProfiler(FrameProfiler)}.
+	 */
+	public static final String[] PHASE_NAMES = { "wait", "actions",
+			"objects", "delayed", "doSpecialStuff", "computeFrame",
+			"updatePipe" };
 
-	private boolean aBufs = true;
+	/**
+	 * The default value of {@link #setCommandBudget(long)}: 2 ms.
+	 */
+	public static final long DEFAULT_COMMAND_BUDGET = 2000000;
+	/**
+	 * The number of commands run between checks of the command budget.
+	 */
+	private static final int COMMAND_BATCH = 16;
+	/**
+	 * The number of GameObjects drawn by each task of a parallel update.
+	 */
+	private static final int UPDATE_GRAIN = 16;
+	/**
+	 * The number of transform slots updated by each task of a parallel
+	 * update.
+	 */
+	private static final int MATRIX_GRAIN = 256;
+	/**
+	 * The number of GameObjects packed into the VBO by each task of a
+	 * parallel update.
+	 */
+	private static final int PACK_GRAIN = 8;
 
-	private int[] vboB;
-	private short[] iboB;
-	private float[] mmB;
-	private float[] lightB;
-	private float[] colorB;
+	private static final int CMD_RUN = 0;
+	private static final int CMD_ADD = 1;
+	private static final int CMD_REMOVE = 2;
+	private static final int CMD_SCHEDULE = 3;
+
+	private DataPipe pipe;
+	private Camera cam;
+
+	/**
+	 * The current light vector and color. Access to these must be synchronized
+	 * on <code>light</code>.
+	 */
+	private final float[] light = new float[3], color = new float[3];
 
 	/**
 	 * To be used by subclasses of Engine. Contains the GameObjects currently in
 	 * the Engine.
 	 */
-	protected List<GameObject> objects;
+	protected final ObjectTable objects = new ObjectTable(Schooner3D.maxObjects);
 	private long time;
 
+	/**
+	 * The length of one simulation step, in milliseconds, or 0 if this Engine
+	 * uses a variable timestep.
+	 */
+	private long step = 0;
+	/**
+	 * The maximum number of simulation steps to run before a frame is sent to
+	 * the renderer.
+	 */
+	private int maxSteps;
+	/**
+	 * The amount of real time, in milliseconds, that has not yet been
+	 * simulated.
+	 */
+	private long accumulator;
+	/**
+	 * The real time at which the accumulator was last updated.
+	 */
+	private long lastClock;
+	/**
+	 * The fraction of a step between the previous simulation state and the
+	 * current one that the next frame should be rendered at.
+	 */
+	private float alpha = 1.0f;
+
+	/**
+	 * Incremented whenever the set of GameObjects that are loaded into the
+	 * buffers changes, which changes where each object's data is stored.
+	 */
+	private int layoutVersion = 0;
+	/**
+	 * The number of GameObjects that were marked for deletion, but not yet
+	 * removed, as of the last frame.
+	 */
+	private int markedObjects = 0;
+	/**
+	 * The layoutVersion of the last frame passed to the DataPipe.
+	 */
+	private int publishedLayout = -1;
+	/**
+	 * The number of frames passed to the DataPipe.
+	 */
+	private long frameCount = 0;
+	/**
+	 * Sorts the primitives of each frame into drawing order.
+	 */
+	private final RenderQueue queue = new RenderQueue(Schooner3D.maxObjects);
+	/**
+	 * The transforms of every GameObject in this Engine.
+	 */
+	private final TransformStore transforms = new TransformStore(
+			Schooner3D.maxObjects);
+	/**
+	 * Times the phases of each frame, or null.
+	 */
+	private FrameProfiler profiler;
+	/**
+	 * Shares the work of updating the GameObjects, or null to update them on
+	 * the Engine thread alone.
+	 */
+	private WorkerPool workers;
+	/**
+	 * The number of GameObjects found marked for deletion by the current
+	 * parallel update.
+	 */
+	private final AtomicInteger parallelMarked = new AtomicInteger();
+	private final WorkerPool.RangeTask drawTask = new WorkerPool.RangeTask() {
+		@Override
+		public void run(int start, int end) {
+			final int marked = drawObjects(start, end);
+			if (marked > 0) {
+				parallelMarked.addAndGet(marked);
+			}
+		}
+	};
+	private final WorkerPool.RangeTask matrixTask = new WorkerPool.RangeTask() {
+		@Override
+		public void run(int start, int end) {
+			transforms.updateMatrices(start, end);
+		}
+	};
+	/**
+	 * The GameObjects whose vertex data must be packed into the current
+	 * frame's VBO, and the offset (in floats) of each one's range.
+	 */
+	private final GameObject[] packObjects = new GameObject[Schooner3D.maxObjects];
+	private final int[] packOffsets = new int[Schooner3D.maxObjects];
+	/**
+	 * The VBO being packed.
+	 */
+	private FloatBuffer packTarget;
+	private final WorkerPool.RangeTask packTask = new WorkerPool.RangeTask() {
+		@Override
+		public void run(int start, int end) {
+			packObjects(start, end);
+		}
+	};
+
 	// Be careful to always synchronize access of these fields:
 	private volatile Toggle flush = new Toggle(false), paused = new Toggle(false);
 	private volatile boolean started = false, ending = false;
-	private boolean lightsChanged = false;
 	/**
-	 * Used for passing commands from the UI thread to the {@link Engine}
-	 * thread. This <b>should not</b> be polled by any thread other than the
-	 * Engine thread.
+	 * Used for passing Runnables, new GameObjects and the handles of
+	 * GameObjects to delete from the UI thread to the {@link Engine} thread.
+	 * This <b>should not</b> be drained by any thread other than the Engine
+	 * thread.
+	 */
+	private final CommandRing commands = new CommandRing(
+			Schooner3D.commandQueueSize);
+	private final CommandRing.Handler commandHandler = new CommandRing.Handler() {
+		@Override
+		public void handle(int kind, Object object, int arg) {
+			runCommand(kind, object, arg);
+		}
+	};
+	/**
+	 * Limits the warnings logged by threads waiting for room in
+	 * <code>commands</code>, which can spin many times per frame.
 	 */
-	ConcurrentLinkedQueue<Runnable> actions = new ConcurrentLinkedQueue<Runnable>();
+	private final Log.Limiter fullQueueLimiter = new Log.Limiter(1, 1000);
 	/**
-	 * Used for passing delayed commands from the UI thread to the Engine
-	 * thread.
+	 * The maximum time to spend on queued commands each frame, in nanoseconds,
+	 * or 0 for no limit.
 	 */
-	DelayQueue<DelayedRunnable> delayedActions = new DelayQueue<DelayedRunnable>();
+	private volatile long commandBudget = DEFAULT_COMMAND_BUDGET;
 	/**
-	 * Used for passing new GameObjects from the UI thread to the {@link Engine}
-	 * thread. This <b>should not</b> be polled by any thread other than the
-	 * Engine thread.
+	 * Runs delayed and repeating Runnables. Only used on the Engine thread.
 	 */
-	ConcurrentLinkedQueue<GameObject> newObjects = new ConcurrentLinkedQueue<GameObject>();
+	private final TimerWheel timers = new TimerWheel();
 	/**
-	 * Used for passing GameObjects to be deleted to the {@link Engine} thread.
-	 * This <b>should not</b> be polled by any thread other than the Engine
-	 * thread.
+	 * The time at which <code>timers</code> was last advanced, or -1 if it
+	 * should not be advanced at the next frame (because the Engine has just
+	 * started or been unpaused).
 	 */
-	ConcurrentLinkedQueue<GameObject> delObjects = new ConcurrentLinkedQueue<GameObject>();
+	private long timerClock = -1;
 
 	/**
 	 * @param pipe
@@ -87,80 +237,321 @@ public class Engine extends Thread {
 		Log.d(TAG, "Constructing Engine...");
 		this.pipe = pipe;
 		this.cam = cam;
-		this.objects = new LinkedList<GameObject>();
-		this.vboA = new int[pipe.VBO_capacity / 4];
-		this.vboB = new int[pipe.VBO_capacity / 4];
-		this.iboA = new short[pipe.IBO_capacity / 2];
-		this.iboB = new short[pipe.IBO_capacity / 2];
-		this.mmA = new float[Schooner3D.maxObjects];
-		this.mmB = new float[Schooner3D.maxObjects];
-		this.lightA = new float[3];
-		this.lightB = new float[3];
-		this.colorA = new float[3];
-		this.colorB = new float[3];
 		Log.d(TAG, "Engine constructed.");
 	}
 
 	/**
-	 * TODO Javadoc
+	 * Adds the given GameObjects to the Engine.
+	 * 
 	 * @param objects
+	 *            The GameObjects to add.
+	 * @see #addObject(GameObject)
 	 */
 	public void addAllObjects(Collection<GameObject> objects) {
-		if (!started) {
-			this.objects.addAll(objects);
-		} else {
-			newObjects.addAll(objects);
+		for (GameObject object : objects) {
+			addObject(object);
 		}
 	}
 
 	/**
-	 * TODO Javadoc
+	 * Adds the given GameObject to the Engine. If the Engine has been started,
+	 * the GameObject is added at the start of the next frame. This may be
+	 * called from any thread.
+	 * 
 	 * @param object
+	 *            The GameObject to add. It must not already be in an Engine.
+	 * @return The handle of the GameObject, which can be passed to
+	 *         {@link #removeObject(int)} and {@link #getObject(int)}.
+	 * @throws IllegalStateException
+	 *             if the Engine already contains
+	 *             {@link Schooner3D#maxObjects} GameObjects.
 	 */
-	public void addObject(GameObject object) {
+	public int addObject(GameObject object) {
+		if (object.getHandle() != ObjectTable.INVALID_HANDLE) {
+			throw new IllegalArgumentException(
+					"object has already been added to an Engine");
+		}
+		final int handle = objects.register(object);
+		object.setHandle(handle);
 		if (!started) {
-			objects.add(object);
+			addNow(object);
 		} else {
-			newObjects.add(object);
+			post(CMD_ADD, object, 0);
+		}
+		return handle;
+	}
+
+	/**
+	 * Adds a GameObject to the dense array, unless it was removed before it
+	 * could be added.
+	 */
+	private void addNow(GameObject object) {
+		if (objects.add(object.getHandle())) {
+			object.attachTransforms(transforms);
+			transforms.saveTransform(object.getTransformSlot());
+			layoutVersion++;
 		}
 	}
 
 	/**
-	 * Runs a Runnable on the Engine thread
+	 * @param handle
+	 *            The handle of a GameObject, as returned by
+	 *            {@link #addObject(GameObject)}.
+	 * @return The GameObject, or null if it has been removed from the Engine.
+	 */
+	public GameObject getObject(int handle) {
+		return objects.resolve(handle);
+	}
+
+	/**
+	 * Runs a Runnable on the Engine thread, at the start of the next frame
+	 * (or a later one, if there are more queued commands than fit in the
+	 * command budget). If the command queue is full, this waits for the
+	 * Engine to make room, unless it is called on the Engine thread, in which
+	 * case <code>r</code> is run immediately.
 	 * 
 	 * @param r
 	 *            The Runnable to run on the Engine thread
 	 */
 	public void doRunnable(Runnable r) {
-		actions.add(r);
+		post(CMD_RUN, r, 0);
 	}
 
 	/**
-	 * Runs a {@link Runnable} on the Engine thread with a delay.
+	 * Sets the maximum time to spend on commands queued by
+	 * {@link #doRunnable(Runnable)}, {@link #addObject(GameObject)} and
+	 * {@link #removeObject(int)} each frame. Commands that don't fit are left
+	 * for the next frame, so a burst of commands is spread over several
+	 * frames. At least one batch of commands is run every frame.
+	 * 
+	 * @param nanos
+	 *            The budget, in nanoseconds, or 0 for no limit.
+	 */
+	public void setCommandBudget(long nanos) {
+		if (nanos < 0) {
+			throw new IllegalArgumentException("nanos < 0");
+		}
+		commandBudget = nanos;
+	}
+
+	/**
+	 * Queues a command for the Engine thread.
+	 */
+	private void post(int kind, Object object, int arg) {
+		while (!commands.offer(kind, object, arg)) {
+			if (Thread.currentThread() == this || !isAlive()) {
+				// Nothing else will make room.
+				runCommand(kind, object, arg);
+				return;
+			}
+			if (Log.W && fullQueueLimiter.allow()) {
+				Log.w(TAG, "Command queue is full; waiting for the Engine ("
+						+ fullQueueLimiter.takeSuppressed()
+						+ " more waits not logged)");
+			}
+			Thread.yield();
+		}
+	}
+
+	private void runCommand(int kind, Object object, int arg) {
+		switch (kind) {
+		case CMD_RUN:
+			((Runnable) object).run();
+			mark(PHASE_ACTIONS);
+			break;
+		case CMD_ADD:
+			addNow((GameObject) object);
+			mark(PHASE_OBJECTS);
+			break;
+		case CMD_REMOVE:
+			removeNow(arg);
+			mark(PHASE_OBJECTS);
+			break;
+		case CMD_SCHEDULE:
+			timers.schedule((TimerWheel.Timer) object);
+			mark(PHASE_DELAYED);
+			break;
+		}
+	}
+
+	/**
+	 * Runs queued commands until there are none left or the command budget
+	 * is used up.
+	 */
+	private void runCommands() {
+		final long budget = commandBudget;
+		final long deadline = System.nanoTime() + budget;
+		while (commands.drain(commandHandler, COMMAND_BATCH) == COMMAND_BATCH) {
+			if (budget > 0 && System.nanoTime() - deadline >= 0) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Runs a {@link Runnable} on the Engine thread with a delay. The delay is
+	 * measured in Engine time, which does not advance while the Engine is
+	 * paused.
 	 * 
 	 * @param r
 	 *            The Runnable to run on the Engine thread.
 	 * @param delay
 	 *            The amount by which to delay the run, in milliseconds
+	 * @return The timer, which can be used to cancel the run.
+	 */
+	public TimerWheel.Timer doRunnable(Runnable r, long delay) {
+		return schedule(new TimerWheel.Timer(r, delay, 0));
+	}
+
+	/**
+	 * Runs a {@link Runnable} on the Engine thread repeatedly, at a fixed
+	 * rate, until the returned timer is cancelled. If a frame takes longer than
+	 * the period, the missed runs happen together in the next frame.
+	 * 
+	 * @param r
+	 *            The Runnable to run on the Engine thread.
+	 * @param delay
+	 *            The time until the first run, in milliseconds of Engine time.
+	 * @param period
+	 *            The time between runs, in milliseconds of Engine time.
+	 * @return The timer, which can be used to cancel the runs.
+	 */
+	public TimerWheel.Timer doRepeating(Runnable r, long delay, long period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("period <= 0");
+		}
+		return schedule(new TimerWheel.Timer(r, delay, period));
+	}
+
+	private TimerWheel.Timer schedule(TimerWheel.Timer timer) {
+		if (!started || Thread.currentThread() == this) {
+			timers.schedule(timer);
+		} else {
+			post(CMD_SCHEDULE, timer, 0);
+		}
+		return timer;
+	}
+
+	/**
+	 * Puts this Engine into fixed-timestep mode. The world is simulated in
+	 * steps of constant length, and each frame sent to the renderer contains
+	 * the previous and current simulation states along with the point between
+	 * them at which the frame should be drawn. This allows the simulation to
+	 * run at a lower rate than the renderer without stuttering.
+	 * <p>
+	 * If the Engine falls behind by more than <code>maxSteps</code> steps, the
+	 * backlog is dropped instead of being caught up, so a slow frame cannot
+	 * cause every subsequent frame to be slow as well.
+	 * <p>
+	 * This must be called before {@link #start()}.
+	 * 
+	 * @param stepMillis
+	 *            The length of one simulation step, in milliseconds. 0 returns
+	 *            the Engine to variable-timestep mode.
+	 * @param maxSteps
+	 *            The maximum number of steps to simulate per rendered frame.
+	 */
+	public void setFixedTimestep(long stepMillis, int maxSteps) {
+		if (started) {
+			throw new IllegalStateException(
+					"Cannot change timestep after the Engine has started.");
+		}
+		if (stepMillis < 0 || maxSteps < 1) {
+			throw new IllegalArgumentException("Invalid timestep.");
+		}
+		this.step = stepMillis;
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * Sets the FrameProfiler that times the phases of this Engine's frames.
+	 * The profiler must have been constructed with {@link #PHASE_NAMES}. This
+	 * must be called before {@link #start()}.
+	 * 
+	 * @param profiler
+	 *            The FrameProfiler to use, or null to stop profiling.
+	 */
+	public void setProfiler(FrameProfiler profiler) {
+		if (started) {
+			throw new IllegalStateException(
+					"Cannot set the profiler after the Engine has started.");
+		}
+		if (profiler != null
+				&& profiler.getPhaseCount() != PHASE_NAMES.length) {
+			throw new IllegalArgumentException(
+					"profiler was not constructed with Engine.PHASE_NAMES");
+		}
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Makes this Engine update its GameObjects in parallel on the given
+	 * WorkerPool. Each frame, the GameObjects are split into chunks that are
+	 * drawn by the workers and the Engine thread together, and the frame is
+	 * only packed for the renderer after all of them have finished. The
+	 * Engine does not shut the pool down. This must be called before
+	 * {@link #start()}.
+	 * <p>
+	 * This is only safe if every GameObject's
+	 * {@link GameObject#draw(long)} (and the
+	 * {@link com.supermercerbros.gameengine.animation.Movement} it uses)
+	 * follows the contract described there.
+	 * 
+	 * @param workers
+	 *            The WorkerPool to use, or null to update GameObjects on the
+	 *            Engine thread.
 	 */
-	public void doRunnable(Runnable r, long delay) {
-		delayedActions.add(new DelayedRunnable(r, delay));
+	public void setWorkerPool(WorkerPool workers) {
+		if (started) {
+			throw new IllegalStateException(
+					"Cannot set the WorkerPool after the Engine has started.");
+		}
+		this.workers = workers;
+	}
+
+	/**
+	 * @return The WorkerPool used to update GameObjects, or null. Subclasses
+	 *         may also use it in {@link #doSpecialStuff(long)}.
+	 */
+	public WorkerPool getWorkerPool() {
+		return workers;
+	}
+
+	/**
+	 * @return The TransformStore holding the transforms of this Engine's
+	 *         GameObjects. It must only be used on the Engine thread.
+	 */
+	public TransformStore getTransforms() {
+		return transforms;
+	}
+
+	/**
+	 * @return The FrameProfiler of this Engine, or null.
+	 */
+	public FrameProfiler getProfiler() {
+		return profiler;
 	}
 
 	/**
 	 * Terminates this Engine.
 	 */
 	public void end() {
-		Log.d(TAG, "Engine state before end():" + getState().toString());
+		if (Log.D) {
+			Log.d(TAG, "Engine state before end():" + getState().toString());
+		}
 		ending = true;
 		interrupt();
-		Log.d(TAG, "Engine state after end():" + getState().toString());
-		
+		if (Log.D) {
+			Log.d(TAG, "Engine state after end():" + getState().toString());
+		}
 	}
 
 	/**
 	 * Tells the Engine to actually delete all of its GameObjects that are
-	 * marked for deletion
+	 * marked for deletion. This is only needed for GameObjects that were
+	 * marked with {@link GameObject#markForDeletion()}; GameObjects removed
+	 * with {@link #removeObject(int)} are deleted at the start of the next
+	 * frame.
 	 */
 	public void flushDeletedObjects() {
 		synchronized (flush) {
@@ -177,15 +568,41 @@ public class Engine extends Thread {
 		}
 	}
 
+	/**
+	 * Removes a GameObject from the Engine. If the Engine has been started,
+	 * the GameObject stops being drawn and is deleted at the start of the next
+	 * frame. This may be called from any thread. Handles that are no longer
+	 * valid are ignored.
+	 * 
+	 * @param handle
+	 *            The handle returned by {@link #addObject(GameObject)}.
+	 */
+	public void removeObject(int handle) {
+		if (!started) {
+			removeNow(handle);
+			objects.compact();
+		} else {
+			post(CMD_REMOVE, null, handle);
+		}
+	}
+
 	/**
 	 * Removes the given GameObject from the Engine.
+	 * 
 	 * @param object
+	 *            The GameObject to remove.
+	 * @see #removeObject(int)
 	 */
 	public void removeObject(GameObject object) {
-		if (!started) {
-			objects.remove(object);
-		} else {
-			delObjects.add(object);
+		removeObject(object.getHandle());
+	}
+
+	/**
+	 * Schedules a GameObject for removal by the next compaction.
+	 */
+	private void removeNow(int handle) {
+		if (objects.remove(handle)) {
+			layoutVersion++;
 		}
 	}
 
@@ -208,47 +625,69 @@ public class Engine extends Thread {
 		if (Thread.currentThread() != this){
 			throw new UnsupportedOperationException("Do not call Engine.run()");
 		}
+		if (step > 0) {
+			time = System.currentTimeMillis();
+			lastClock = time;
+			accumulator = 0;
+		}
 		while (!ending) {
-			// Check for new GameObjects, GameObjects to delete, and actions to
-			// perform.
-			while (!actions.isEmpty())
-				actions.poll().run();
-			while (!newObjects.isEmpty())
-				objects.add(newObjects.poll());
-			while (!delObjects.isEmpty())
-				delObject(delObjects.poll());
-
-			DelayedRunnable d = delayedActions.poll();
-			while (d != null) {
-				d.r.run();
-				d = delayedActions.poll();
+			if (profiler != null) {
+				profiler.beginFrame();
 			}
+			final long waitStart = Tracer.begin();
+			pipe.waitForRetrieval();
+			Tracer.end("DataPipe.waitForRetrieval", waitStart);
+			mark(PHASE_WAIT);
+			if (step > 0) {
+				long now = System.currentTimeMillis();
+				accumulator += now - lastClock;
+				lastClock = now;
 
-			synchronized (flush) {
-				if (flush.getState()) {
-					flush();
+				int steps = 0;
+				while (accumulator >= step && steps < maxSteps) {
+					saveTransforms();
+					mark(PHASE_COMPUTE);
+					time += step;
+					tick();
+					accumulator -= step;
+					steps++;
+				}
+				if (accumulator >= step) {
+					// Too far behind; drop the backlog rather than spiral.
+					accumulator %= step;
 				}
+				alpha = (float) accumulator / step;
+			} else {
+				time = System.currentTimeMillis();
+				tick();
 			}
-
-			doSpecialStuff(time);
-			computeFrame();
 			updatePipe();
-			aBufs = !aBufs; // Swap aBufs
+			if (profiler != null) {
+				profiler.mark(PHASE_UPDATE_PIPE);
+				profiler.endFrame();
+			}
 			
 			if (ending){
 				break;
 			}
 			synchronized (paused) {
-				while (paused.getState()) {
-					try {
-						Log.d(TAG, "Waiting to unpause...");
-						paused.wait();
-					} catch (InterruptedException e) {
-						Log.w(TAG, "Interrupted while waiting to unpause.");
-						if (ending) {
-							break;
+				if (paused.getState()) {
+					while (paused.getState()) {
+						try {
+							Log.d(TAG, "Waiting to unpause...");
+							paused.wait();
+						} catch (InterruptedException e) {
+							Log.w(TAG, "Interrupted while waiting to unpause.");
+							if (ending) {
+								break;
+							}
 						}
 					}
+					// Don't try to catch up on the time spent paused.
+					lastClock = System.currentTimeMillis();
+					if (step == 0) {
+						timerClock = -1;
+					}
 				}
 			}
 		}
@@ -256,6 +695,32 @@ public class Engine extends Thread {
 		Log.d(TAG, "end Engine");
 	}
 
+	/**
+	 * Advances the world to <code>time</code> and passes one frame to the
+	 * DataPipe on the calling thread, without waiting for the renderer. This
+	 * is meant for benchmarks and headless tests, and cannot be used once the
+	 * Engine has been started.
+	 * 
+	 * @param time
+	 *            The time of the frame, in milliseconds.
+	 */
+	public synchronized void runFrame(long time) {
+		if (started) {
+			throw new IllegalStateException(
+					"Cannot run frames manually after the Engine has started.");
+		}
+		this.time = time;
+		if (profiler != null) {
+			profiler.beginFrame();
+		}
+		tick();
+		updatePipe();
+		if (profiler != null) {
+			profiler.mark(PHASE_UPDATE_PIPE);
+			profiler.endFrame();
+		}
+	}
+
 	/**
 	 * Sets the directional light of the scene
 	 * 
@@ -273,23 +738,13 @@ public class Engine extends Thread {
 	 *            The blue value of the light's color
 	 */
 	public void setLight(float x, float y, float z, float r, float g, float b) {
-		synchronized (lightA) {
-			if (aBufs) {
-				lightA[0] = x;
-				lightA[1] = y;
-				lightA[2] = z;
-				colorA[0] = r;
-				colorA[1] = g;
-				colorA[2] = b;
-			} else {
-				lightB[0] = x;
-				lightB[1] = y;
-				lightB[2] = z;
-				colorB[0] = r;
-				colorB[1] = g;
-				colorB[2] = b;
-			}
-			lightsChanged = true;
+		synchronized (light) {
+			light[0] = x;
+			light[1] = y;
+			light[2] = z;
+			color[0] = r;
+			color[1] = g;
+			color[2] = b;
 		}
 	}
 
@@ -306,6 +761,12 @@ public class Engine extends Thread {
 	 * This method is called every frame, before objects are redrawn. The
 	 * default implementation does nothing; subclasses should override this if
 	 * they wish to do anything special each frame.
+	 * <p>
+	 * If the Engine has a WorkerPool (see {@link #getWorkerPool()}), this may
+	 * spread its work over the workers, by submitting {@link Job}s or calling
+	 * {@link WorkerPool#parallelFor(int, int, WorkerPool.RangeTask)}. Any Jobs
+	 * it submits must have finished (see {@link WorkerPool#waitFor(Job)})
+	 * before it returns, because the GameObjects are updated next.
 	 * 
 	 * @param time
 	 *            The time of the current frame.
@@ -314,98 +775,254 @@ public class Engine extends Thread {
 
 	}
 
+	/**
+	 * Advances the world by one frame (or one step in fixed-timestep mode) to
+	 * the current value of <code>time</code>.
+	 */
+	private void tick() {
+		final long traceStart = Tracer.begin();
+		// Check for new GameObjects, GameObjects to delete, and actions to
+		// perform.
+		runCommands();
+		objects.compact();
+		mark(PHASE_OBJECTS);
+
+		if (timerClock >= 0) {
+			timers.advance(time - timerClock);
+		}
+		timerClock = time;
+		mark(PHASE_DELAYED);
+
+		synchronized (flush) {
+			if (flush.getState()) {
+				flush();
+			}
+		}
+		mark(PHASE_OBJECTS);
+
+		doSpecialStuff(time);
+		mark(PHASE_SPECIAL);
+		computeFrame();
+		mark(PHASE_COMPUTE);
+		Tracer.end("Engine.tick", traceStart);
+	}
+
+	/**
+	 * Ends the given phase of the current frame, if profiling.
+	 */
+	private void mark(int phase) {
+		if (profiler != null) {
+			profiler.mark(phase);
+		}
+	}
+
+	/**
+	 * Saves the current model matrix of every GameObject as its previous
+	 * model matrix. Called at the beginning of each fixed timestep.
+	 */
+	private void saveTransforms() {
+		transforms.saveTransforms();
+	}
+
 	private void computeFrame() {
 		// Collision detection goes here, whenever I need it.
 
-		for (GameObject object : objects) {
-			if (!object.isMarkedForDeletion()) {
-				object.draw(time);
-			}
+		final int count = objects.size();
+		final WorkerPool workers = this.workers;
+		final int marked;
+		if (workers != null) {
+			parallelMarked.set(0);
+			workers.parallelFor(count, UPDATE_GRAIN, drawTask);
+			marked = parallelMarked.get();
+		} else {
+			marked = drawObjects(0, count);
+		}
+		if (marked != markedObjects) {
+			// Objects were marked with GameObject.markForDeletion(), so
+			// they are no longer loaded into the buffers.
+			markedObjects = marked;
+			layoutVersion++;
+		}
+		if (workers != null) {
+			workers.parallelFor(transforms.getSlotCount(), MATRIX_GRAIN,
+					matrixTask);
+		} else {
+			transforms.updateMatrices();
 		}
 
 		cam.update(time);
 	}
 
 	/**
-	 * Marks the given GameObject for deletion. 
+	 * Draws the GameObjects from <code>start</code> (inclusive) to
+	 * <code>end</code> (exclusive) that are not marked for deletion. During a
+	 * parallel update, this is called by several threads at once.
 	 * 
-	 * @param object
-	 *            The GameObject to remove from the Engine.
+	 * @return The number of GameObjects in the range that are marked for
+	 *         deletion.
 	 */
-	private synchronized void delObject(GameObject object) {
-		if (objects.contains(object)) {
-			object.markForDeletion();
+	private int drawObjects(int start, int end) {
+		int marked = 0;
+		for (int index = start; index < end; index++) {
+			final GameObject object = objects.get(index);
+			if (!object.isMarkedForDeletion()) {
+				final long traceStart = Tracer.begin();
+				object.draw(time);
+				Tracer.endIfSlow("GameObject.draw", traceStart, index);
+			} else {
+				marked++;
+			}
 		}
+		return marked;
 	}
 
 	private void flush() {
-		for (int i = 0; i < objects.size(); i++) {
-			if (objects.get(i).isMarkedForDeletion()) {
-				objects.remove(i);
-			}
+		if (objects.compactAll() > 0) {
+			layoutVersion++;
 		}
 		flush.setState(false);
 	}
 	
-	private int loadToIBO(short[] ibo, GameObject object, int offset,
-			int vertexOffset) {
-		object.iOffset = offset;
-		if (object.isMarkedForDeletion())
-			return 0;
-		System.arraycopy(object.indices, 0, ibo, offset, object.info.size);
-		return object.info.size;
+	/**
+	 * Packs the vertex data of the GameObjects in <code>packObjects</code>
+	 * from <code>start</code> (inclusive) to <code>end</code> (exclusive)
+	 * into <code>packTarget</code>. During a parallel update, this is called
+	 * by several threads at once.
+	 */
+	private void packObjects(int start, int end) {
+		final FloatBuffer vbo = packTarget;
+		for (int j = start; j < end; j++) {
+			final GameObject object = packObjects[j];
+			object.info.mtl.loadObjectToVBO(object, vbo, packOffsets[j]);
+		}
+	}
+
+	private void loadToIBO(ShortBuffer ibo, GameObject object, int offset) {
+		ibo.position(offset);
+		ibo.put(object.indices, 0, object.info.size);
 	}
 
 	private void updatePipe() {
-		if (vboA == null)
-			Log.e(TAG, "vboA == null");
-		if (vboB == null)
-			Log.e(TAG, "vboB == null");
-
-		out.vbo = aBufs ? vboA : vboB;
-		out.ibo = aBufs ? iboA : iboB;
-		out.modelMatrices = aBufs ? mmA : mmB;
-		out.ibo_updatePos = iboA.length;
-		out.primitives = new Metadata[objects.size()];
-
-		int vOffset = 0, iOffset = 0, vertexOffset = 0, matrixIndex = 0, i = 0;
-		for (GameObject object : objects) {
-			int bufferSize = object.info.mtl.loadObjectToVBO(object, out.vbo,
-					vOffset);
-			vOffset += bufferSize;
+		final long traceStart = Tracer.begin();
+		RenderData out = pipe.getFreeBuffer();
+		out.step = step;
+		out.alpha = (step > 0) ? alpha : 1.0f;
+
+		// Indices never change, so this buffer's IBO only needs to be
+		// reloaded if objects have been added or removed since it was loaded.
+		// Otherwise, each slot still holds the same object as when this
+		// buffer was last filled, and only objects whose data has changed
+		// since then need to be packed again.
+		final boolean repack = out.layoutVersion != layoutVersion;
+
+		// All of the matrices are handed over at once, indexed by slot.
+		final int matrixFloats = transforms.getSlotCount() * 16;
+		System.arraycopy(transforms.matrices, 0, out.modelMatrices, 0,
+				matrixFloats);
+		if (step > 0) {
+			System.arraycopy(transforms.prevMatrices, 0,
+					out.prevModelMatrices, 0, matrixFloats);
+		}
 
-			iOffset += loadToIBO(out.ibo, object, iOffset, vertexOffset);
+		// First, assign each object its ranges of the buffers. Each object's
+		// data takes info.count * stride floats, so the offsets can be found
+		// without packing anything.
+		int vOffset = 0, iOffset = 0, i = 0, packCount = 0;
+		int dirtyStart = Integer.MAX_VALUE, dirtyEnd = 0;
+		final int count = objects.size();
+		for (int index = 0; index < count; index++) {
+			final GameObject object = objects.get(index);
+			if (object.isMarkedForDeletion()) {
+				continue;
+			}
+
+			final StaticMesh mesh = object.getStaticMesh();
+			if (mesh != null) {
+				// Static geometry is uploaded once by the renderer.
+				if (!mesh.isLoaded()) {
+					mesh.load(object);
+				}
+				out.matrixSlots[i] = object.getTransformSlot();
+				out.primitives[i++] = object.info;
+				continue;
+			}
 
-			vertexOffset += object.info.count;
+			final int bufferSize = object.info.count
+					* object.info.mtl.getStride();
+			final int vertsVersion = object.getVertsVersion();
+			if (repack || out.vertsVersions[i] != vertsVersion) {
+				packObjects[packCount] = object;
+				packOffsets[packCount] = vOffset;
+				packCount++;
+				out.vertsVersions[i] = vertsVersion;
+			}
+			if (object.isVertsDirty()) {
+				if (dirtyStart > vOffset) {
+					dirtyStart = vOffset;
+				}
+				dirtyEnd = vOffset + bufferSize;
+				object.clearVertsDirty();
+			}
+			out.vboOffsets[i] = vOffset * 4;
+			out.iboOffsets[i] = iOffset * 2;
+			vOffset += bufferSize;
 
-			System.arraycopy(object.modelMatrix, 0, out.modelMatrices,
-					matrixIndex++ * 16, 16);
+			object.iOffset = iOffset;
+			if (repack) {
+				loadToIBO(out.ibo, object, iOffset);
+			}
+			iOffset += object.info.size;
 
+			out.matrixSlots[i] = object.getTransformSlot();
 			out.primitives[i++] = object.info;
 		}
 
-		cam.writeToArray(out.viewMatrix, 0);
-		if (out.viewMatrix == null) {
-			Log.e(TAG, "viewMatrix == null");
+		// Then pack the objects that changed. Their ranges are disjoint, so
+		// they can be packed in parallel.
+		final WorkerPool workers = this.workers;
+		packTarget = out.vbo;
+		if (workers != null) {
+			workers.parallelFor(packCount, PACK_GRAIN, packTask);
+		} else {
+			packObjects(0, packCount);
 		}
+		packTarget = null;
+		Arrays.fill(packObjects, 0, packCount, null);
 
-		if (lightsChanged) {
-			synchronized (lightA) {
-				out.light = aBufs ? lightA : lightB;
-				out.color = aBufs ? colorA : colorB;
-			}
+		// Don't keep the Metadata of removed objects alive.
+		for (int k = i; k < out.primitiveCount; k++) {
+			out.primitives[k] = null;
 		}
+		out.primitiveCount = i;
 
-		time = pipe.putData(time, out);
-		synchronized (lightA) {
-			if (aBufs) {
-				System.arraycopy(lightA, 0, lightB, 0, 3);
-				System.arraycopy(colorA, 0, colorB, 0, 3);
-			} else {
-				System.arraycopy(lightB, 0, lightA, 0, 3);
-				System.arraycopy(colorB, 0, colorA, 0, 3);
-			}
+		if (publishedLayout != layoutVersion) {
+			// Every object may have moved.
+			dirtyStart = 0;
+			dirtyEnd = vOffset;
+		} else if (dirtyStart > dirtyEnd) {
+			dirtyStart = dirtyEnd = 0;
+		}
+		out.vboUsed = vOffset;
+		out.vboDirtyStart = dirtyStart;
+		out.vboDirtyEnd = dirtyEnd;
+		out.iboUsed = iOffset;
+		out.ibo.position(0);
+		out.layoutVersion = layoutVersion;
+		publishedLayout = layoutVersion;
+		out.sequence = ++frameCount;
+
+		cam.writeToArray(out.viewMatrix, 0);
+		final long sortStart = Tracer.begin();
+		queue.sort(out);
+		Tracer.end("RenderQueue.sort", sortStart);
+
+		synchronized (light) {
+			System.arraycopy(light, 0, out.light, 0, 3);
+			System.arraycopy(color, 0, out.color, 0, 3);
 		}
 
+		out.frameTime = System.currentTimeMillis();
+		pipe.putData(out);
+		Tracer.end("Engine.updatePipe", traceStart);
 	}
 }
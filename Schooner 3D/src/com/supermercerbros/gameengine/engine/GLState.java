@@ -0,0 +1,161 @@
+package com.supermercerbros.gameengine.engine;
+
+import android.opengl.GLES20;
+
+import com.supermercerbros.gameengine.gl.GL;
+
+/**
+ * Remembers the GL state that the renderer changes most often, so that calls
+ * that would not change anything are never made. Every call into GLES20 is a
+ * JNI call, so skipping redundant ones saves time on the renderer thread.
+ * <p>
+ * The cache is only correct if all changes to this state go through this
+ * class. It must be {@link #reset()} when a new GL context is created. Only
+ * used by the renderer thread.
+ */
+public class GLState {
+	/**
+	 * The number of vertex attribute arrays that are tracked. GLES 2.0
+	 * guarantees at least 8.
+	 */
+	private static final int MAX_ATTRIBS = 16;
+	/**
+	 * The number of texture units that are tracked.
+	 */
+	private static final int MAX_TEXTURE_UNITS = 8;
+
+	private static int program = -1;
+	private static int arrayBuffer = -1;
+	private static int elementBuffer = -1;
+	private static int activeTexture = -1;
+	private static final int[] textures = new int[MAX_TEXTURE_UNITS];
+	private static final boolean[] attribArrays = new boolean[MAX_ATTRIBS];
+
+	private GLState() {
+	} // This class should never be instantiated
+
+	/**
+	 * Forgets all cached state. Call this when a new GL context is created.
+	 */
+	public static void reset() {
+		program = -1;
+		arrayBuffer = -1;
+		elementBuffer = -1;
+		activeTexture = -1;
+		for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+			textures[i] = -1;
+		}
+		for (int i = 0; i < MAX_ATTRIBS; i++) {
+			attribArrays[i] = false;
+		}
+	}
+
+	/**
+	 * @param handle
+	 *            The program to make current.
+	 * @see GLES20#glUseProgram(int)
+	 */
+	public static void useProgram(int handle) {
+		if (program != handle) {
+			GL.get().glUseProgram(handle);
+			program = handle;
+		}
+	}
+
+	/**
+	 * @param handle
+	 *            The buffer to bind to GL_ARRAY_BUFFER.
+	 */
+	public static void bindArrayBuffer(int handle) {
+		if (arrayBuffer != handle) {
+			GL.get().glBindBuffer(GLES20.GL_ARRAY_BUFFER, handle);
+			arrayBuffer = handle;
+		}
+	}
+
+	/**
+	 * @param handle
+	 *            The buffer to bind to GL_ELEMENT_ARRAY_BUFFER.
+	 */
+	public static void bindElementBuffer(int handle) {
+		if (elementBuffer != handle) {
+			GL.get().glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, handle);
+			elementBuffer = handle;
+		}
+	}
+
+	/**
+	 * Binds a 2D texture to a texture unit.
+	 *
+	 * @param unit
+	 *            The index of the texture unit (0 for GL_TEXTURE0).
+	 * @param handle
+	 *            The texture to bind.
+	 */
+	public static void bindTexture(int unit, int handle) {
+		if (unit >= MAX_TEXTURE_UNITS) {
+			GL.get().glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+			activeTexture = unit;
+			GL.get().glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+			return;
+		}
+		if (textures[unit] == handle) {
+			return;
+		}
+		if (activeTexture != unit) {
+			GL.get().glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+			activeTexture = unit;
+		}
+		GL.get().glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+		textures[unit] = handle;
+	}
+
+	/**
+	 * Tells the cache that a texture has been deleted, so that a new texture
+	 * with the same handle will be bound.
+	 *
+	 * @param handle
+	 *            The deleted texture.
+	 */
+	public static void forgetTexture(int handle) {
+		for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+			if (textures[i] == handle) {
+				textures[i] = -1;
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 *            The attribute to enable. Does nothing if this is negative.
+	 * @see GLES20#glEnableVertexAttribArray(int)
+	 */
+	public static void enableAttribArray(int index) {
+		if (index < 0) {
+			return;
+		}
+		if (index >= MAX_ATTRIBS) {
+			GL.get().glEnableVertexAttribArray(index);
+		} else if (!attribArrays[index]) {
+			GL.get().glEnableVertexAttribArray(index);
+			attribArrays[index] = true;
+		}
+	}
+
+	/**
+	 * @param index
+	 *            The attribute to disable. Does nothing if this is negative.
+	 * @see GLES20#glDisableVertexAttribArray(int)
+	 */
+	public static void disableAttribArray(int index) {
+		if (index < 0) {
+			return;
+		}
+		if (index >= MAX_ATTRIBS) {
+			GL.get().glDisableVertexAttribArray(index);
+		} else if (attribArrays[index]) {
+			GL.get().glDisableVertexAttribArray(index);
+			attribArrays[index] = false;
+		}
+	}
+}
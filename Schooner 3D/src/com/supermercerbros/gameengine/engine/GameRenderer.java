@@ -1,9 +1,6 @@
 package com.supermercerbros.gameengine.engine;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -11,68 +8,95 @@ import javax.microedition.khronos.opengles.GL10;
 
 import android.opengl.GLES20;
 import android.opengl.GLException;
-import android.opengl.Matrix;
 import android.opengl.GLSurfaceView.Renderer;
-import android.util.Log;
 
 import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.debug.FrameProfiler;
+import com.supermercerbros.gameengine.debug.Tracer;
+import com.supermercerbros.gameengine.gl.GL;
+import com.supermercerbros.gameengine.math.Matrix;
 import com.supermercerbros.gameengine.objects.Metadata;
+import com.supermercerbros.gameengine.objects.StaticMesh;
+import com.supermercerbros.gameengine.util.IPO;
+import com.supermercerbros.gameengine.util.Log;
 import com.supermercerbros.gameengine.util.Utils;
 
 public class GameRenderer implements Renderer {
 	private static final String TAG = GameRenderer.class.getName();
-	private static final boolean alwaysDebug = true; 
 	private static final int framesToDebug = 2;
 
+	/** Phase of the {@link FrameProfiler}: clearing the screen. */
+	public static final int PHASE_CLEAR = 0;
+	/** Phase of the {@link FrameProfiler}: retrieving data from the Engine. */
+	public static final int PHASE_WAIT = 1;
+	/** Phase of the {@link FrameProfiler}: uploading the VBO and IBO. */
+	public static final int PHASE_UPLOAD = 2;
+	/** Phase of the {@link FrameProfiler}: drawing the primitives. */
+	public static final int PHASE_DRAW = 3;
 	/**
+	 * The names of the phases, for constructing a {@link FrameProfiler} to
+	 * pass to {@link #setProfiler(FrameProfiler)}.
+	 */
+	public static final String[] PHASE_NAMES = { "clear", "wait", "upload",
+			"draw" };
+
+	/**
+	 * Checks for a GL error, if the current {@link GL} backend polls for
+	 * errors.
+	 * 
 	 * @param location
 	 *            A string that names the just-called method.
 	 * @return The GL_ code of the error.
 	 */
 	public static int logError(String location) {
-		final String TAG = "OpenGL";
-		int error = GLES20.glGetError();
-		switch (error) {
-		default:
-		case GLES20.GL_NO_ERROR:
-			break;
-		case GLES20.GL_INVALID_ENUM:
-			Log.e(TAG, location + ": GL_INVALID_ENUM");
-			break;
-		case GLES20.GL_INVALID_VALUE:
-			Log.e(TAG, location + ": GL_INVALID_VALUE");
-			break;
-		case GLES20.GL_INVALID_OPERATION:
-			Log.e(TAG, location + ": GL_INVALID_OPERATION");
-			break;
-		case GLES20.GL_OUT_OF_MEMORY:
-			Log.e(TAG, location + ": GL_OUT_OF_MEMORY");
-			break;
-		case GLES20.GL_INVALID_FRAMEBUFFER_OPERATION:
-			Log.e(TAG, location + ": GL_INVALID_FRAMEBUFFER_OPERATION");
-		}
-		return error;
+		return GL.get().checkError(location);
 	}
 
 	private DataPipe pipe;
 	private RenderData in;
-	private IntBuffer vbo; // Vertex Buffer Object to hold dynamic data
-	private ShortBuffer ibo; // Index Buffer Object
+	/**
+	 * Times the phases of each frame, or null.
+	 */
+	private volatile FrameProfiler profiler;
 	/**
 	 * [0] = vbo handle, [1] = ibo handle
 	 */
 	private int[] buffers = new int[2];
+	/**
+	 * The StaticMeshes that have been uploaded in the current GL context.
+	 */
+	private final ArrayList<StaticMesh> staticMeshes = new ArrayList<StaticMesh>();
+	private final int[] meshBuffers = new int[2];
 
 	private Program activeProgram;
 	private float[] wvpMatrix = new float[16];
 	private float[] projMatrix = new float[16];
+	/**
+	 * Holds the interpolated model matrix of the primitive being drawn when
+	 * the Engine is in fixed-timestep mode.
+	 */
+	private float[] modelMatrix = new float[16];
+	/**
+	 * Holds the interpolated model matrices of a batch of instances when the
+	 * Engine is in fixed-timestep mode.
+	 */
+	private float[] instanceMatrices = new float[16 * ShaderLib.MAX_INSTANCES];
 
 	// Shader variable handles
 	private int u_viewProj = -1;
+	private int u_models = -1;
 	private int u_lightVec = -1;
 	private int u_lightColor = -1;
 
 	private int drawFrameCount = 0;
+	/**
+	 * The sequence number of the frame whose data is in the GL buffers, or -1.
+	 */
+	private long uploadedFrame = -1;
+	/**
+	 * The layoutVersion of the index data in the IBO, or -1.
+	 */
+	private int uploadedLayout = -1;
 	private float near, far;
 
 	/**
@@ -88,15 +112,6 @@ public class GameRenderer implements Renderer {
 		Matrix.setIdentityM(projMatrix, 0);
 		Matrix.setIdentityM(wvpMatrix, 0);
 		
-		if (vbo == null) {
-			vbo = ByteBuffer.allocateDirect(pipe.VBO_capacity).order(
-					ByteOrder.nativeOrder()).asIntBuffer();
-		}
-		if (ibo == null) {
-			ibo = ByteBuffer.allocateDirect(pipe.IBO_capacity).order(
-					ByteOrder.nativeOrder()).asShortBuffer();
-		}
-		
 		this.near = near;
 		this.far = far;
 		Log.d(TAG, "GameRenderer constructed!");
@@ -104,62 +119,287 @@ public class GameRenderer implements Renderer {
 
 	@Override
 	public void onDrawFrame(GL10 unused) {
+		final long traceStart = Tracer.begin();
+		final FrameProfiler prof = profiler;
+		if (prof != null) {
+			prof.beginFrame();
+		}
 		drawFrameCount++;
-		GLES20.glClearColor(Schooner3D.backgroundColor[0],
+		GL.get().glClearColor(Schooner3D.backgroundColor[0],
 				Schooner3D.backgroundColor[1], Schooner3D.backgroundColor[2],
 				Schooner3D.backgroundColor[3]);
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+		GL.get().glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+		if (prof != null) {
+			prof.mark(PHASE_CLEAR);
+		}
 
 		in = pipe.retrieveData();
 		if (in == null) {
-			Log.w(TAG, "in == null");
+			// The Engine hasn't finished its first frame yet.
 			drawFrameCount--;
 			return;
 		}
+		final float alpha = in.getAlpha(System.currentTimeMillis());
+		if (prof != null) {
+			prof.mark(PHASE_WAIT);
+		}
 
-		// long startFrame = System.nanoTime();
-
-		// Load VBO data
-		vbo.clear();
-		vbo.put(in.vbo);
-		vbo.position(0);
-
-		// Load index data to IBO
-		ibo.clear();
-		ibo.put(in.ibo);
-		ibo.position(0);
+		bindBuffers(buffers[0], buffers[1]);
+		uploadBuffers(in);
+		if (prof != null) {
+			prof.mark(PHASE_UPLOAD);
+		}
 
-		GLES20.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0,
-				in.ibo.length * 2, ibo);
-		GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, in.vbo.length * 4,
-				vbo);
+		// The view matrix is the same for every primitive in the frame
+		Matrix.multiplyMM(wvpMatrix, 0, projMatrix, 0, in.viewMatrix, 0);
+		activeProgram = null;
 
-		// Render each primitive
-		int matrixNumber = 0, iboOffset = 0, vboOffset = 0;
-		for (int i = 0; i < in.primitives.length; i++) {
+		// Render each primitive, in the order chosen by the RenderQueue
+		final int[] order = in.drawOrder;
+		for (int j = 0; j < in.primitiveCount;) {
+			final int i = order[j];
 			Metadata primitive = in.primitives[i];
+			final StaticMesh mesh = primitive.mesh;
+
+			final StaticMesh.InstancedData instanced = (mesh != null)
+					? mesh.instanced : null;
+			if (instanced != null) {
+				// Count the instances of this mesh that can be drawn together
+				int n = 1;
+				while (n < instanced.batchSize && j + n < in.primitiveCount
+						&& in.primitives[order[j + n]].mesh == mesh
+						&& in.primitives[order[j + n]].mtl == primitive.mtl) {
+					n++;
+				}
+				if (n > 1) {
+					drawInstanced(primitive, mesh, instanced, j, n, alpha);
+					j += n;
+					continue;
+				}
+			}
 
-			useProgram(primitive.mtl.getProgramName());
-			loadUniforms(in.viewMatrix, in.light, in.color);
+			if (useProgram(primitive.mtl.getProgramName())) {
+				loadUniforms(in.light, in.color);
+			}
 
-			vboOffset += primitive.mtl.attachAttribs(primitive, vboOffset,
-					in.modelMatrices, matrixNumber);
+			if (mesh != null) {
+				bindStaticMesh(mesh);
+			} else {
+				bindBuffers(buffers[0], buffers[1]);
+			}
+			final int attribOffset = (mesh != null) ? 0 : in.vboOffsets[i];
+
+			if (in.step > 0) {
+				IPO.matrix(modelMatrix, 0, in.prevModelMatrices,
+						in.modelMatrices, in.matrixSlots[i] * 16, alpha);
+				primitive.mtl.attachAttribs(primitive, attribOffset,
+						modelMatrix, 0);
+			} else {
+				primitive.mtl.attachAttribs(primitive, attribOffset,
+						in.modelMatrices, in.matrixSlots[i]);
+			}
 			logError("attachAttribs");
 
 			// Render primitive!
-			GLES20.glDrawElements(primitive.mtl.getGeometryType(),
-					primitive.size, GLES20.GL_UNSIGNED_SHORT, iboOffset);
+			GL.get().glDrawElements(primitive.mtl.getGeometryType(),
+					primitive.size, GLES20.GL_UNSIGNED_SHORT,
+					(mesh != null) ? 0 : in.iboOffsets[i]);
 			logError("DrawElements");
+			j++;
+		}
 
-			iboOffset += primitive.size * 2;
-			matrixNumber++;
+		if (prof != null) {
+			prof.mark(PHASE_DRAW);
+			prof.endFrame();
 		}
+		Tracer.end("GameRenderer.onDrawFrame", traceStart);
+	}
 
+	/**
+	 * Sets the FrameProfiler that times the phases of each frame drawn by
+	 * this GameRenderer. The profiler must have been constructed with
+	 * {@link #PHASE_NAMES}, and must not be shared with another thread's
+	 * loop.
+	 * 
+	 * @param profiler
+	 *            The FrameProfiler to use, or null to stop profiling.
+	 */
+	public void setProfiler(FrameProfiler profiler) {
+		if (profiler != null
+				&& profiler.getPhaseCount() != PHASE_NAMES.length) {
+			throw new IllegalArgumentException(
+					"profiler was not constructed with GameRenderer.PHASE_NAMES");
+		}
+		this.profiler = profiler;
+	}
+
+	/**
+	 * @return The FrameProfiler of this GameRenderer, or null.
+	 */
+	public FrameProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Draws <code>n</code> instances of a StaticMesh in one draw call, passing
+	 * their model matrices to the instanced program in <code>u_models</code>.
+	 * 
+	 * @param primitive
+	 *            The Metadata of the first instance.
+	 * @param mesh
+	 *            The StaticMesh shared by the instances.
+	 * @param instanced
+	 *            The instanced data of <code>mesh</code>.
+	 * @param first
+	 *            The position of the first instance in the frame's draw order.
+	 * @param n
+	 *            The number of instances to draw, at most
+	 *            <code>instanced.batchSize</code>.
+	 * @param alpha
+	 *            The interpolation point of this frame.
+	 */
+	private void drawInstanced(Metadata primitive, StaticMesh mesh,
+			StaticMesh.InstancedData instanced, int first, int n, float alpha) {
+		if (useProgram(primitive.mtl.getInstancedProgramName())) {
+			loadUniforms(in.light, in.color);
+		}
+		bindInstancedMesh(mesh, instanced);
+
+		for (int k = 0; k < n; k++) {
+			final int m = in.matrixSlots[in.drawOrder[first + k]] * 16;
+			if (in.step > 0) {
+				IPO.matrix(instanceMatrices, k * 16, in.prevModelMatrices,
+						in.modelMatrices, m, alpha);
+			} else {
+				System.arraycopy(in.modelMatrices, m, instanceMatrices,
+						k * 16, 16);
+			}
+		}
+		GL.get().glUniformMatrix4fv(u_models, n, false, instanceMatrices, 0);
+		logError("glUniformMatrix4fv (u_models)");
+
+		primitive.mtl.attachInstancedAttribs(primitive,
+				instanced.instanceIdOffset);
+		logError("attachInstancedAttribs");
+
+		GL.get().glDrawElements(primitive.mtl.getGeometryType(),
+				primitive.size * n, GLES20.GL_UNSIGNED_SHORT, 0);
+		logError("DrawElements (instanced)");
+	}
+
+	/**
+	 * Binds the given VBO and IBO, unless they are already bound.
+	 */
+	private void bindBuffers(int vbo, int ibo) {
+		GLState.bindArrayBuffer(vbo);
+		GLState.bindElementBuffer(ibo);
+	}
+
+	/**
+	 * Binds the buffers of the given StaticMesh, uploading them first if this
+	 * is the first time the mesh has been drawn in this GL context.
+	 * 
+	 * @param mesh
+	 *            The StaticMesh to bind.
+	 */
+	private void bindStaticMesh(StaticMesh mesh) {
+		if (mesh.vbo != -1) {
+			bindBuffers(mesh.vbo, mesh.ibo);
+			return;
+		}
+		final long traceStart = Tracer.begin();
+		GL.get().glGenBuffers(2, meshBuffers, 0);
+		mesh.vbo = meshBuffers[0];
+		mesh.ibo = meshBuffers[1];
+		bindBuffers(mesh.vbo, mesh.ibo);
+		GL.get().glBufferData(GLES20.GL_ARRAY_BUFFER,
+				mesh.vertexData.capacity() * 4, mesh.vertexData,
+				GLES20.GL_STATIC_DRAW);
+		GL.get().glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+				mesh.indexData.capacity() * 2, mesh.indexData,
+				GLES20.GL_STATIC_DRAW);
+		logError("bindStaticMesh");
+		Tracer.end("StaticMesh upload", traceStart);
+		if (mesh.instancedVbo == -1) {
+			staticMeshes.add(mesh);
+		}
+	}
+
+	/**
+	 * Binds the instanced buffers of the given StaticMesh, uploading them first
+	 * if this is the first time they have been drawn in this GL context.
+	 * 
+	 * @param mesh
+	 *            The StaticMesh to bind.
+	 * @param instanced
+	 *            The instanced data of <code>mesh</code>.
+	 */
+	private void bindInstancedMesh(StaticMesh mesh,
+			StaticMesh.InstancedData instanced) {
+		if (mesh.instancedVbo != -1) {
+			bindBuffers(mesh.instancedVbo, mesh.instancedIbo);
+			return;
+		}
+		final long traceStart = Tracer.begin();
+		GL.get().glGenBuffers(2, meshBuffers, 0);
+		mesh.instancedVbo = meshBuffers[0];
+		mesh.instancedIbo = meshBuffers[1];
+		bindBuffers(mesh.instancedVbo, mesh.instancedIbo);
+		GL.get().glBufferData(GLES20.GL_ARRAY_BUFFER,
+				instanced.vertexData.capacity() * 4, instanced.vertexData,
+				GLES20.GL_STATIC_DRAW);
+		GL.get().glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+				instanced.indexData.capacity() * 2, instanced.indexData,
+				GLES20.GL_STATIC_DRAW);
+		logError("bindInstancedMesh");
+		Tracer.end("StaticMesh upload (instanced)", traceStart);
+		if (mesh.vbo == -1) {
+			staticMeshes.add(mesh);
+		}
+	}
+
+	/**
+	 * Uploads the parts of the frame's buffers that are not already in the GL
+	 * buffers. The buffers are uploaded directly; the Engine wrote them in
+	 * native order.
+	 * 
+	 * @param in
+	 *            The frame to upload.
+	 */
+	private void uploadBuffers(RenderData in) {
+		if (in.sequence == uploadedFrame) {
+			return; // Drawing the same frame again
+		}
+		final long traceStart = Tracer.begin();
+
+		final int start, end;
+		if (in.sequence == uploadedFrame + 1) {
+			start = in.vboDirtyStart;
+			end = in.vboDirtyEnd;
+		} else {
+			// Frames were skipped, so their changes were never uploaded.
+			start = 0;
+			end = in.vboUsed;
+		}
+		if (end > start) {
+			in.vbo.position(start);
+			GL.get().glBufferSubData(GLES20.GL_ARRAY_BUFFER, start * 4,
+					(end - start) * 4, in.vbo);
+			in.vbo.position(0);
+		}
+
+		if (in.layoutVersion != uploadedLayout && in.iboUsed > 0) {
+			GL.get().glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0,
+					in.iboUsed * 2, in.ibo);
+		}
+		uploadedLayout = in.layoutVersion;
+		uploadedFrame = in.sequence;
+		Tracer.end("GameRenderer.uploadBuffers", traceStart);
 	}
 
 	@Override
 	public void onSurfaceChanged(GL10 unused, int width, int height) {
-		GLES20.glViewport(0, 0, width, height);
+		GL.get().glViewport(0, 0, width, height);
 		float aspect = width / (float) height;
 		Utils.perspectiveM(projMatrix, 0, 45, aspect, near, far);
 	}
@@ -167,20 +407,28 @@ public class GameRenderer implements Renderer {
 	@Override
 	public void onSurfaceCreated(GL10 unused, EGLConfig config) {
 		EGLContextLostHandler.contextLost();
-		GLES20.glGenBuffers(2, buffers, 0);
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		uploadedFrame = -1;
+		uploadedLayout = -1;
+		// The old context's buffers are gone, so static meshes must be
+		// uploaded again.
+		for (int i = 0; i < staticMeshes.size(); i++) {
+			staticMeshes.get(i).clearHandles();
+		}
+		staticMeshes.clear();
+		GL.get().glGenBuffers(2, buffers, 0);
+		GLState.reset();
+		bindBuffers(buffers[0], buffers[1]);
 
-		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, pipe.VBO_capacity, vbo,
+		GL.get().glBufferData(GLES20.GL_ARRAY_BUFFER, pipe.VBO_capacity, null,
 				GLES20.GL_DYNAMIC_DRAW);
-		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, pipe.IBO_capacity,
-				ibo, GLES20.GL_DYNAMIC_DRAW);
+		GL.get().glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, pipe.IBO_capacity,
+				null, GLES20.GL_DYNAMIC_DRAW);
 
-		GLES20.glClearColor(Schooner3D.backgroundColor[0],
+		GL.get().glClearColor(Schooner3D.backgroundColor[0],
 				Schooner3D.backgroundColor[1], Schooner3D.backgroundColor[2],
 				Schooner3D.backgroundColor[3]);
-		// GLES20.glEnable(GLES20.GL_CULL_FACE);
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+		// GL.get().glEnable(GLES20.GL_CULL_FACE);
+		GL.get().glEnable(GLES20.GL_DEPTH_TEST);
 
 	}
 
@@ -189,7 +437,7 @@ public class GameRenderer implements Renderer {
 	 * @return True if a new program has been loaded
 	 */
 	private boolean useProgram(String name) {
-		if (drawFrameCount <= framesToDebug || alwaysDebug) {
+		if (Log.D && drawFrameCount <= framesToDebug) {
 			Log.d(TAG, "useProgram(" + name + ")");
 		}
 		Program program = ShaderLib.getProgram(name);
@@ -205,9 +453,10 @@ public class GameRenderer implements Renderer {
 				success = false;
 			}
 			if (success) {
-				GLES20.glUseProgram(program.getHandle());
+				GLState.useProgram(program.getHandle());
 
 				u_viewProj = program.getUniformLocation(ShaderLib.U_VIEWPROJ);
+				u_models = program.getUniformLocation(ShaderLib.U_MODELS);
 				u_lightVec = program.getUniformLocation(ShaderLib.U_LIGHTVEC);
 				u_lightColor = program
 						.getUniformLocation(ShaderLib.U_LIGHTCOLOR);
@@ -219,26 +468,29 @@ public class GameRenderer implements Renderer {
 		return false;
 	}
 
-	private void loadUniforms(float[] viewMatrix, float[] light, float[] color) {
-		// Load World View-Projection matrix
-		Matrix.multiplyMM(wvpMatrix, 0, projMatrix, 0, viewMatrix, 0);
-
-		GLES20.glUniformMatrix4fv(u_viewProj, 1, false, wvpMatrix, 0);
+	/**
+	 * Loads the per-frame uniforms into the active program. This only needs
+	 * to be called when the program changes, and only uploads the values that
+	 * the program does not already have.
+	 */
+	private void loadUniforms(float[] light, float[] color) {
+		// Load World View-Projection matrix (computed once per frame)
+		activeProgram.setUniformMatrix4fv(u_viewProj, wvpMatrix, 0);
 		logError("glUniformMatrix4fv (wvpMatrix)");
 
 		// Load directional light
 		if (u_lightVec != -1) {
-			GLES20.glUniform3fv(u_lightVec, 1, light, 0);
+			activeProgram.setUniform3fv(u_lightVec, light, 0);
 			logError("glUniform3fv (light vector)");
-			if (drawFrameCount <= framesToDebug) {
+			if (Log.D && drawFrameCount <= framesToDebug) {
 				Log.d(TAG, "Uniform3fv(u_lightVec, 1, "
 						+ Arrays.toString(light) + ", 0)");
 			}
 		}
 		if (u_lightColor != -1) {
-			GLES20.glUniform3fv(u_lightColor, 1, color, 0);
+			activeProgram.setUniform3fv(u_lightColor, color, 0);
 			logError("glUniform3fv (light color)");
-			if (drawFrameCount <= framesToDebug) {
+			if (Log.D && drawFrameCount <= framesToDebug) {
 				Log.d(TAG, "Uniform3fv(" + u_lightColor
 						+ " (u_lightColor), 1, " + Arrays.toString(color)
 						+ ", 0)");
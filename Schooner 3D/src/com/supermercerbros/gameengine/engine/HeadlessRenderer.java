@@ -0,0 +1,121 @@
+package com.supermercerbros.gameengine.engine;
+
+import com.supermercerbros.gameengine.debug.Tracer;
+import com.supermercerbros.gameengine.util.Log;
+
+/**
+ * Stands in for the {@link GameRenderer} when running the Engine without a
+ * display (for example, for soak tests and profiling on a desktop JVM). It
+ * retrieves frames from a {@link DataPipe} as a render thread would, but
+ * draws nothing.
+ */
+public class HeadlessRenderer extends Thread {
+	private static final String TAG = HeadlessRenderer.class.getName();
+
+	private final DataPipe pipe;
+	private final long frameNanos;
+	private volatile boolean ending = false;
+
+	private volatile long frameCount = 0;
+	private volatile long droppedFrames = 0;
+	private volatile long retrievals = 0;
+	private long lastSequence = -1;
+
+	/**
+	 * Constructs a new HeadlessRenderer that retrieves frames as fast as
+	 * possible.
+	 * 
+	 * @param pipe
+	 *            The DataPipe to retrieve frames from.
+	 */
+	public HeadlessRenderer(DataPipe pipe) {
+		this(pipe, 0);
+	}
+
+	/**
+	 * Constructs a new HeadlessRenderer.
+	 * 
+	 * @param pipe
+	 *            The DataPipe to retrieve frames from.
+	 * @param frameMillis
+	 *            The time, in milliseconds, between retrievals, to simulate a
+	 *            display's refresh rate. If 0, frames are retrieved as fast as
+	 *            possible.
+	 */
+	public HeadlessRenderer(DataPipe pipe, long frameMillis) {
+		super("HeadlessRenderer");
+		if (frameMillis < 0) {
+			throw new IllegalArgumentException("frameMillis < 0");
+		}
+		this.pipe = pipe;
+		this.frameNanos = frameMillis * 1000000;
+	}
+
+	@Override
+	public void run() {
+		Log.d(TAG, "HeadlessRenderer started.");
+		long next = System.nanoTime();
+		while (!ending) {
+			retrievals++;
+			final long traceStart = Tracer.begin();
+			RenderData in = pipe.retrieveData();
+			if (in != null && in.sequence != lastSequence) {
+				Tracer.end("HeadlessRenderer.retrieveData", traceStart);
+				if (lastSequence >= 0 && in.sequence > lastSequence + 1) {
+					droppedFrames += in.sequence - lastSequence - 1;
+				}
+				lastSequence = in.sequence;
+				frameCount++;
+			}
+
+			if (frameNanos == 0) {
+				Thread.yield();
+				continue;
+			}
+			next += frameNanos;
+			long sleep = next - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+				} catch (InterruptedException e) {
+					break;
+				}
+			} else {
+				// Fell behind; don't try to catch up.
+				next = System.nanoTime();
+			}
+		}
+		Log.d(TAG, "HeadlessRenderer ended after " + frameCount + " frames.");
+	}
+
+	/**
+	 * Stops this HeadlessRenderer. It finishes after its current retrieval.
+	 */
+	public void end() {
+		ending = true;
+		interrupt();
+	}
+
+	/**
+	 * @return The number of distinct frames retrieved so far.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return The number of frames that the Engine published but that were
+	 *         replaced by a newer frame before they could be retrieved.
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * @return The number of times {@link DataPipe#retrieveData()} has been
+	 *         called, including those that returned a frame again.
+	 */
+	public long getRetrievals() {
+		return retrievals;
+	}
+}
@@ -0,0 +1,110 @@
+package com.supermercerbros.gameengine.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A unit of work that is run by a {@link WorkerPool}. Jobs are meant to be
+ * created once and submitted again every frame, so that running them never
+ * allocates.
+ * <p>
+ * A Job can depend on other Jobs: it is only run once every Job it depends
+ * on has finished. Dependencies are set up with {@link #dependsOn(Job)}
+ * before the Jobs are first submitted, and stay in place for every later
+ * submission. Every Job in a graph must be submitted each time, and a Job
+ * must not be submitted again until it has finished:
+ *
+ * <pre>
+ * physics.dependsOn(input);
+ * ai.dependsOn(input);
+ * ...
+ * // Every frame:
+ * pool.submit(input);
+ * pool.submit(physics);
+ * pool.submit(ai);
+ * pool.waitFor(physics);
+ * pool.waitFor(ai);
+ * </pre>
+ */
+public abstract class Job {
+	private static final Job[] NO_JOBS = new Job[0];
+
+	/**
+	 * The Jobs that depend on this one.
+	 */
+	private Job[] dependents = NO_JOBS;
+	private int dependentCount = 0;
+	/**
+	 * The number of Jobs this one depends on.
+	 */
+	private int dependencyCount = 0;
+	/**
+	 * The number of this Job's dependencies that have not finished, plus one
+	 * until it is submitted. The Job is ready to run when this reaches 0.
+	 */
+	private final AtomicInteger pending = new AtomicInteger(1);
+	private volatile boolean done = true;
+
+	/**
+	 * Does the work of this Job. This is called on a worker thread, or on a
+	 * thread that is waiting for a Job.
+	 */
+	protected abstract void run();
+
+	/**
+	 * Makes this Job wait for <code>job</code> to finish before it runs,
+	 * every time both are submitted. This must not be called while either
+	 * Job is submitted.
+	 */
+	public final void dependsOn(Job job) {
+		if (!done || !job.done) {
+			throw new IllegalStateException(
+					"Cannot add a dependency to a submitted Job.");
+		}
+		if (job.dependentCount == job.dependents.length) {
+			final Job[] grown = new Job[Math.max(4, job.dependentCount * 2)];
+			System.arraycopy(job.dependents, 0, grown, 0, job.dependentCount);
+			job.dependents = grown;
+		}
+		job.dependents[job.dependentCount++] = this;
+		dependencyCount++;
+		pending.incrementAndGet();
+	}
+
+	/**
+	 * @return true if this Job has finished running since it was last
+	 *         submitted, or has never been submitted.
+	 */
+	public final boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Marks this Job as submitted.
+	 *
+	 * @return true if it can run now.
+	 */
+	final boolean submit() {
+		if (!done) {
+			throw new IllegalStateException("Job has already been submitted.");
+		}
+		done = false;
+		return pending.decrementAndGet() == 0;
+	}
+
+	/**
+	 * Called after {@link #run()}. Resets this Job for its next submission,
+	 * and passes the dependents that it was the last dependency of to
+	 * <code>pool</code>.
+	 */
+	final void finish(WorkerPool pool) {
+		pending.set(dependencyCount + 1);
+		// Before the dependents are released, so that they see this Job done
+		done = true;
+		for (int i = 0; i < dependentCount; i++) {
+			final Job dependent = dependents[i];
+			if (dependent.pending.decrementAndGet() == 0) {
+				pool.schedule(dependent);
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.supermercerbros.gameengine.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded work-stealing deque of {@link Job}s (a Chase-Lev deque with a
+ * fixed array). The thread that owns the deque pushes and pops jobs at the
+ * bottom, in LIFO order, so that it keeps working on the jobs whose data is
+ * still in its cache, while other threads steal the oldest jobs from the top.
+ * Only stealing threads contend with each other, and with the owner when
+ * there is one job left.
+ * <p>
+ * {@link #push(Job)} and {@link #pop()} must only be called by one thread at
+ * a time (the owner); {@link #steal()} may be called by any thread.
+ */
+class JobDeque {
+	private final AtomicReferenceArray<Job> slots;
+	private final int mask;
+	/**
+	 * The position of the oldest job. Only increases.
+	 */
+	private final AtomicLong top = new AtomicLong(0);
+	/**
+	 * One past the position of the newest job.
+	 */
+	private volatile long bottom = 0;
+
+	/**
+	 * @param capacity
+	 *            The number of jobs that can be queued, which is rounded up to
+	 *            a power of two.
+	 */
+	JobDeque(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		slots = new AtomicReferenceArray<Job>(size);
+	}
+
+	/**
+	 * Adds a job at the bottom. Only called by the owner.
+	 *
+	 * @return false if the deque is full.
+	 */
+	boolean push(Job job) {
+		final long b = bottom;
+		if (b - top.get() > mask) {
+			return false;
+		}
+		slots.set((int) b & mask, job);
+		bottom = b + 1; // Publishes the job
+		return true;
+	}
+
+	/**
+	 * Takes the newest job. Only called by the owner.
+	 *
+	 * @return The job, or null if the deque is empty.
+	 */
+	Job pop() {
+		final long b = bottom - 1;
+		bottom = b; // Stops thieves from taking position b...
+		final long t = top.get(); // ...unless they already have.
+		if (t > b) {
+			bottom = t; // Was empty
+			return null;
+		}
+		final Job job = slots.get((int) b & mask);
+		if (t == b) {
+			// The last job; race the thieves for it.
+			if (!top.compareAndSet(t, t + 1)) {
+				bottom = t + 1;
+				return null;
+			}
+			bottom = t + 1;
+		}
+		return job;
+	}
+
+	/**
+	 * Takes the oldest job. May be called by any thread.
+	 *
+	 * @return The job, or null if the deque is empty or another thread took
+	 *         the job first.
+	 */
+	Job steal() {
+		final long t = top.get();
+		if (t >= bottom) {
+			return null;
+		}
+		final Job job = slots.get((int) t & mask);
+		return top.compareAndSet(t, t + 1) ? job : null;
+	}
+
+	/**
+	 * @return true if the deque appears to be empty.
+	 */
+	boolean isEmpty() {
+		return top.get() >= bottom;
+	}
+}
@@ -2,17 +2,13 @@ package com.supermercerbros.gameengine.engine;
 
 import java.util.Arrays;
 
-import android.util.Log;
-
-import com.supermercerbros.gameengine.math.Vector;
+import com.supermercerbros.gameengine.debug.Tracer;
 import com.supermercerbros.gameengine.objects.GameObject;
 import com.supermercerbros.gameengine.util.Utils;
 
 public class Normals {
-	private static final String TAG = "Normals";
-
 	public static void calculate(GameObject object) {
-		Log.d(TAG, "Normals.calculate() called");
+		final long traceStart = Tracer.begin();
 		if (object.normals == null || object.normals.length != object.verts.length) {
 			object.normals = new float[object.verts.length];
 		} else {
@@ -22,32 +18,41 @@ public class Normals {
 		short[] indices = object.indices;
 		short[][] doubles = object.doubles;
 
-		float[] vecA = new float[3], vecB = new float[3], normal = new float[3];
-
 		for (int faceIndex = 0; faceIndex < indices.length / 3; faceIndex++) {
-			float cX = verts[indices[faceIndex * 3 + 1] * 3 + 0];
-			float cY = verts[indices[faceIndex * 3 + 1] * 3 + 1];
-			float cZ = verts[indices[faceIndex * 3 + 1] * 3 + 2];
-
-			vecA[0] = verts[indices[faceIndex * 3 + 2] * 3 + 0] - cX;
-			vecA[1] = verts[indices[faceIndex * 3 + 2] * 3 + 1] - cY;
-			vecA[2] = verts[indices[faceIndex * 3 + 2] * 3 + 2] - cZ;
+			final int a = indices[faceIndex * 3 + 0] * 3;
+			final int b = indices[faceIndex * 3 + 1] * 3;
+			final int c = indices[faceIndex * 3 + 2] * 3;
 
-			vecB[0] = verts[indices[faceIndex * 3 + 0] * 3 + 0] - cX;
-			vecB[1] = verts[indices[faceIndex * 3 + 0] * 3 + 1] - cY;
-			vecB[2] = verts[indices[faceIndex * 3 + 0] * 3 + 2] - cZ;
+			// The edges from the second vertex to the third and the first
+			final float aX = verts[c + 0] - verts[b + 0];
+			final float aY = verts[c + 1] - verts[b + 1];
+			final float aZ = verts[c + 2] - verts[b + 2];
+			final float bX = verts[a + 0] - verts[b + 0];
+			final float bY = verts[a + 1] - verts[b + 1];
+			final float bZ = verts[a + 2] - verts[b + 2];
 
-			Vector.cross(normal, 0, vecA, 0, vecB, 0, true);
-			
-			Log.d(TAG, "normal of face " + faceIndex + ": " + Arrays.toString(normal));
-
-			for (int index = 0; index < 3; index++) {
-				int vertex = indices[faceIndex * 3 + index];
-				Log.d(TAG, "Adding normal to vertex " + vertex);
-				normals[indices[faceIndex * 3 + index] * 3 + 0] += normal[0];
-				normals[indices[faceIndex * 3 + index] * 3 + 1] += normal[1];
-				normals[indices[faceIndex * 3 + index] * 3 + 2] += normal[2];
+			// The unit normal of the face is their normalized cross product.
+			// A face with no area has none, and adds nothing.
+			float nX = aY * bZ - aZ * bY;
+			float nY = aZ * bX - aX * bZ;
+			float nZ = aX * bY - aY * bX;
+			final float length = Utils.pythagF(nX, nY, nZ);
+			if (!(length > 0)) {
+				continue;
 			}
+			nX /= length;
+			nY /= length;
+			nZ /= length;
+
+			normals[a + 0] += nX;
+			normals[a + 1] += nY;
+			normals[a + 2] += nZ;
+			normals[b + 0] += nX;
+			normals[b + 1] += nY;
+			normals[b + 2] += nZ;
+			normals[c + 0] += nX;
+			normals[c + 1] += nY;
+			normals[c + 2] += nZ;
 		}
 
 		for (int i = 0; i < doubles[0].length; i++) {
@@ -60,19 +65,19 @@ public class Normals {
 			normals[indexB * 3 + 1] = (normals[indexA * 3 + 1] = nY);
 			normals[indexB * 3 + 2] = (normals[indexA * 3 + 2] = nZ);
 		}
-		
-		Log.d(TAG, "Non-unit Normals: " + Arrays.toString(normals));
 
 		for (int i = 0; i < normals.length / 3; i++) {
 			float length = Utils.pythagF(normals[i * 3 + 0],
 					normals[i * 3 + 1], normals[i * 3 + 2]);
 //			length = Math.max(normals[i * 3 + 0], Math.max(normals[i * 3 + 1], normals[i * 3 + 2]));
+			if (!(length > 0)) {
+				continue; // Only in faces with no area
+			}
 			normals[i * 3 + 0] /= length; // Normalize our new vector
 											// components.
 			normals[i * 3 + 1] /= length;
 			normals[i * 3 + 2] /= length;
 		}
-		
-		Log.d(TAG, "Unit Normals: " + Arrays.toString(normals));
+		Tracer.end("Normals.calculate", traceStart);
 	}
 }
@@ -0,0 +1,251 @@
+package com.supermercerbros.gameengine.engine;
+
+import com.supermercerbros.gameengine.objects.GameObject;
+
+/**
+ * Contains the GameObjects in an Engine. The GameObjects are kept in a dense
+ * array, so that they can be iterated over quickly, and each one is referred
+ * to by a handle. A handle combines the index of a slot with the slot's
+ * generation, which changes every time the slot is reused, so a handle to a
+ * removed GameObject never refers to a different one.
+ * <p>
+ * Handles are registered and resolved under a lock, so they can be used from
+ * any thread. The dense array is only modified by the Engine thread (or
+ * before the Engine is started): GameObjects are removed by moving the last
+ * GameObject into their place, and removals are batched until
+ * {@link #compact()} is called.
+ */
+public class ObjectTable {
+	/**
+	 * A handle that never refers to a GameObject.
+	 */
+	public static final int INVALID_HANDLE = 0;
+
+	private static final int INDEX_BITS = 20;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	private static final int MAX_GENERATION = (1 << (31 - INDEX_BITS)) - 1;
+
+	private final int capacity;
+
+	// Guarded by this:
+	/**
+	 * The GameObject registered in each slot, or null.
+	 */
+	private final GameObject[] bySlot;
+	/**
+	 * The current generation of each slot, from 1 to MAX_GENERATION.
+	 */
+	private final int[] generations;
+	private final int[] freeSlots;
+	private int freeCount = 0;
+	private int slotCount = 0;
+
+	// Only used by the Engine thread:
+	private final GameObject[] dense;
+	/**
+	 * The slot of each GameObject in <code>dense</code>.
+	 */
+	private final int[] denseSlots;
+	/**
+	 * The index in <code>dense</code> of each slot's GameObject, or -1.
+	 */
+	private final int[] densePositions;
+	private int size = 0;
+	/**
+	 * The slots whose GameObjects are waiting to be removed by
+	 * {@link #compact()}.
+	 */
+	private final int[] removals;
+	private int removalCount = 0;
+	/**
+	 * True for each slot that is in <code>removals</code>.
+	 */
+	private final boolean[] removing;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of GameObjects that can be registered at
+	 *            once.
+	 */
+	public ObjectTable(int capacity) {
+		if (capacity < 1 || capacity > INDEX_MASK + 1) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		this.capacity = capacity;
+		bySlot = new GameObject[capacity];
+		generations = new int[capacity];
+		freeSlots = new int[capacity];
+		dense = new GameObject[capacity];
+		denseSlots = new int[capacity];
+		densePositions = new int[capacity];
+		removals = new int[capacity];
+		removing = new boolean[capacity];
+	}
+
+	/**
+	 * Reserves a handle for a GameObject. This may be called from any thread.
+	 * The GameObject is not part of the dense array until it is added with
+	 * {@link #add(int)}.
+	 *
+	 * @return The GameObject's new handle.
+	 * @throws IllegalStateException
+	 *             if the table is full.
+	 */
+	synchronized int register(GameObject object) {
+		final int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else if (slotCount < capacity) {
+			slot = slotCount++;
+			generations[slot] = 1;
+		} else {
+			throw new IllegalStateException("ObjectTable is full (" + capacity
+					+ " objects)");
+		}
+		bySlot[slot] = object;
+		densePositions[slot] = -1;
+		return (generations[slot] << INDEX_BITS) | slot;
+	}
+
+	/**
+	 * Frees the slot of a handle, so that the handle becomes invalid.
+	 */
+	private synchronized void unregister(int slot) {
+		bySlot[slot] = null;
+		generations[slot] = (generations[slot] == MAX_GENERATION) ? 1
+				: generations[slot] + 1;
+		freeSlots[freeCount++] = slot;
+	}
+
+	/**
+	 * Returns the GameObject that a handle refers to. This may be called from
+	 * any thread.
+	 *
+	 * @param handle
+	 *            A handle returned by {@link Engine#addObject(GameObject)}.
+	 * @return The GameObject, or null if it has been removed.
+	 */
+	public synchronized GameObject resolve(int handle) {
+		final int slot = handle & INDEX_MASK;
+		if (handle <= 0 || slot >= slotCount
+				|| generations[slot] != handle >>> INDEX_BITS) {
+			return null;
+		}
+		return bySlot[slot];
+	}
+
+	/**
+	 * Adds the GameObject with the given handle to the end of the dense
+	 * array.
+	 *
+	 * @return false if the handle is no longer valid.
+	 */
+	boolean add(int handle) {
+		final GameObject object = resolve(handle);
+		if (object == null) {
+			return false;
+		}
+		final int slot = handle & INDEX_MASK;
+		object.info.delete = false;
+		dense[size] = object;
+		denseSlots[size] = slot;
+		densePositions[slot] = size;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Marks the GameObject with the given handle for deletion, and schedules
+	 * it to be removed by the next call to {@link #compact()}. GameObjects
+	 * that have not been added to the dense array yet are unregistered
+	 * immediately.
+	 *
+	 * @return false if the handle is no longer valid or was already removed.
+	 */
+	boolean remove(int handle) {
+		final GameObject object = resolve(handle);
+		final int slot = handle & INDEX_MASK;
+		if (object == null || removing[slot]) {
+			return false;
+		}
+		object.markForDeletion();
+		if (densePositions[slot] < 0) {
+			object.setHandle(INVALID_HANDLE);
+			unregister(slot);
+			return false;
+		}
+		removals[removalCount++] = slot;
+		removing[slot] = true;
+		return true;
+	}
+
+	/**
+	 * Removes the GameObjects scheduled by {@link #remove(int)} from the
+	 * dense array, in time proportional to their number.
+	 *
+	 * @return The removed GameObjects' count.
+	 */
+	int compact() {
+		final int count = removalCount;
+		for (int i = 0; i < count; i++) {
+			removeSlot(removals[i]);
+		}
+		removalCount = 0;
+		return count;
+	}
+
+	/**
+	 * Removes every GameObject that is marked for deletion, including ones
+	 * that were marked with {@link GameObject#markForDeletion()} instead of
+	 * being removed by handle.
+	 *
+	 * @return The removed GameObjects' count.
+	 */
+	int compactAll() {
+		int count = compact();
+		// Backwards, so that moved GameObjects have already been checked.
+		for (int i = size - 1; i >= 0; i--) {
+			if (dense[i].isMarkedForDeletion()) {
+				removeSlot(denseSlots[i]);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void removeSlot(int slot) {
+		final int position = densePositions[slot];
+		final GameObject object = dense[position];
+		final int last = --size;
+		if (position != last) {
+			dense[position] = dense[last];
+			denseSlots[position] = denseSlots[last];
+			densePositions[denseSlots[position]] = position;
+		}
+		dense[last] = null;
+		densePositions[slot] = -1;
+		removing[slot] = false;
+		object.detachTransforms();
+		object.setHandle(INVALID_HANDLE);
+		unregister(slot);
+	}
+
+	/**
+	 * @return The number of GameObjects in the dense array, including ones
+	 *         that are marked for deletion but have not been removed yet.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a GameObject from the dense array. Only for use on the Engine
+	 * thread. Removing GameObjects changes the order of the array.
+	 *
+	 * @param index
+	 *            The index of the GameObject, less than {@link #size()}.
+	 */
+	public GameObject get(int index) {
+		return dense[index];
+	}
+}
@@ -3,10 +3,11 @@ package com.supermercerbros.gameengine.engine;
 import java.util.HashMap;
 
 import com.supermercerbros.gameengine.engine.EGLContextLostHandler.EGLContextLostListener;
+import com.supermercerbros.gameengine.gl.GL;
+import com.supermercerbros.gameengine.util.Log;
 
 import android.opengl.GLES20;
 import android.opengl.GLException;
-import android.util.Log;
 
 /**
  * Represents a GLSL program, consisting of a vertex shader and a fragment
@@ -23,9 +24,16 @@ public class Program implements EGLContextLostListener {
 	private int a_normal;
 	private int a_mtl;
 	private int a_model;
+	private int a_instance;
 
 	private boolean loaded;
-	private HashMap<String, Integer> attribs;
+	private HashMap<String, Integer> attribs = new HashMap<String, Integer>();
+	private HashMap<String, Integer> uniforms = new HashMap<String, Integer>();
+	/**
+	 * The values last uploaded to each uniform, indexed by location. Only used
+	 * by the renderer thread.
+	 */
+	private float[][] uniformValues = new float[8][];
 
 	Program(Shader vertexShader, Shader fragmentShader) {
 		vertex = vertexShader;
@@ -41,27 +49,38 @@ public class Program implements EGLContextLostListener {
 		int vHandle = vertex.load(GLES20.GL_VERTEX_SHADER);
 		int fHandle = fragment.load(GLES20.GL_FRAGMENT_SHADER);
 
-		handle = GLES20.glCreateProgram();
+		handle = GL.get().glCreateProgram();
 		if (handle == 0) {
 			int error = GameRenderer.logError("glCreateProgram");
 			throw new GLException(error, "Error Creating program");
 		}
 
 		// Attach shaders
-		GLES20.glAttachShader(handle, vHandle);
+		GL.get().glAttachShader(handle, vHandle);
 		GameRenderer.logError("glAttachShader(handle, vertex.handle)");
-		GLES20.glAttachShader(handle, fHandle);
+		GL.get().glAttachShader(handle, fHandle);
 		GameRenderer.logError("glAttachShader(handle, fragment.handle)");
 
+		// Give the standard attributes the same locations in every program
+		GL.get().glBindAttribLocation(handle, ShaderLib.LOC_POS, ShaderLib.A_POS);
+		GL.get().glBindAttribLocation(handle, ShaderLib.LOC_NORMAL,
+				ShaderLib.A_NORMAL);
+		GL.get().glBindAttribLocation(handle, ShaderLib.LOC_MTL, ShaderLib.A_MTL);
+		GL.get().glBindAttribLocation(handle, ShaderLib.LOC_INSTANCE,
+				ShaderLib.A_INSTANCE);
+		GL.get().glBindAttribLocation(handle, ShaderLib.LOC_MODEL,
+				ShaderLib.A_MODEL);
+		GameRenderer.logError("glBindAttribLocation");
+
 		// Link program
-		GLES20.glLinkProgram(handle);
+		GL.get().glLinkProgram(handle);
 
 		// Check link status
 		int[] status = { 0 };
-		GLES20.glGetProgramiv(handle, GLES20.GL_LINK_STATUS, status, 0);
+		GL.get().glGetProgramiv(handle, GLES20.GL_LINK_STATUS, status, 0);
 		if (status[0] != GLES20.GL_TRUE) { // If there is an error...
-			String infoLog = GLES20.glGetProgramInfoLog(handle);
-			GLES20.glDeleteProgram(handle);
+			String infoLog = GL.get().glGetProgramInfoLog(handle);
+			GL.get().glDeleteProgram(handle);
 			handle = 0;
 			throw new GLException(0, "Error linking program. \n" + infoLog);
 		}
@@ -69,10 +88,13 @@ public class Program implements EGLContextLostListener {
 		Log.d(TAG, "Program successfully created and linked!");
 		loaded = true;
 
-		a_pos = GLES20.glGetAttribLocation(handle, ShaderLib.A_POS);
-		a_normal = GLES20.glGetAttribLocation(handle, ShaderLib.A_NORMAL);
-		a_mtl = GLES20.glGetAttribLocation(handle, ShaderLib.A_MTL);
-		a_model = GLES20.glGetAttribLocation(handle, ShaderLib.A_MODEL);
+		a_pos = GL.get().glGetAttribLocation(handle, ShaderLib.A_POS);
+		a_normal = GL.get().glGetAttribLocation(handle, ShaderLib.A_NORMAL);
+		a_mtl = GL.get().glGetAttribLocation(handle, ShaderLib.A_MTL);
+		a_model = GL.get().glGetAttribLocation(handle, ShaderLib.A_MODEL);
+		a_instance = GL.get().glGetAttribLocation(handle, ShaderLib.A_INSTANCE);
+		attribs.clear();
+		clearUniforms();
 
 		return handle;
 	}
@@ -93,11 +115,14 @@ public class Program implements EGLContextLostListener {
 		} else if (name.equals(ShaderLib.A_MODEL)) {
 			return a_model;
 
+		} else if (name.equals(ShaderLib.A_INSTANCE)) {
+			return a_instance;
+
 		} else if (attribs.containsKey(name)) {
 			return attribs.get(name);
 
 		} else {
-			int location = GLES20.glGetAttribLocation(handle, name);
+			int location = GL.get().glGetAttribLocation(handle, name);
 			attribs.put(name, location);
 			return location;
 		}
@@ -108,7 +133,115 @@ public class Program implements EGLContextLostListener {
 		if (!loaded) {
 			throw new IllegalStateException("Program is not loaded");
 		}
-		return GLES20.glGetUniformLocation(handle, name);
+		Integer location = uniforms.get(name);
+		if (location == null) {
+			location = GL.get().glGetUniformLocation(handle, name);
+			uniforms.put(name, location);
+		}
+		return location;
+	}
+
+	/**
+	 * Sets a mat4 uniform of this program, unless it already has the given
+	 * value. This program must be in use.
+	 * 
+	 * @param location
+	 *            The location of the uniform.
+	 * @param value
+	 *            The array containing the matrix.
+	 * @param offset
+	 *            The offset of the matrix in <code>value</code>.
+	 */
+	public void setUniformMatrix4fv(int location, float[] value, int offset) {
+		if (changed(location, value, offset, 16)) {
+			GL.get().glUniformMatrix4fv(location, 1, false, value, offset);
+		}
+	}
+
+	/**
+	 * Sets a vec3 uniform of this program, unless it already has the given
+	 * value. This program must be in use.
+	 * 
+	 * @param location
+	 *            The location of the uniform.
+	 * @param value
+	 *            The array containing the vector.
+	 * @param offset
+	 *            The offset of the vector in <code>value</code>.
+	 */
+	public void setUniform3fv(int location, float[] value, int offset) {
+		if (changed(location, value, offset, 3)) {
+			GL.get().glUniform3fv(location, 1, value, offset);
+		}
+	}
+
+	/**
+	 * Sets an int (or sampler) uniform of this program, unless it already has
+	 * the given value. This program must be in use.
+	 * 
+	 * @param location
+	 *            The location of the uniform.
+	 * @param value
+	 *            The new value.
+	 */
+	public void setUniform1i(int location, int value) {
+		if (location < 0) {
+			return;
+		}
+		float[] cached = cachedValue(location, 1);
+		if (cached[0] != value || cached[1] == 0) {
+			cached[0] = value;
+			cached[1] = 1;
+			GL.get().glUniform1i(location, value);
+		}
+	}
+
+	/**
+	 * Compares <code>length</code> values with the values last uploaded to the
+	 * given uniform, and stores them if they differ.
+	 * 
+	 * @return true if the uniform needs to be uploaded.
+	 */
+	private boolean changed(int location, float[] value, int offset, int length) {
+		if (location < 0) {
+			return false;
+		}
+		float[] cached = cachedValue(location, length);
+		boolean changed = cached[length] == 0;
+		for (int i = 0; i < length && !changed; i++) {
+			changed = cached[i] != value[offset + i];
+		}
+		if (changed) {
+			System.arraycopy(value, offset, cached, 0, length);
+			cached[length] = 1;
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns the cache of the given uniform. The last element of the array is
+	 * 1 once a value has been uploaded.
+	 */
+	private float[] cachedValue(int location, int length) {
+		if (location >= uniformValues.length) {
+			float[][] grown = new float[Math.max(location + 1,
+					uniformValues.length * 2)][];
+			System.arraycopy(uniformValues, 0, grown, 0, uniformValues.length);
+			uniformValues = grown;
+		}
+		float[] cached = uniformValues[location];
+		if (cached == null || cached.length != length + 1) {
+			cached = new float[length + 1];
+			uniformValues[location] = cached;
+		}
+		return cached;
+	}
+
+	private void clearUniforms() {
+		uniforms.clear();
+		for (int i = 0; i < uniformValues.length; i++) {
+			uniformValues[i] = null;
+		}
 	}
 
 	public boolean isLoaded() {
@@ -122,14 +255,16 @@ public class Program implements EGLContextLostListener {
 	@Override
 	public void onContextLost() {
 		Log.d("Program", "received context lost notification");
-		if (!GLES20.glIsProgram(handle)){
+		if (!GL.get().glIsProgram(handle)){
 			Log.d("Program", "handle is not a program.");
 			loaded = false;
 			handle = -1;
 			a_model = -1;
+			a_instance = -1;
 			a_mtl = -1;
 			a_pos = -1;
 			a_normal = -1;
+			clearUniforms();
 		}
 	}
 }
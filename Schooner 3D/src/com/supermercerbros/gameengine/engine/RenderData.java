@@ -1,22 +1,148 @@
 package com.supermercerbros.gameengine.engine;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
 import com.supermercerbros.gameengine.objects.Metadata;
 
+/**
+ * Contains the data for one frame. These are allocated by the
+ * {@link DataPipe} and reused for every frame.
+ */
 public class RenderData {
-	public int[] vbo;
-	public short[] ibo;
-	int ibo_updatePos;
+	/**
+	 * The vertex data of this frame, in a native-order direct buffer that the
+	 * renderer uploads as-is. Its position is always 0.
+	 */
+	public final FloatBuffer vbo;
+	/**
+	 * The index data of this frame, in a native-order direct buffer that the
+	 * renderer uploads as-is. Its position is always 0.
+	 */
+	public final ShortBuffer ibo;
+	/**
+	 * The number of floats in <code>vbo</code> that are used by this frame.
+	 */
+	public int vboUsed;
+	/**
+	 * The range of floats in <code>vbo</code> (from vboDirtyStart, inclusive,
+	 * to vboDirtyEnd, exclusive) that differs from the previous frame.
+	 */
+	public int vboDirtyStart, vboDirtyEnd;
+	/**
+	 * The number of indices in <code>ibo</code> that are used by this frame.
+	 */
+	public int iboUsed;
+	/**
+	 * Identifies the arrangement of objects in the buffers. Frames with equal
+	 * layoutVersions have identical index data. Starts at -1 so that a new
+	 * buffer's indices are always loaded.
+	 */
+	public int layoutVersion = -1;
+	/**
+	 * The number of this frame. Consecutive frames have consecutive sequence
+	 * numbers.
+	 */
+	public long sequence = 0;
+
+	/**
+	 * The model matrices of the Engine's TransformStore, indexed by slot (see
+	 * <code>matrixSlots</code>).
+	 */
+	public final float[] modelMatrices;
+	/**
+	 * The model matrices of the previous simulation step. Only valid if
+	 * <code>step</code> is greater than 0.
+	 */
+	public final float[] prevModelMatrices;
+	/**
+	 * The point between <code>prevModelMatrices</code> and
+	 * <code>modelMatrices</code> at which this frame should be drawn, as of
+	 * <code>frameTime</code>.
+	 */
+	public float alpha = 1.0f;
+	/**
+	 * The length of one simulation step, in milliseconds, or 0 if the Engine is
+	 * not in fixed-timestep mode.
+	 */
+	public long step = 0;
+	/**
+	 * The real time, in milliseconds, at which this frame was completed.
+	 */
+	public long frameTime;
+	public final float[] viewMatrix = new float[16];
+	public final float[] light = new float[3];
+	public final float[] color = new float[3];
 
-	public float[] modelMatrices;
-	public float[] viewMatrix = new float[16];
-	public float[] light;
-	public float[] color;
+	/**
+	 * The primitives of this frame. Only the first <code>primitiveCount</code>
+	 * are valid.
+	 */
+	public final Metadata[] primitives;
+	/**
+	 * The number of primitives in this frame.
+	 */
+	public int primitiveCount;
+	/**
+	 * The indices of the primitives, in the order in which they should be
+	 * drawn. Set by the {@link RenderQueue}.
+	 */
+	public final int[] drawOrder;
+	/**
+	 * The byte offsets of the primitives' vertex and index data in the VBO and
+	 * IBO. Unused for primitives that have a StaticMesh.
+	 */
+	public final int[] vboOffsets, iboOffsets;
+	/**
+	 * The slot of each primitive's model matrix in
+	 * <code>modelMatrices</code> and <code>prevModelMatrices</code>.
+	 */
+	public final int[] matrixSlots;
+	/**
+	 * The vertex data version of the GameObject that was packed for each
+	 * primitive of this RenderData, so that the Engine only has to repack the
+	 * objects that changed since this buffer was last filled. Only valid while
+	 * <code>layoutVersion</code> is current. Used by the Engine.
+	 */
+	final int[] vertsVersions;
+
+	RenderData(int vboCapacity, int iboCapacity, int maxObjects) {
+		vbo = ByteBuffer.allocateDirect(vboCapacity)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		ibo = ByteBuffer.allocateDirect(iboCapacity)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		modelMatrices = new float[maxObjects * 16];
+		prevModelMatrices = new float[maxObjects * 16];
+		primitives = new Metadata[maxObjects];
+		drawOrder = new int[maxObjects];
+		vboOffsets = new int[maxObjects];
+		iboOffsets = new int[maxObjects];
+		matrixSlots = new int[maxObjects];
+		vertsVersions = new int[maxObjects];
+	}
+
+	/**
+	 * Returns the point between the previous and current simulation states at
+	 * which this frame should be drawn at the given time. If the same frame is
+	 * drawn more than once, this keeps advancing so that motion stays smooth.
+	 *
+	 * @param now
+	 *            The current time, in milliseconds.
+	 * @return The interpolation point, from 0.0f to 1.0f.
+	 */
+	public float getAlpha(long now) {
+		if (step <= 0) {
+			return 1.0f;
+		}
+		float a = alpha + (float) (now - frameTime) / step;
+		return (a < 1.0f) ? a : 1.0f;
+	}
 
-	public Metadata[] primitives;
-	
 	protected RenderData prep(){
-		for (Metadata primitive : primitives){
-			primitive.prep();
+		for (int i = 0; i < primitiveCount; i++) {
+			primitives[i].prep();
 		}
 		return this;
 	}
@@ -0,0 +1,184 @@
+package com.supermercerbros.gameengine.engine;
+
+import java.util.Arrays;
+
+import com.supermercerbros.gameengine.objects.Material;
+import com.supermercerbros.gameengine.objects.Metadata;
+import com.supermercerbros.gameengine.objects.StaticMesh;
+
+/**
+ * Decides the order in which the primitives of a frame are drawn. Each
+ * primitive is given a 64-bit sort key, and the keys are radix-sorted so that
+ * primitives that use the same program and texture are drawn one after
+ * another. Opaque primitives are drawn front-to-back within each group, so
+ * that the depth test rejects hidden fragments early. Translucent primitives
+ * are drawn after all of the opaque ones, back-to-front.
+ * <p>
+ * Opaque keys, from the most significant bit down:
+ *
+ * <pre>
+ * 0 | program (15) | texture (16) | mesh (16) | depth (16)
+ * </pre>
+ *
+ * Translucent keys:
+ *
+ * <pre>
+ * 1 | inverted depth (24) | program (15) | texture (16) | mesh (8)
+ * </pre>
+ *
+ * The mesh id numbers the StaticMeshes of each frame from 1 (0 means no
+ * StaticMesh), so that the instances of a mesh stay together for the
+ * renderer to draw in batches. Opaque depths keep the top 16 bits of the
+ * distance (8 bits of mantissa), which is enough to draw roughly front to
+ * back.
+ * <p>
+ * Only used by the Engine thread.
+ */
+class RenderQueue {
+	private static final long TRANSLUCENT = 1L << 63;
+	private static final int DEPTH_MASK = 0xFFFFFF;
+	private static final int MESH_MASK = 0xFFFF;
+
+	private final long[] keys;
+	private final long[] tempKeys;
+	private final int[] tempOrder;
+	private final int[] counts = new int[256];
+	/**
+	 * The number of the frame being sorted, which tells which StaticMeshes
+	 * have been given a mesh id in it.
+	 */
+	private int frame = 0;
+	private int nextMeshId;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of primitives in a frame.
+	 */
+	RenderQueue(int capacity) {
+		keys = new long[capacity];
+		tempKeys = new long[capacity];
+		tempOrder = new int[capacity];
+	}
+
+	/**
+	 * Fills <code>out.drawOrder</code> with the indices of the frame's
+	 * primitives, in the order that they should be drawn. The primitives,
+	 * model matrices and view matrix of <code>out</code> must already be
+	 * loaded.
+	 *
+	 * @param out
+	 *            The frame to sort.
+	 */
+	void sort(RenderData out) {
+		final int n = out.primitiveCount;
+		final int[] order = out.drawOrder;
+		final float[] view = out.viewMatrix;
+		final float[] models = out.modelMatrices;
+		frame++;
+		nextMeshId = 1;
+		for (int i = 0; i < n; i++) {
+			final int m = out.matrixSlots[i] * 16;
+			// The distance in front of the camera of the object's origin
+			final float z = -(view[2] * models[m + 12] + view[6]
+					* models[m + 13] + view[10] * models[m + 14] + view[14]);
+			final Metadata primitive = out.primitives[i];
+			keys[i] = makeKey(primitive, z, meshId(primitive.mesh));
+			order[i] = i;
+		}
+		if (n > 1) {
+			radixSort(n, order);
+		}
+	}
+
+	/**
+	 * @return The id of <code>mesh</code> in the current frame, numbering it
+	 *         if this is its first primitive in the frame, or 0 if it is null.
+	 */
+	private int meshId(StaticMesh mesh) {
+		if (mesh == null) {
+			return 0;
+		}
+		if (mesh.queueFrame != frame) {
+			mesh.queueFrame = frame;
+			// Only wraps with more than 65535 meshes in one frame
+			mesh.queueId = nextMeshId++ & MESH_MASK;
+		}
+		return mesh.queueId;
+	}
+
+	/**
+	 * Builds the sort key of a primitive.
+	 *
+	 * @param primitive
+	 *            The Metadata of the primitive.
+	 * @param distance
+	 *            The distance of the primitive from the camera.
+	 * @param meshId
+	 *            The id of the primitive's StaticMesh in this frame, or 0.
+	 * @return The sort key.
+	 */
+	static long makeKey(Metadata primitive, float distance, int meshId) {
+		final Material mtl = primitive.mtl;
+		final long program = mtl.getProgramSortId() & 0x7FFF;
+		final long texture = mtl.getTextureSortId() & 0xFFFF;
+		final long mesh = meshId & MESH_MASK;
+
+		// The bits of a non-negative float sort in the same order as its value.
+		if (!(distance > 0.0f)) {
+			distance = 0.0f; // Also catches NaN
+		}
+		final int bits = Float.floatToIntBits(distance);
+
+		if (mtl.isTranslucent()) {
+			final int depth = bits >>> 7;
+			return TRANSLUCENT | ((long) (~depth & DEPTH_MASK) << 39)
+					| (program << 24) | (texture << 8) | (mesh & 0xFF);
+		} else {
+			final int depth = bits >>> 15;
+			return (program << 48) | (texture << 32) | (mesh << 16) | depth;
+		}
+	}
+
+	/**
+	 * Sorts the first <code>n</code> keys (unsigned), applying the same
+	 * permutation to <code>order</code>, one byte at a time. Bytes that are
+	 * the same in every key are skipped.
+	 */
+	private void radixSort(int n, int[] order) {
+		long[] srcKeys = keys, dstKeys = tempKeys;
+		int[] srcOrder = order, dstOrder = tempOrder;
+
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++) {
+				counts[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+			}
+			if (counts[(int) (srcKeys[0] >>> shift) & 0xFF] == n) {
+				continue;
+			}
+
+			int total = 0;
+			for (int b = 0; b < 256; b++) {
+				final int c = counts[b];
+				counts[b] = total;
+				total += c;
+			}
+			for (int i = 0; i < n; i++) {
+				final int d = counts[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+				dstKeys[d] = srcKeys[i];
+				dstOrder[d] = srcOrder[i];
+			}
+
+			long[] k = srcKeys;
+			srcKeys = dstKeys;
+			dstKeys = k;
+			int[] o = srcOrder;
+			srcOrder = dstOrder;
+			dstOrder = o;
+		}
+
+		if (srcOrder != order) {
+			System.arraycopy(srcOrder, 0, order, 0, n);
+		}
+	}
+}
@@ -2,7 +2,9 @@ package com.supermercerbros.gameengine.engine;
 
 import android.opengl.GLES20;
 import android.opengl.GLException;
-import android.util.Log;
+
+import com.supermercerbros.gameengine.gl.GL;
+import com.supermercerbros.gameengine.util.Log;
 
 public class Shader {
 	private static final String TAG = "com.supermercerbros.gameengine.engine.Shader";
@@ -19,23 +21,23 @@ public class Shader {
 		if (loaded) {
 			return handle;
 		}
-		handle = GLES20.glCreateShader(type);
+		handle = GL.get().glCreateShader(type);
 		if (handle == 0) {
 			int error = GameRenderer.logError("glCreateShader(" + type + ")");
 			throw new GLException(error, "CreateShader failed");
 		}
-		GLES20.glShaderSource(handle, source);
+		GL.get().glShaderSource(handle, source);
 		GameRenderer.logError("glShaderSource(handle, source)");
-		GLES20.glCompileShader(handle);
+		GL.get().glCompileShader(handle);
 		
 		// Check compile status
 		int[] compiled = { 0 };
-		GLES20.glGetShaderiv(handle, GLES20.GL_COMPILE_STATUS, compiled, 0);
+		GL.get().glGetShaderiv(handle, GLES20.GL_COMPILE_STATUS, compiled, 0);
 		if (compiled[0] != GLES20.GL_TRUE) {
-			Log.e(TAG, "Error compiling shader. \n" + GLES20.glGetShaderInfoLog(handle));
+			Log.e(TAG, "Error compiling shader. \n" + GL.get().glGetShaderInfoLog(handle));
 			
 			// Undo the shader
-			GLES20.glDeleteShader(handle);
+			GL.get().glDeleteShader(handle);
 			return 0;
 		}
 		
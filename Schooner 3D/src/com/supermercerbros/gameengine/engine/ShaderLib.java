@@ -11,8 +11,8 @@ import org.xmlpull.v1.XmlPullParserFactory;
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.content.res.XmlResourceParser;
-import android.util.Log;
 
+import com.supermercerbros.gameengine.util.Log;
 import com.supermercerbros.gameengine.util.Utils;
 
 public class ShaderLib {
@@ -22,10 +22,30 @@ public class ShaderLib {
 	public static final String A_NORMAL = "a_normal";
 	public static final String A_MTL = "a_mtl";
 	public static final String A_MODEL = "a_model";
+	public static final String A_INSTANCE = "a_instance";
+
+	/*
+	 * Every program binds the standard attributes to these locations before it
+	 * is linked, so that a Material's attribute handles are valid for both its
+	 * normal and its instanced program. a_model is a mat4, so it takes up four
+	 * locations.
+	 */
+	public static final int LOC_POS = 0;
+	public static final int LOC_NORMAL = 1;
+	public static final int LOC_MTL = 2;
+	public static final int LOC_INSTANCE = 3;
+	public static final int LOC_MODEL = 4;
 
 	public static final String U_LIGHTVEC = "u_lightVec";
 	public static final String U_LIGHTCOLOR = "u_lightColor";
 	public static final String U_VIEWPROJ = "u_viewProj";
+	public static final String U_MODELS = "u_models";
+
+	/**
+	 * The length of the <code>u_models</code> array in the instanced shaders,
+	 * which is the most instances that can be drawn in one draw call.
+	 */
+	public static final int MAX_INSTANCES = 16;
 
 	public static final String S_BASEMAP = "s_baseMap";
 
@@ -114,6 +134,43 @@ public class ShaderLib {
 		}
 	}
 
+	/**
+	 * Initializes the ShaderLib without a Context, and so without any
+	 * programs; they must be added with
+	 * {@link #addProgram(String, String, String)}. This is for running the
+	 * renderer without a device, on a {@link com.supermercerbros.gameengine.gl.NullGL}.
+	 */
+	public static synchronized void initWithoutContext() {
+		if (initialized) {
+			return;
+		}
+		initialized = true;
+		programs = new HashMap<String, Program>();
+		shaders = new HashMap<String, Shader>();
+	}
+
+	/**
+	 * Adds a program built from the given shader sources, unless there is
+	 * already a program with the same name.
+	 * 
+	 * @param name
+	 *            The name of the program.
+	 * @param vertexSource
+	 *            The source of the vertex shader.
+	 * @param fragmentSource
+	 *            The source of the fragment shader.
+	 */
+	public static synchronized void addProgram(String name,
+			String vertexSource, String fragmentSource) {
+		if (!initialized) {
+			throw new IllegalStateException("ShaderLib has not been initialized.");
+		}
+		if (!programs.containsKey(name)) {
+			addProgram(name, new Program(new Shader(vertexSource), new Shader(
+					fragmentSource)));
+		}
+	}
+
 	private static synchronized void addProgram(String name, Program program) {
 		programs.put(name, program);
 		Log.d(TAG, "Added program \"" + name + "\"");
@@ -1,6 +1,10 @@
 package com.supermercerbros.gameengine.engine;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.supermercerbros.gameengine.debug.Tracer;
 import com.supermercerbros.gameengine.engine.EGLContextLostHandler.EGLContextLostListener;
+import com.supermercerbros.gameengine.gl.GL;
 
 import android.opengl.GLES20;
 
@@ -12,9 +16,11 @@ import android.opengl.GLES20;
  * 
  */
 public abstract class Texture implements EGLContextLostListener {
+	private static final AtomicInteger nextSortId = new AtomicInteger(1);
+
 	protected static int genTextureHandle() {
 		int[] handle = {0};
-		GLES20.glGenTextures(1, handle, 0);
+		GL.get().glGenTextures(1, handle, 0);
 		return handle[0];
 	}
 
@@ -23,6 +29,18 @@ public abstract class Texture implements EGLContextLostListener {
 	 */
 	protected int handle = -1;
 	private boolean loaded = false;
+	/**
+	 * Identifies this Texture in render queue sort keys.
+	 */
+	private final int sortId = nextSortId.getAndIncrement();
+
+	/**
+	 * @return A small number that is unique to this Texture, used to group
+	 *         primitives that are drawn with it.
+	 */
+	public int getSortId() {
+		return sortId;
+	}
 
 	/**
 	 * This is called to load the Texture into the OpenGL context.
@@ -41,38 +59,63 @@ public abstract class Texture implements EGLContextLostListener {
 	 * @param programHandle
 	 */
 	public void use(int glTexture, String samplerName, int programHandle) {
-		if (!loaded) {
-			load();
-			loaded = true;
-			EGLContextLostHandler.addListener(this);
-		}
+		ensureLoaded();
 		
-		int samplerLoc = GLES20.glGetUniformLocation(programHandle,
+		int samplerLoc = GL.get().glGetUniformLocation(programHandle,
 				samplerName);
 		GameRenderer.logError("Texture.java: GetUniformLocation");
 
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + glTexture);
-		GameRenderer.logError("ActiveTexture(GL_TEXTURE" + glTexture + ")");
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+		GLState.bindTexture(glTexture, handle);
 		GameRenderer.logError("BindTexture");
 
-		GLES20.glUniform1i(samplerLoc, glTexture);
+		GL.get().glUniform1i(samplerLoc, glTexture);
 		GameRenderer.logError("Uniform1i");
 	}
 
+	/**
+	 * This is called during rendering. Unlike
+	 * {@link #use(int, String, int)}, this skips the texture binding and the
+	 * sampler uniform if they are already set.
+	 * 
+	 * @param glTexture
+	 *            The index of the GL texture to bind to.
+	 * @param samplerName
+	 *            The name of the sampler uniform.
+	 * @param program
+	 *            The program that is in use.
+	 */
+	public void use(int glTexture, String samplerName, Program program) {
+		ensureLoaded();
+
+		GLState.bindTexture(glTexture, handle);
+		program.setUniform1i(program.getUniformLocation(samplerName),
+				glTexture);
+	}
+
+	private void ensureLoaded() {
+		if (!loaded) {
+			final long traceStart = Tracer.begin();
+			load();
+			Tracer.end("Texture.load", traceStart);
+			loaded = true;
+			EGLContextLostHandler.addListener(this);
+		}
+	}
+
 	/**
 	 * Unloads this texture from the GPU
 	 */
 	public void unload() {
 		int[] tex = { handle };
-		GLES20.glDeleteTextures(1, tex, 0);
+		GL.get().glDeleteTextures(1, tex, 0);
+		GLState.forgetTexture(handle);
 		loaded = false;
 		handle = -1;
 	}
 	
 	@Override
 	public final void onContextLost(){
-		if (!GLES20.glIsTexture(handle)){ 
+		if (!GL.get().glIsTexture(handle)){ 
 			loaded = false;
 			handle = -1;
 		}
@@ -12,6 +12,8 @@ import android.graphics.BitmapFactory;
 import android.opengl.ETC1Util;
 import android.opengl.ETC1Util.ETC1Texture;
 
+import com.supermercerbros.gameengine.debug.Tracer;
+
 public class TextureLib {
 	@SuppressWarnings("unused")
 	private static final String TAG = "com.supermercerbros.gameengine.engine.TextureLib";
@@ -69,7 +71,9 @@ public class TextureLib {
 			throw new IllegalStateException(
 					"TextureLib has not been initialized");
 
+		final long traceStart = Tracer.begin();
 		Bitmap bmp = BitmapFactory.decodeResource(res, id, opts);
+		Tracer.end("TextureLib.loadTexture", traceStart);
 		if (bmp == null) {
 			throw new IOException("Could not load resource");
 		}
@@ -100,6 +104,7 @@ public class TextureLib {
 		String[] nameParts = name.split("\\.");
 		String ext = nameParts[nameParts.length - 1];
 
+		final long traceStart = Tracer.begin();
 		InputStream is = am.open(fileName);
 		if (ext.equals("pkm")) {
 			ETC1Texture tex = ETC1Util.createTexture(is);
@@ -111,6 +116,7 @@ public class TextureLib {
 			}
 			textures.put(name, new BitmapTexture(tex));
 		}
+		Tracer.end("TextureLib.loadTexture", traceStart);
 		return name;
 	}
 
@@ -0,0 +1,215 @@
+package com.supermercerbros.gameengine.engine;
+
+/**
+ * Runs Runnables after a delay, or repeatedly, on the Engine thread. Time is
+ * measured in milliseconds of Engine time, which only advances while the
+ * Engine is running, so timers pause with the Engine.
+ * <p>
+ * This is a hierarchical timer wheel: pending timers are kept in linked lists
+ * in {@link #LEVELS} rings of {@link #SLOTS} slots each, where each slot of a
+ * level covers {@link #SLOTS} times as much time as a slot of the level below
+ * it. Scheduling, cancelling and expiring a timer take constant time; timers
+ * due more than {@link #SLOTS} ms in the future are moved down a level when
+ * the level below wraps around.
+ * <p>
+ * A TimerWheel is not synchronized, and must only be used by the Engine
+ * thread. Other threads schedule timers through
+ * {@link Engine#doRunnable(Runnable, long)}.
+ */
+public class TimerWheel {
+	private static final int SLOT_BITS = 6;
+	/**
+	 * The number of slots per level.
+	 */
+	public static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	/**
+	 * The number of levels. Timers due further in the future than the wheel
+	 * spans (about 4.6 hours) are put in the last slot of the top level, and
+	 * moved back up until they are due.
+	 */
+	public static final int LEVELS = 4;
+	private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+	/**
+	 * A Runnable scheduled on a TimerWheel.
+	 */
+	public static class Timer {
+		private final Runnable r;
+		private final long delay;
+		private final long period;
+		private long deadline;
+		private volatile boolean cancelled = false;
+		/**
+		 * The next timer in the same slot.
+		 */
+		private Timer next;
+
+		/**
+		 * @param r
+		 *            The Runnable to run.
+		 * @param delay
+		 *            The time until the first run, in milliseconds. Timers
+		 *            with a delay of 0 or less run at the next
+		 *            {@link TimerWheel#advance(long)}.
+		 * @param period
+		 *            The time between runs, in milliseconds, or 0 to only run
+		 *            once.
+		 */
+		Timer(Runnable r, long delay, long period) {
+			if (period < 0) {
+				throw new IllegalArgumentException("period < 0");
+			}
+			this.r = r;
+			this.delay = delay;
+			this.period = period;
+		}
+
+		/**
+		 * Stops this timer from running again. This may be called from any
+		 * thread; if it is called while the Runnable is running on the Engine
+		 * thread, the current run is not affected. The timer is discarded the
+		 * next time the wheel reaches its slot.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * @return true if {@link #cancel()} has been called.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	/**
+	 * The heads of the timer lists of each level.
+	 */
+	private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+	/**
+	 * The current time, in ms.
+	 */
+	private long now = 0;
+	/**
+	 * The number of scheduled timers, including cancelled timers that haven't
+	 * been discarded yet.
+	 */
+	private int count = 0;
+
+	/**
+	 * Schedules a new timer, to first run after its delay from now.
+	 */
+	void schedule(Timer timer) {
+		timer.deadline = now + Math.max(timer.delay, 1);
+		insert(timer);
+		count++;
+	}
+
+	/**
+	 * Puts a timer in the slot for its deadline.
+	 */
+	private void insert(Timer timer) {
+		final long delta = timer.deadline - now;
+		// The time used to choose a slot; timers past the span of the wheel
+		// are placed as far away as possible, and re-inserted when they
+		// reach the bottom level.
+		final long t = (delta < SPAN) ? timer.deadline : now + SPAN - 1;
+		int level = 0;
+		while (level < LEVELS - 1
+				&& delta >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+		final Timer[] slots = wheels[level];
+		final int slot = (int) (t >>> (SLOT_BITS * level)) & SLOT_MASK;
+		timer.next = slots[slot];
+		slots[slot] = timer;
+	}
+
+	/**
+	 * Detaches and returns the list of timers in a slot.
+	 */
+	private static Timer take(Timer[] slots, int slot) {
+		final Timer head = slots[slot];
+		slots[slot] = null;
+		return head;
+	}
+
+	/**
+	 * Advances the time, running every timer that comes due, in order of
+	 * deadline (timers with the same deadline run in no particular order).
+	 *
+	 * @param millis
+	 *            The time that has passed, in milliseconds.
+	 */
+	void advance(long millis) {
+		final long target = now + Math.max(millis, 0);
+		while (now < target) {
+			if (count == 0) {
+				now = target;
+				return;
+			}
+			now++;
+			// Move timers down from the higher levels whose slot has come up.
+			int level = 1;
+			while (level < LEVELS
+					&& (now & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+				level++;
+			}
+			for (int l = level - 1; l > 0; l--) {
+				Timer timer = take(wheels[l],
+						(int) (now >>> (SLOT_BITS * l)) & SLOT_MASK);
+				while (timer != null) {
+					final Timer next = timer.next;
+					timer.next = null;
+					if (timer.cancelled) {
+						count--;
+					} else {
+						insert(timer);
+					}
+					timer = next;
+				}
+			}
+			expire(take(wheels[0], (int) now & SLOT_MASK));
+		}
+	}
+
+	/**
+	 * Runs or reschedules each timer of a list that was in the bottom level.
+	 */
+	private void expire(Timer timer) {
+		while (timer != null) {
+			final Timer next = timer.next;
+			timer.next = null;
+			if (timer.cancelled) {
+				count--;
+			} else if (timer.deadline > now) {
+				insert(timer); // Was past the span of the wheel
+			} else {
+				timer.r.run();
+				if (timer.period > 0 && !timer.cancelled) {
+					timer.deadline += timer.period;
+					insert(timer);
+				} else {
+					count--;
+				}
+			}
+			timer = next;
+		}
+	}
+
+	/**
+	 * @return The current time of this TimerWheel, in milliseconds.
+	 */
+	public long getTime() {
+		return now;
+	}
+
+	/**
+	 * @return The number of scheduled timers, which may include cancelled
+	 *         ones.
+	 */
+	public int size() {
+		return count;
+	}
+}
@@ -0,0 +1,291 @@
+package com.supermercerbros.gameengine.engine;
+
+import com.supermercerbros.gameengine.math.Matrix;
+
+/**
+ * Stores the transforms of many GameObjects in flat arrays, indexed by slot.
+ * Each slot has a position, a rotation (a quaternion), a scale, and the
+ * model matrix built from them, as well as the model matrix of the previous
+ * simulation step. Keeping them together means the Engine can hand all of the
+ * matrices to the renderer in one copy, and that transforms can be updated
+ * in ranges of slots (for example, by several threads at once).
+ * <p>
+ * A slot's matrix is either built from its position, rotation and scale by
+ * {@link #updateMatrices()}, after one of them is set, or written directly
+ * (such as by a {@link com.supermercerbros.gameengine.animation.Movement})
+ * and followed by a call to {@link #matrixChanged(int)}. In the second case,
+ * the position, rotation and scale are not updated to match.
+ * <p>
+ * A TransformStore is not synchronized; the Engine's store must only be used
+ * by the Engine thread.
+ */
+public class TransformStore {
+	/**
+	 * The position of each slot, as x, y and z.
+	 */
+	public final float[] positions;
+	/**
+	 * The rotation of each slot, as a quaternion (x, y, z, w).
+	 */
+	public final float[] rotations;
+	/**
+	 * The scale of each slot, along x, y and z.
+	 */
+	public final float[] scales;
+	/**
+	 * The model matrix of each slot, at <code>slot * 16</code>.
+	 */
+	public final float[] matrices;
+	/**
+	 * The model matrix of each slot as of the previous simulation step. Only
+	 * used in fixed-timestep mode.
+	 */
+	public final float[] prevMatrices;
+	/**
+	 * True for each slot whose position, rotation or scale has been set since
+	 * its matrix was last built.
+	 */
+	private final boolean[] dirty;
+
+	private final int capacity;
+	/**
+	 * The released slots, which are reused before new ones.
+	 */
+	private final int[] freeSlots;
+	private int freeCount = 0;
+	/**
+	 * One more than the highest slot that has ever been allocated.
+	 */
+	private int slotCount = 0;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of slots.
+	 */
+	public TransformStore(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity < 1");
+		}
+		this.capacity = capacity;
+		positions = new float[capacity * 3];
+		rotations = new float[capacity * 4];
+		scales = new float[capacity * 3];
+		matrices = new float[capacity * 16];
+		prevMatrices = new float[capacity * 16];
+		dirty = new boolean[capacity];
+		freeSlots = new int[capacity];
+	}
+
+	/**
+	 * Allocates a slot, set to the identity transform.
+	 *
+	 * @return The index of the slot.
+	 * @throws IllegalStateException
+	 *             if every slot is in use.
+	 */
+	public int allocate() {
+		final int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else if (slotCount < capacity) {
+			slot = slotCount++;
+		} else {
+			throw new IllegalStateException("TransformStore is full ("
+					+ capacity + " slots)");
+		}
+		reset(slot);
+		return slot;
+	}
+
+	/**
+	 * Releases a slot so that it can be allocated again.
+	 *
+	 * @param slot
+	 *            A slot returned by {@link #allocate()}.
+	 */
+	public void release(int slot) {
+		if (slot < 0 || slot >= slotCount) {
+			throw new IllegalArgumentException("Invalid slot: " + slot);
+		}
+		reset(slot);
+		freeSlots[freeCount++] = slot;
+	}
+
+	private void reset(int slot) {
+		positions[slot * 3 + 0] = 0.0f;
+		positions[slot * 3 + 1] = 0.0f;
+		positions[slot * 3 + 2] = 0.0f;
+		rotations[slot * 4 + 0] = 0.0f;
+		rotations[slot * 4 + 1] = 0.0f;
+		rotations[slot * 4 + 2] = 0.0f;
+		rotations[slot * 4 + 3] = 1.0f;
+		scales[slot * 3 + 0] = 1.0f;
+		scales[slot * 3 + 1] = 1.0f;
+		scales[slot * 3 + 2] = 1.0f;
+		Matrix.setIdentityM(matrices, slot * 16);
+		Matrix.setIdentityM(prevMatrices, slot * 16);
+		dirty[slot] = false;
+	}
+
+	/**
+	 * @return The maximum number of slots.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return One more than the highest slot that has been allocated. Every
+	 *         slot in use is below this.
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	public void setPosition(int slot, float x, float y, float z) {
+		positions[slot * 3 + 0] = x;
+		positions[slot * 3 + 1] = y;
+		positions[slot * 3 + 2] = z;
+		dirty[slot] = true;
+	}
+
+	/**
+	 * Sets the rotation of a slot to the given quaternion, which should be
+	 * normalized.
+	 */
+	public void setRotation(int slot, float x, float y, float z, float w) {
+		rotations[slot * 4 + 0] = x;
+		rotations[slot * 4 + 1] = y;
+		rotations[slot * 4 + 2] = z;
+		rotations[slot * 4 + 3] = w;
+		dirty[slot] = true;
+	}
+
+	public void setScale(int slot, float x, float y, float z) {
+		scales[slot * 3 + 0] = x;
+		scales[slot * 3 + 1] = y;
+		scales[slot * 3 + 2] = z;
+		dirty[slot] = true;
+	}
+
+	/**
+	 * Sets the model matrix of a slot.
+	 *
+	 * @param slot
+	 *            The slot to set.
+	 * @param m
+	 *            The array containing the matrix.
+	 * @param offset
+	 *            The offset into <code>m</code> of the matrix.
+	 */
+	public void setMatrix(int slot, float[] m, int offset) {
+		System.arraycopy(m, offset, matrices, slot * 16, 16);
+		dirty[slot] = false;
+	}
+
+	/**
+	 * Copies the model matrix of a slot into <code>m</code>.
+	 */
+	public void getMatrix(int slot, float[] m, int offset) {
+		System.arraycopy(matrices, slot * 16, m, offset, 16);
+	}
+
+	/**
+	 * Tells this TransformStore that the matrix of a slot has been written
+	 * directly into {@link #matrices}, so it must not be rebuilt from the
+	 * slot's position, rotation and scale.
+	 */
+	public void matrixChanged(int slot) {
+		dirty[slot] = false;
+	}
+
+	/**
+	 * Rebuilds the matrix of every slot whose position, rotation or scale has
+	 * changed.
+	 */
+	public void updateMatrices() {
+		updateMatrices(0, slotCount);
+	}
+
+	/**
+	 * Rebuilds the matrices of the slots from <code>start</code>
+	 * (inclusive) to <code>end</code> (exclusive) whose position, rotation or
+	 * scale has changed. Disjoint ranges can be updated by different threads
+	 * at the same time.
+	 */
+	public void updateMatrices(int start, int end) {
+		for (int slot = start; slot < end; slot++) {
+			if (dirty[slot]) {
+				buildMatrix(slot);
+				dirty[slot] = false;
+			}
+		}
+	}
+
+	/**
+	 * Sets the matrix of a slot to translate * rotate * scale.
+	 */
+	private void buildMatrix(int slot) {
+		final int r = slot * 4, p = slot * 3, m = slot * 16;
+		final float x = rotations[r], y = rotations[r + 1];
+		final float z = rotations[r + 2], w = rotations[r + 3];
+		final float sx = scales[p], sy = scales[p + 1], sz = scales[p + 2];
+		final float xx = x * x, xy = x * y, xz = x * z, xw = x * w;
+		final float yy = y * y, yz = y * z, yw = y * w;
+		final float zz = z * z, zw = z * w;
+		final float[] a = matrices;
+
+		a[m + 0] = (1 - 2 * (yy + zz)) * sx;
+		a[m + 1] = 2 * (xy + zw) * sx;
+		a[m + 2] = 2 * (xz - yw) * sx;
+		a[m + 3] = 0.0f;
+		a[m + 4] = 2 * (xy - zw) * sy;
+		a[m + 5] = (1 - 2 * (xx + zz)) * sy;
+		a[m + 6] = 2 * (yz + xw) * sy;
+		a[m + 7] = 0.0f;
+		a[m + 8] = 2 * (xz + yw) * sz;
+		a[m + 9] = 2 * (yz - xw) * sz;
+		a[m + 10] = (1 - 2 * (xx + yy)) * sz;
+		a[m + 11] = 0.0f;
+		a[m + 12] = positions[p];
+		a[m + 13] = positions[p + 1];
+		a[m + 14] = positions[p + 2];
+		a[m + 15] = 1.0f;
+	}
+
+	/**
+	 * Saves the current matrix of every slot as its previous matrix. Called
+	 * by the Engine at the beginning of each fixed timestep.
+	 */
+	public void saveTransforms() {
+		System.arraycopy(matrices, 0, prevMatrices, 0, slotCount * 16);
+	}
+
+	/**
+	 * Saves the current matrix of one slot as its previous matrix.
+	 */
+	public void saveTransform(int slot) {
+		System.arraycopy(matrices, slot * 16, prevMatrices, slot * 16, 16);
+	}
+
+	/**
+	 * Copies everything about a slot of another TransformStore into a slot of
+	 * this one.
+	 *
+	 * @param src
+	 *            The TransformStore to copy from.
+	 * @param srcSlot
+	 *            The slot of <code>src</code> to copy.
+	 * @param slot
+	 *            The slot of this TransformStore to copy into.
+	 */
+	public void copySlot(TransformStore src, int srcSlot, int slot) {
+		System.arraycopy(src.positions, srcSlot * 3, positions, slot * 3, 3);
+		System.arraycopy(src.rotations, srcSlot * 4, rotations, slot * 4, 4);
+		System.arraycopy(src.scales, srcSlot * 3, scales, slot * 3, 3);
+		System.arraycopy(src.matrices, srcSlot * 16, matrices, slot * 16, 16);
+		System.arraycopy(src.prevMatrices, srcSlot * 16, prevMatrices,
+				slot * 16, 16);
+		dirty[slot] = src.dirty[srcSlot];
+	}
+}
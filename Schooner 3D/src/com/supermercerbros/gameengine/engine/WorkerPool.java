@@ -0,0 +1,472 @@
+package com.supermercerbros.gameengine.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small job system: a fixed set of worker threads that run {@link Job}s,
+ * together with the threads that wait for them.
+ * <p>
+ * Each worker has its own {@link JobDeque}. Jobs submitted by a worker (such
+ * as the dependents of a Job it has just finished) go to the bottom of its
+ * own deque, and it takes its next Job from there. A worker that runs out of
+ * Jobs steals the oldest Job of another worker, or one submitted by another
+ * thread. Those are queued in a shared deque, which is also where a thread
+ * that calls {@link #waitFor(Job)} or
+ * {@link #parallelFor(int, int, RangeTask)} takes Jobs from while it waits,
+ * so the waiting thread is never idle while there is work to do.
+ * <p>
+ * Submitting and running Jobs does not allocate, as long as the Jobs are
+ * reused. Each thread's time spent running Jobs is counted, so that the
+ * utilisation of the workers can be measured (see {@link #getBusyNanos(int)}).
+ * <p>
+ * {@link #parallelFor(int, int, RangeTask)} splits a loop over an index range
+ * into chunks that every thread takes from as soon as it finishes one, and
+ * returns only after every chunk has finished, so it acts as a barrier
+ * between the phases of a frame. One loop runs at a time; a loop started
+ * while another one is running (for example, from inside a RangeTask) runs
+ * on the calling thread alone.
+ */
+public class WorkerPool {
+	/**
+	 * A loop body, run over a range of indices.
+	 */
+	public interface RangeTask {
+		/**
+		 * Runs the loop for the indices from <code>start</code> (inclusive)
+		 * to <code>end</code> (exclusive). May be called by several threads
+		 * at once, with disjoint ranges.
+		 */
+		public void run(int start, int end);
+	}
+
+	/**
+	 * The number of Jobs that each deque can hold. When a deque is full,
+	 * submitted Jobs are run immediately instead.
+	 */
+	private static final int DEQUE_CAPACITY = 1024;
+	/**
+	 * The number of times an idle thread looks for a Job before it waits to
+	 * be notified.
+	 */
+	private static final int SPINS = 1000;
+
+	/**
+	 * The deque and counters of one thread. The last Slot is shared by every
+	 * thread that is not a worker.
+	 */
+	private static final class Slot {
+		final JobDeque deque = new JobDeque(DEQUE_CAPACITY);
+		volatile long busyNanos = 0;
+		volatile long jobCount = 0;
+		volatile long stealCount = 0;
+	}
+
+	private final class Worker extends Thread {
+		final int index;
+
+		Worker(int index) {
+			super("Schooner3D worker " + index);
+			this.index = index;
+			setDaemon(true);
+		}
+
+		WorkerPool getPool() {
+			return WorkerPool.this;
+		}
+
+		@Override
+		public void run() {
+			work(index);
+		}
+	}
+
+	/**
+	 * Runs its share of the chunks of the current loop.
+	 */
+	private final class LoopJob extends Job {
+		@Override
+		protected void run() {
+			runChunks();
+		}
+	}
+
+	private final Worker[] workers;
+	private final Slot[] slots;
+	/**
+	 * The index of the Slot shared by threads that are not workers.
+	 */
+	private final int external;
+	private final Object lock = new Object();
+	/**
+	 * The number of workers waiting on <code>lock</code> for Jobs.
+	 */
+	private final AtomicInteger sleeping = new AtomicInteger(0);
+	private volatile boolean shutdown = false;
+	/**
+	 * The first exception thrown by a Job since one was last rethrown.
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * True while a loop is running.
+	 */
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	// The current loop:
+	private final LoopJob[] loopJobs;
+	private RangeTask task;
+	private int count;
+	private int grain;
+	/**
+	 * The start of the next chunk to be taken.
+	 */
+	private final AtomicInteger next = new AtomicInteger(0);
+
+	/**
+	 * @param threads
+	 *            The number of worker threads to start. The thread that waits
+	 *            for Jobs also runs them, so this is usually one less than the
+	 *            number of cores (see {@link #defaultThreadCount()}).
+	 */
+	public WorkerPool(int threads) {
+		if (threads < 0) {
+			throw new IllegalArgumentException("threads < 0");
+		}
+		external = threads;
+		slots = new Slot[threads + 1];
+		for (int i = 0; i <= threads; i++) {
+			slots[i] = new Slot();
+		}
+		loopJobs = new LoopJob[threads];
+		for (int i = 0; i < threads; i++) {
+			loopJobs[i] = new LoopJob();
+		}
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * @return One less than the number of available processors, so that the
+	 *         workers and the calling thread keep every core busy.
+	 */
+	public static int defaultThreadCount() {
+		return Math.max(Runtime.getRuntime().availableProcessors() - 1, 0);
+	}
+
+	/**
+	 * @return The number of worker threads, not counting the calling thread.
+	 */
+	public int getThreadCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Submits a Job, to run once the Jobs it depends on have finished. This
+	 * may be called from any thread, including from inside a Job.
+	 *
+	 * @throws IllegalStateException
+	 *             if the Job has been submitted and has not finished.
+	 */
+	public void submit(Job job) {
+		if (job.submit()) {
+			schedule(job);
+		}
+	}
+
+	/**
+	 * Queues a Job that is ready to run on the current thread's deque, or
+	 * runs it if the deque is full.
+	 */
+	void schedule(Job job) {
+		final int slot = currentSlot();
+		final boolean queued;
+		if (slot == external) {
+			synchronized (slots[external]) {
+				queued = workers.length > 0 && !shutdown
+						&& slots[external].deque.push(job);
+			}
+		} else {
+			queued = slots[slot].deque.push(job);
+		}
+		if (!queued) {
+			execute(job, slot);
+		} else if (sleeping.get() > 0) {
+			synchronized (lock) {
+				lock.notify();
+			}
+		}
+	}
+
+	/**
+	 * Runs Jobs until <code>job</code> has finished. If <code>job</code> has
+	 * not been submitted, this returns immediately.
+	 *
+	 * @throws RuntimeException
+	 *             (or Error) if a Job has thrown one since one was last
+	 *             rethrown.
+	 */
+	public void waitFor(Job job) {
+		final int slot = currentSlot();
+		int spins = 0;
+		while (!job.isDone()) {
+			final Job next = findJob(slot);
+			if (next != null) {
+				execute(next, slot);
+				spins = 0;
+			} else if (++spins > SPINS) {
+				Thread.yield();
+			}
+		}
+		rethrow();
+	}
+
+	/**
+	 * Runs <code>task</code> over the indices from 0 to <code>count</code>,
+	 * in chunks of <code>grain</code> indices, on the workers and the calling
+	 * thread, and waits for it to finish.
+	 *
+	 * @param count
+	 *            The number of indices.
+	 * @param grain
+	 *            The number of indices in each chunk.
+	 * @param task
+	 *            The loop body.
+	 * @throws RuntimeException
+	 *             (or Error) if the task threw one, after every chunk has
+	 *             finished or been skipped.
+	 */
+	public void parallelFor(int count, int grain, RangeTask task) {
+		if (grain < 1) {
+			throw new IllegalArgumentException("grain < 1");
+		}
+		if (count <= grain || workers.length == 0
+				|| !running.compareAndSet(false, true)) {
+			if (count > 0) {
+				task.run(0, count);
+			}
+			return;
+		}
+		try {
+			this.task = task;
+			this.count = count;
+			this.grain = grain;
+			next.set(0);
+			// One Job for each worker that could get a chunk
+			final int jobs = Math.min(loopJobs.length, (count - 1) / grain);
+			for (int i = 0; i < jobs; i++) {
+				submit(loopJobs[i]);
+			}
+			final Slot slot = slots[currentSlot()];
+			final long start = System.nanoTime();
+			runChunks();
+			slot.busyNanos += System.nanoTime() - start;
+			for (int i = 0; i < jobs; i++) {
+				waitFor(loopJobs[i]);
+			}
+		} finally {
+			this.task = null;
+			running.set(false);
+		}
+		rethrow();
+	}
+
+	/**
+	 * Takes and runs chunks of the current loop until there are none left.
+	 */
+	private void runChunks() {
+		final RangeTask task = this.task;
+		final int count = this.count, grain = this.grain;
+		int start;
+		while ((start = next.getAndAdd(grain)) < count) {
+			try {
+				task.run(start, Math.min(start + grain, count));
+			} catch (Throwable t) {
+				fail(t);
+				next.set(count); // Skip the remaining chunks
+			}
+		}
+	}
+
+	/**
+	 * @return The index of the current thread's Slot.
+	 */
+	private int currentSlot() {
+		final Thread thread = Thread.currentThread();
+		if (thread instanceof Worker && ((Worker) thread).getPool() == this) {
+			return ((Worker) thread).index;
+		}
+		return external;
+	}
+
+	/**
+	 * Takes a Job from the given Slot's deque, or steals one from another
+	 * Slot.
+	 *
+	 * @return The Job, or null if none was found.
+	 */
+	private Job findJob(int slot) {
+		Job job;
+		if (slot == external) {
+			synchronized (slots[external]) {
+				job = slots[external].deque.pop();
+			}
+		} else {
+			job = slots[slot].deque.pop();
+		}
+		if (job != null) {
+			return job;
+		}
+		for (int i = 1; i < slots.length; i++) {
+			final int victim = (slot + i) % slots.length;
+			job = slots[victim].deque.steal();
+			if (job != null) {
+				slots[slot].stealCount++;
+				return job;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs a Job, and schedules the dependents that were waiting for it.
+	 */
+	private void execute(Job job, int slot) {
+		final long start = System.nanoTime();
+		try {
+			job.run();
+		} catch (Throwable t) {
+			fail(t);
+		}
+		job.finish(this);
+		final Slot s = slots[slot];
+		s.busyNanos += System.nanoTime() - start;
+		s.jobCount++;
+	}
+
+	private void fail(Throwable t) {
+		if (failure == null) {
+			failure = t;
+		}
+	}
+
+	/**
+	 * Throws the exception thrown by a Job, if there was one.
+	 */
+	private void rethrow() {
+		final Throwable t = failure;
+		if (t != null) {
+			failure = null;
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * The loop of each worker thread.
+	 */
+	private void work(int slot) {
+		while (true) {
+			Job job = null;
+			for (int i = 0; i < SPINS && job == null && !shutdown; i++) {
+				job = findJob(slot);
+			}
+			if (job == null) {
+				synchronized (lock) {
+					sleeping.incrementAndGet();
+					try {
+						// Look again after counting this worker as sleeping,
+						// so that a Job queued just before isn't missed.
+						while ((job = findJob(slot)) == null) {
+							if (shutdown) {
+								return;
+							}
+							lock.wait();
+						}
+					} catch (InterruptedException e) {
+						continue; // Look again
+					} finally {
+						sleeping.decrementAndGet();
+					}
+				}
+			}
+			execute(job, slot);
+		}
+	}
+
+	/**
+	 * @param thread
+	 *            The index of a worker thread, or {@link #getThreadCount()}
+	 *            for the threads that are not workers (such as the Engine
+	 *            thread).
+	 * @return The total time that the thread has spent running Jobs and
+	 *         chunks of loops since the counters were last reset, in
+	 *         nanoseconds.
+	 */
+	public long getBusyNanos(int thread) {
+		return slots[thread].busyNanos;
+	}
+
+	/**
+	 * @param thread
+	 *            The index of a worker thread, or {@link #getThreadCount()}
+	 *            for the threads that are not workers.
+	 * @return The number of Jobs that the thread has run since the counters
+	 *         were last reset.
+	 */
+	public long getJobCount(int thread) {
+		return slots[thread].jobCount;
+	}
+
+	/**
+	 * @param thread
+	 *            The index of a worker thread, or {@link #getThreadCount()}
+	 *            for the threads that are not workers.
+	 * @return The number of Jobs that the thread has stolen from other
+	 *         threads since the counters were last reset.
+	 */
+	public long getStealCount(int thread) {
+		return slots[thread].stealCount;
+	}
+
+	/**
+	 * @param thread
+	 *            The index of a worker thread.
+	 * @return The ID of the worker thread (see {@link Thread#getId()}), for
+	 *         looking up its statistics in the VM.
+	 */
+	public long getThreadId(int thread) {
+		return workers[thread].getId();
+	}
+
+	/**
+	 * Resets the utilisation counters of every thread. The counts of Jobs
+	 * that are running at the time may be kept.
+	 */
+	public void resetCounters() {
+		for (int i = 0; i < slots.length; i++) {
+			slots[i].busyNanos = 0;
+			slots[i].jobCount = 0;
+			slots[i].stealCount = 0;
+		}
+	}
+
+	/**
+	 * Stops the worker threads once they have run out of Jobs. Jobs
+	 * submitted afterwards by other threads run on the thread that submits
+	 * them, and loops run on the calling thread alone.
+	 */
+	public void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.supermercerbros.gameengine.gl;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import com.supermercerbros.gameengine.util.GLES2;
+
+/**
+ * The release GLBackend. This passes every call straight to
+ * {@link GLES20}, and never polls for errors.
+ */
+public class AndroidGL implements GLBackend {
+
+	@Override
+	public int checkError(String location) {
+		return GLES20.GL_NO_ERROR;
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		GLES20.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		GLES20.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void glBindAttribLocation(int program, int index, String name) {
+		GLES20.glBindAttribLocation(program, index, name);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		GLES20.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		GLES20.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		GLES20.glBufferData(target, size, data, usage);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		GLES20.glBufferSubData(target, offset, size, data);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		GLES20.glClear(mask);
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		GLES20.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		GLES20.glCompileShader(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		return GLES20.glCreateProgram();
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		return GLES20.glCreateShader(type);
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		GLES20.glDeleteProgram(program);
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		GLES20.glDeleteShader(shader);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		GLES20.glDeleteTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		GLES20.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		GLES20.glDrawElements(mode, count, type, offset);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		GLES20.glEnable(cap);
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		GLES20.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		GLES20.glGenBuffers(n, buffers, offset);
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		GLES20.glGenTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+		GLES20.glGenerateMipmap(target);
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		return GLES20.glGetAttribLocation(program, name);
+	}
+
+	@Override
+	public int glGetError() {
+		return GLES20.glGetError();
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		return GLES20.glGetProgramInfoLog(program);
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params,
+			int offset) {
+		GLES20.glGetProgramiv(program, pname, params, offset);
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		return GLES20.glGetShaderInfoLog(shader);
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		GLES20.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		return GLES20.glGetUniformLocation(program, name);
+	}
+
+	@Override
+	public boolean glIsProgram(int program) {
+		return GLES20.glIsProgram(program);
+	}
+
+	@Override
+	public boolean glIsTexture(int texture) {
+		return GLES20.glIsTexture(texture);
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		GLES20.glLinkProgram(program);
+	}
+
+	@Override
+	public void glShaderSource(int shader, String string) {
+		GLES20.glShaderSource(shader, string);
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		GLES20.glTexImage2D(target, level, internalformat, width, height,
+				border, format, type, pixels);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+		GLES20.glTexParameteri(target, pname, param);
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		GLES20.glUniform1i(location, x);
+	}
+
+	@Override
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+		GLES20.glUniform3fv(location, count, v, offset);
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset) {
+		GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		GLES20.glUseProgram(program);
+	}
+
+	@Override
+	public void glVertexAttrib1fv(int index, float[] values, int offset) {
+		GLES20.glVertexAttrib1fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib2fv(int index, float[] values, int offset) {
+		GLES20.glVertexAttrib2fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib3fv(int index, float[] values, int offset) {
+		GLES20.glVertexAttrib3fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+		GLES20.glVertexAttrib4fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset) {
+		// GLES2 works around this method's absence before API 9
+		GLES2.glVertexAttribPointer(index, size, type, normalized, stride,
+				offset);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		GLES20.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+		GLUtils.texImage2D(target, level, bitmap, border);
+	}
+}
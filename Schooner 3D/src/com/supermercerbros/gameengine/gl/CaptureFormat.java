@@ -0,0 +1,82 @@
+package com.supermercerbros.gameengine.gl;
+
+/**
+ * Constants of the binary GL capture format written by {@link CaptureGL} and
+ * read by {@link GLReplay}.
+ * <p>
+ * A capture starts with {@link #MAGIC} and {@link #VERSION}, followed by a
+ * stream of commands. Each command is a one-byte opcode followed by its
+ * arguments, written with a DataOutputStream. Handles and locations returned
+ * by GL are written after the arguments of the call that returned them, so
+ * that the replayer can map them to the handles of the replaying context.
+ * Frames are separated by {@link #OP_FRAME}.
+ */
+final class CaptureFormat {
+	static final int MAGIC = 0x53474c43; // "SGLC"
+	static final int VERSION = 2;
+
+	/** Marks the start of a frame. */
+	static final byte OP_FRAME = 0;
+	static final byte OP_ACTIVE_TEXTURE = 1;
+	static final byte OP_ATTACH_SHADER = 2;
+	static final byte OP_BIND_ATTRIB_LOCATION = 3;
+	static final byte OP_BIND_BUFFER = 4;
+	static final byte OP_BIND_TEXTURE = 5;
+	static final byte OP_BUFFER_DATA = 6;
+	static final byte OP_BUFFER_SUB_DATA = 7;
+	static final byte OP_CLEAR = 8;
+	static final byte OP_CLEAR_COLOR = 9;
+	static final byte OP_COMPILE_SHADER = 10;
+	static final byte OP_CREATE_PROGRAM = 11;
+	static final byte OP_CREATE_SHADER = 12;
+	static final byte OP_DELETE_PROGRAM = 13;
+	static final byte OP_DELETE_SHADER = 14;
+	static final byte OP_DELETE_TEXTURES = 15;
+	static final byte OP_DISABLE_VERTEX_ATTRIB_ARRAY = 16;
+	static final byte OP_DRAW_ELEMENTS = 17;
+	static final byte OP_ENABLE = 18;
+	static final byte OP_ENABLE_VERTEX_ATTRIB_ARRAY = 19;
+	static final byte OP_GEN_BUFFERS = 20;
+	static final byte OP_GEN_TEXTURES = 21;
+	static final byte OP_GENERATE_MIPMAP = 22;
+	static final byte OP_GET_ATTRIB_LOCATION = 23;
+	static final byte OP_GET_ERROR = 24;
+	static final byte OP_GET_PROGRAM_INFO_LOG = 25;
+	static final byte OP_GET_PROGRAMIV = 26;
+	static final byte OP_GET_SHADER_INFO_LOG = 27;
+	static final byte OP_GET_SHADERIV = 28;
+	static final byte OP_GET_UNIFORM_LOCATION = 29;
+	static final byte OP_IS_PROGRAM = 30;
+	static final byte OP_IS_TEXTURE = 31;
+	static final byte OP_LINK_PROGRAM = 32;
+	static final byte OP_SHADER_SOURCE = 33;
+	static final byte OP_TEX_PARAMETERI = 34;
+	static final byte OP_UNIFORM1I = 35;
+	static final byte OP_UNIFORM3FV = 36;
+	static final byte OP_UNIFORM_MATRIX4FV = 37;
+	static final byte OP_USE_PROGRAM = 38;
+	static final byte OP_VERTEX_ATTRIB1FV = 39;
+	static final byte OP_VERTEX_ATTRIB2FV = 40;
+	static final byte OP_VERTEX_ATTRIB3FV = 41;
+	static final byte OP_VERTEX_ATTRIB4FV = 42;
+	static final byte OP_VERTEX_ATTRIB_POINTER = 43;
+	static final byte OP_VIEWPORT = 44;
+	/**
+	 * A texture image, from glTexImage2D or GLUtils.texImage2D. Added in
+	 * version 2.
+	 */
+	static final byte OP_TEX_IMAGE_2D = 45;
+
+	/*
+	 * Buffer data is written as a type tag, an element count, and the
+	 * elements.
+	 */
+	static final byte DATA_NONE = 0;
+	static final byte DATA_BYTE = 1;
+	static final byte DATA_SHORT = 2;
+	static final byte DATA_INT = 3;
+	static final byte DATA_FLOAT = 4;
+
+	private CaptureFormat() {
+	} // This class should never be instantiated
+}
@@ -0,0 +1,660 @@
+package com.supermercerbros.gameengine.gl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+
+import com.supermercerbros.gameengine.util.Log;
+
+/**
+ * A GLBackend that writes every call, including the contents of uploaded
+ * buffers, to a compact binary stream, and then passes it on to another
+ * GLBackend. The stream can be replayed later, without a device, by
+ * {@link GLReplay}.
+ * <p>
+ * A new frame is started by every glClear call, which the renderer makes
+ * once at the start of each frame. After <code>maxFrames</code> frames the
+ * stream is closed, and calls are only passed on. To capture gameplay, set
+ * this as the backend before the renderer starts:
+ *
+ * <pre>
+ * GL.set(new CaptureGL(new AndroidGL(), new FileOutputStream(file), 300));
+ * </pre>
+ *
+ * Texture images uploaded from Bitmaps are captured as glTexImage2D calls,
+ * with the pixels of the Bitmap.
+ */
+public class CaptureGL implements GLBackend {
+	private static final String TAG = "com.supermercerbros.gameengine.gl.CaptureGL";
+
+	private final GLBackend delegate;
+	private final int maxFrames;
+	private DataOutputStream out;
+	private int frames = 0;
+
+	/**
+	 * @param delegate
+	 *            The GLBackend to pass calls on to.
+	 * @param out
+	 *            The stream to write the capture to. This is closed when the
+	 *            capture is finished.
+	 * @param maxFrames
+	 *            The number of frames to capture.
+	 * @throws IOException
+	 *             If the header cannot be written.
+	 */
+	public CaptureGL(GLBackend delegate, OutputStream out, int maxFrames)
+			throws IOException {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate == null");
+		}
+		if (maxFrames <= 0) {
+			throw new IllegalArgumentException("maxFrames <= 0");
+		}
+		this.delegate = delegate;
+		this.maxFrames = maxFrames;
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+		this.out.writeInt(CaptureFormat.MAGIC);
+		this.out.writeInt(CaptureFormat.VERSION);
+	}
+
+	/**
+	 * @return true if calls are still being captured.
+	 */
+	public boolean isCapturing() {
+		return out != null;
+	}
+
+	/**
+	 * @return The number of frames started so far.
+	 */
+	public int getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * Stops capturing and closes the stream. Calls are still passed on to the
+	 * delegate.
+	 */
+	public void finish() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			Log.e(TAG, "Could not close the capture", e);
+		}
+		out = null;
+		Log.d(TAG, "Captured " + Math.min(frames, maxFrames) + " frames.");
+	}
+
+	private void fail(IOException e) {
+		Log.e(TAG, "Capture failed", e);
+		out = null;
+	}
+
+	private void writeData(Buffer data, int size) throws IOException {
+		if (data == null) {
+			out.writeByte(CaptureFormat.DATA_NONE);
+		} else if (data instanceof FloatBuffer) {
+			final FloatBuffer fb = (FloatBuffer) data;
+			final int p = fb.position(), n = Math.min(size / 4, fb.remaining());
+			out.writeByte(CaptureFormat.DATA_FLOAT);
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeFloat(fb.get(p + i));
+			}
+		} else if (data instanceof ShortBuffer) {
+			final ShortBuffer sb = (ShortBuffer) data;
+			final int p = sb.position(), n = Math.min(size / 2, sb.remaining());
+			out.writeByte(CaptureFormat.DATA_SHORT);
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeShort(sb.get(p + i));
+			}
+		} else if (data instanceof IntBuffer) {
+			final IntBuffer ib = (IntBuffer) data;
+			final int p = ib.position(), n = Math.min(size / 4, ib.remaining());
+			out.writeByte(CaptureFormat.DATA_INT);
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeInt(ib.get(p + i));
+			}
+		} else if (data instanceof ByteBuffer) {
+			final ByteBuffer bb = (ByteBuffer) data;
+			final int p = bb.position(), n = Math.min(size, bb.remaining());
+			out.writeByte(CaptureFormat.DATA_BYTE);
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeByte(bb.get(p + i));
+			}
+		} else {
+			out.writeByte(CaptureFormat.DATA_NONE);
+		}
+	}
+
+	private void writeTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_TEX_IMAGE_2D);
+				out.writeInt(target);
+				out.writeInt(level);
+				out.writeInt(internalformat);
+				out.writeInt(width);
+				out.writeInt(height);
+				out.writeInt(border);
+				out.writeInt(format);
+				out.writeInt(type);
+				writeData(pixels, Integer.MAX_VALUE); // The whole buffer
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void writeFloats(float[] values, int offset, int count)
+			throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.writeFloat(values[offset + i]);
+		}
+	}
+
+	private void op(byte op, int a) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(a);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void op(byte op, int a, int b) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(a);
+				out.writeInt(b);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void op(byte op, int a, int b, int c) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(a);
+				out.writeInt(b);
+				out.writeInt(c);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void op(byte op, int a, int b, int c, int d) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(a);
+				out.writeInt(b);
+				out.writeInt(c);
+				out.writeInt(d);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void op(byte op, int a, String s, int result) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(a);
+				out.writeUTF(s);
+				out.writeInt(result);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void opHandles(byte op, int n, int[] handles, int offset) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(n);
+				for (int i = 0; i < n; i++) {
+					out.writeInt(handles[offset + i]);
+				}
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	private void opFloats(byte op, int index, float[] values, int offset,
+			int count) {
+		if (out != null) {
+			try {
+				out.writeByte(op);
+				out.writeInt(index);
+				writeFloats(values, offset, count);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	@Override
+	public int checkError(String location) {
+		return delegate.checkError(location);
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		op(CaptureFormat.OP_ACTIVE_TEXTURE, texture);
+		delegate.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		op(CaptureFormat.OP_ATTACH_SHADER, program, shader);
+		delegate.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void glBindAttribLocation(int program, int index, String name) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_BIND_ATTRIB_LOCATION);
+				out.writeInt(program);
+				out.writeInt(index);
+				out.writeUTF(name);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glBindAttribLocation(program, index, name);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		op(CaptureFormat.OP_BIND_BUFFER, target, buffer);
+		delegate.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		op(CaptureFormat.OP_BIND_TEXTURE, target, texture);
+		delegate.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_BUFFER_DATA);
+				out.writeInt(target);
+				out.writeInt(size);
+				out.writeInt(usage);
+				writeData(data, size);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glBufferData(target, size, data, usage);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_BUFFER_SUB_DATA);
+				out.writeInt(target);
+				out.writeInt(offset);
+				out.writeInt(size);
+				writeData(data, size);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glBufferSubData(target, offset, size, data);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		if (out != null) {
+			if (++frames > maxFrames) {
+				finish();
+			} else {
+				try {
+					out.writeByte(CaptureFormat.OP_FRAME);
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+		}
+		op(CaptureFormat.OP_CLEAR, mask);
+		delegate.glClear(mask);
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_CLEAR_COLOR);
+				out.writeFloat(red);
+				out.writeFloat(green);
+				out.writeFloat(blue);
+				out.writeFloat(alpha);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		op(CaptureFormat.OP_COMPILE_SHADER, shader);
+		delegate.glCompileShader(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		final int result = delegate.glCreateProgram();
+		op(CaptureFormat.OP_CREATE_PROGRAM, result);
+		return result;
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		final int result = delegate.glCreateShader(type);
+		op(CaptureFormat.OP_CREATE_SHADER, type, result);
+		return result;
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		op(CaptureFormat.OP_DELETE_PROGRAM, program);
+		delegate.glDeleteProgram(program);
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		op(CaptureFormat.OP_DELETE_SHADER, shader);
+		delegate.glDeleteShader(shader);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		opHandles(CaptureFormat.OP_DELETE_TEXTURES, n, textures, offset);
+		delegate.glDeleteTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		op(CaptureFormat.OP_DISABLE_VERTEX_ATTRIB_ARRAY, index);
+		delegate.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		op(CaptureFormat.OP_DRAW_ELEMENTS, mode, count, type, offset);
+		delegate.glDrawElements(mode, count, type, offset);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		op(CaptureFormat.OP_ENABLE, cap);
+		delegate.glEnable(cap);
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		op(CaptureFormat.OP_ENABLE_VERTEX_ATTRIB_ARRAY, index);
+		delegate.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		delegate.glGenBuffers(n, buffers, offset);
+		opHandles(CaptureFormat.OP_GEN_BUFFERS, n, buffers, offset);
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		delegate.glGenTextures(n, textures, offset);
+		opHandles(CaptureFormat.OP_GEN_TEXTURES, n, textures, offset);
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+		op(CaptureFormat.OP_GENERATE_MIPMAP, target);
+		delegate.glGenerateMipmap(target);
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		final int result = delegate.glGetAttribLocation(program, name);
+		op(CaptureFormat.OP_GET_ATTRIB_LOCATION, program, name, result);
+		return result;
+	}
+
+	@Override
+	public int glGetError() {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_GET_ERROR);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		return delegate.glGetError();
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		op(CaptureFormat.OP_GET_PROGRAM_INFO_LOG, program);
+		return delegate.glGetProgramInfoLog(program);
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		op(CaptureFormat.OP_GET_PROGRAMIV, program, pname);
+		delegate.glGetProgramiv(program, pname, params, offset);
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		op(CaptureFormat.OP_GET_SHADER_INFO_LOG, shader);
+		return delegate.glGetShaderInfoLog(shader);
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		op(CaptureFormat.OP_GET_SHADERIV, shader, pname);
+		delegate.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		final int result = delegate.glGetUniformLocation(program, name);
+		op(CaptureFormat.OP_GET_UNIFORM_LOCATION, program, name, result);
+		return result;
+	}
+
+	@Override
+	public boolean glIsProgram(int program) {
+		op(CaptureFormat.OP_IS_PROGRAM, program);
+		return delegate.glIsProgram(program);
+	}
+
+	@Override
+	public boolean glIsTexture(int texture) {
+		op(CaptureFormat.OP_IS_TEXTURE, texture);
+		return delegate.glIsTexture(texture);
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		op(CaptureFormat.OP_LINK_PROGRAM, program);
+		delegate.glLinkProgram(program);
+	}
+
+	@Override
+	public void glShaderSource(int shader, String string) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_SHADER_SOURCE);
+				out.writeInt(shader);
+				out.writeUTF(string);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glShaderSource(shader, string);
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		writeTexImage2D(target, level, internalformat, width, height, border,
+				format, type, pixels);
+		delegate.glTexImage2D(target, level, internalformat, width, height,
+				border, format, type, pixels);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+		op(CaptureFormat.OP_TEX_PARAMETERI, target, pname, param);
+		delegate.glTexParameteri(target, pname, param);
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		op(CaptureFormat.OP_UNIFORM1I, location, x);
+		delegate.glUniform1i(location, x);
+	}
+
+	@Override
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_UNIFORM3FV);
+				out.writeInt(location);
+				out.writeInt(count);
+				writeFloats(v, offset, count * 3);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glUniform3fv(location, count, v, offset);
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_UNIFORM_MATRIX4FV);
+				out.writeInt(location);
+				out.writeInt(count);
+				out.writeBoolean(transpose);
+				writeFloats(value, offset, count * 16);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		op(CaptureFormat.OP_USE_PROGRAM, program);
+		delegate.glUseProgram(program);
+	}
+
+	@Override
+	public void glVertexAttrib1fv(int index, float[] values, int offset) {
+		opFloats(CaptureFormat.OP_VERTEX_ATTRIB1FV, index, values, offset, 1);
+		delegate.glVertexAttrib1fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib2fv(int index, float[] values, int offset) {
+		opFloats(CaptureFormat.OP_VERTEX_ATTRIB2FV, index, values, offset, 2);
+		delegate.glVertexAttrib2fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib3fv(int index, float[] values, int offset) {
+		opFloats(CaptureFormat.OP_VERTEX_ATTRIB3FV, index, values, offset, 3);
+		delegate.glVertexAttrib3fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+		opFloats(CaptureFormat.OP_VERTEX_ATTRIB4FV, index, values, offset, 4);
+		delegate.glVertexAttrib4fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset) {
+		if (out != null) {
+			try {
+				out.writeByte(CaptureFormat.OP_VERTEX_ATTRIB_POINTER);
+				out.writeInt(index);
+				out.writeInt(size);
+				out.writeInt(type);
+				out.writeBoolean(normalized);
+				out.writeInt(stride);
+				out.writeInt(offset);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		delegate.glVertexAttribPointer(index, size, type, normalized, stride,
+				offset);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		op(CaptureFormat.OP_VIEWPORT, x, y, width, height);
+		delegate.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+		if (out != null) {
+			// GLUtils uploads the Bitmap in its own format
+			final int format = GLUtils.getInternalFormat(bitmap);
+			final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getRowBytes()
+					* bitmap.getHeight());
+			bitmap.copyPixelsToBuffer(pixels);
+			pixels.rewind();
+			writeTexImage2D(target, level, format, bitmap.getWidth(),
+					bitmap.getHeight(), border, format, GLUtils.getType(bitmap),
+					pixels);
+		}
+		delegate.texImage2D(target, level, bitmap, border);
+	}
+}
@@ -0,0 +1,51 @@
+package com.supermercerbros.gameengine.gl;
+
+import android.opengl.GLES20;
+
+import com.supermercerbros.gameengine.util.Log;
+
+/**
+ * The debugging GLBackend. This is the same as {@link AndroidGL}, except that
+ * {@link #checkError(String)} calls glGetError and logs any error it finds.
+ * This stalls the GL pipeline, so it should not be used in release builds.
+ */
+public class CheckingGL extends AndroidGL {
+	private static final String TAG = "OpenGL";
+	/**
+	 * A broken draw call usually fails every frame, so errors are limited to
+	 * a few per second.
+	 */
+	private final Log.Limiter limiter = new Log.Limiter(10, 1000);
+
+	@Override
+	public int checkError(String location) {
+		int error = GLES20.glGetError();
+		if (error == GLES20.GL_NO_ERROR || !limiter.allow()) {
+			return error;
+		}
+		final int suppressed = limiter.takeSuppressed();
+		if (suppressed > 0) {
+			Log.e(TAG, suppressed + " errors not logged");
+		}
+		switch (error) {
+		default:
+		case GLES20.GL_NO_ERROR:
+			break;
+		case GLES20.GL_INVALID_ENUM:
+			Log.e(TAG, location + ": GL_INVALID_ENUM");
+			break;
+		case GLES20.GL_INVALID_VALUE:
+			Log.e(TAG, location + ": GL_INVALID_VALUE");
+			break;
+		case GLES20.GL_INVALID_OPERATION:
+			Log.e(TAG, location + ": GL_INVALID_OPERATION");
+			break;
+		case GLES20.GL_OUT_OF_MEMORY:
+			Log.e(TAG, location + ": GL_OUT_OF_MEMORY");
+			break;
+		case GLES20.GL_INVALID_FRAMEBUFFER_OPERATION:
+			Log.e(TAG, location + ": GL_INVALID_FRAMEBUFFER_OPERATION");
+		}
+		return error;
+	}
+}
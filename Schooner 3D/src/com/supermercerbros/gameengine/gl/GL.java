@@ -0,0 +1,36 @@
+package com.supermercerbros.gameengine.gl;
+
+/**
+ * Holds the {@link GLBackend} that Schooner uses. By default this is an
+ * {@link AndroidGL}, which does not poll for errors. Use a {@link CheckingGL}
+ * while debugging, a {@link RecordingGL} to log the GL calls, or a
+ * {@link NullGL} to run the renderer without a GPU.
+ */
+public class GL {
+	private static volatile GLBackend backend = new AndroidGL();
+
+	private GL() {
+	} // This class should never be instantiated
+
+	/**
+	 * @return The current GLBackend.
+	 */
+	public static GLBackend get() {
+		return backend;
+	}
+
+	/**
+	 * Sets the GLBackend to use. This should be called before the renderer
+	 * starts, because the GL state cached by the renderer belongs to the old
+	 * backend.
+	 *
+	 * @param backend
+	 *            The GLBackend to use.
+	 */
+	public static void set(GLBackend backend) {
+		if (backend == null) {
+			throw new IllegalArgumentException("backend == null");
+		}
+		GL.backend = backend;
+	}
+}
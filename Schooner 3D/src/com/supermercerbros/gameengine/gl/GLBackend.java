@@ -0,0 +1,128 @@
+package com.supermercerbros.gameengine.gl;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+
+/**
+ * The OpenGL ES 2.0 calls that Schooner makes. All of Schooner's GL calls go
+ * through the GLBackend returned by {@link GL#get()}, so that the renderer
+ * can run with or without error checking, have its calls recorded, or run
+ * without a GPU at all.
+ * <p>
+ * Each method has the same meaning as the GLES20 method of the same name,
+ * except {@link #texImage2D(int, int, Bitmap, int)}, which is GLUtils'.
+ */
+public interface GLBackend {
+
+	/**
+	 * Checks for a GL error after a call. Backends that do not poll for
+	 * errors return GL_NO_ERROR without calling glGetError, because polling
+	 * forces the driver to synchronize.
+	 *
+	 * @param location
+	 *            A string that names the just-called method.
+	 * @return The GL_ code of the error.
+	 */
+	public int checkError(String location);
+
+	public void glActiveTexture(int texture);
+
+	public void glAttachShader(int program, int shader);
+
+	public void glBindAttribLocation(int program, int index, String name);
+
+	public void glBindBuffer(int target, int buffer);
+
+	public void glBindTexture(int target, int texture);
+
+	public void glBufferData(int target, int size, Buffer data, int usage);
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data);
+
+	public void glClear(int mask);
+
+	public void glClearColor(float red, float green, float blue, float alpha);
+
+	public void glCompileShader(int shader);
+
+	public int glCreateProgram();
+
+	public int glCreateShader(int type);
+
+	public void glDeleteProgram(int program);
+
+	public void glDeleteShader(int shader);
+
+	public void glDeleteTextures(int n, int[] textures, int offset);
+
+	public void glDisableVertexAttribArray(int index);
+
+	public void glDrawElements(int mode, int count, int type, int offset);
+
+	public void glEnable(int cap);
+
+	public void glEnableVertexAttribArray(int index);
+
+	public void glGenBuffers(int n, int[] buffers, int offset);
+
+	public void glGenTextures(int n, int[] textures, int offset);
+
+	public void glGenerateMipmap(int target);
+
+	public int glGetAttribLocation(int program, String name);
+
+	public int glGetError();
+
+	public String glGetProgramInfoLog(int program);
+
+	public void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+	public String glGetShaderInfoLog(int shader);
+
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+	public int glGetUniformLocation(int program, String name);
+
+	public boolean glIsProgram(int program);
+
+	public boolean glIsTexture(int texture);
+
+	public void glLinkProgram(int program);
+
+	public void glShaderSource(int shader, String string);
+
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels);
+
+	public void glTexParameteri(int target, int pname, int param);
+
+	public void glUniform1i(int location, int x);
+
+	public void glUniform3fv(int location, int count, float[] v, int offset);
+
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset);
+
+	public void glUseProgram(int program);
+
+	public void glVertexAttrib1fv(int index, float[] values, int offset);
+
+	public void glVertexAttrib2fv(int index, float[] values, int offset);
+
+	public void glVertexAttrib3fv(int index, float[] values, int offset);
+
+	public void glVertexAttrib4fv(int index, float[] values, int offset);
+
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset);
+
+	public void glViewport(int x, int y, int width, int height);
+
+	/**
+	 * Uploads a Bitmap as the image of the bound texture, like
+	 * <code>GLUtils.texImage2D(target, level, bitmap, border)</code>.
+	 */
+	public void texImage2D(int target, int level, Bitmap bitmap, int border);
+}
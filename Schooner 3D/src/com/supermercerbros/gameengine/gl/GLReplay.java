@@ -0,0 +1,769 @@
+package com.supermercerbros.gameengine.gl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Replays a GL capture written by {@link CaptureGL} against a
+ * {@link GLBackend}, and measures the CPU cost of each frame: the time taken,
+ * the number of GL calls, the number of draw calls, and the number of bytes
+ * uploaded. With a {@link NullGL}, this runs on any JVM, without a device.
+ * <p>
+ * Handles and uniform locations returned during the replay are mapped to the
+ * ones in the capture, so a capture can also be replayed against a real GL
+ * context.
+ * <p>
+ * From the command line:
+ *
+ * <pre>
+ * java com.supermercerbros.gameengine.gl.GLReplay capture.bin [runs]
+ * </pre>
+ *
+ * This replays the capture <code>runs</code> times (default 5) against a
+ * NullGL and prints the statistics of each run. The first runs include JIT
+ * warm-up.
+ */
+public class GLReplay {
+	/**
+	 * The statistics of one replay.
+	 */
+	public static class Stats {
+		/**
+		 * The number of frames replayed.
+		 */
+		public int frames;
+		/**
+		 * The number of calls made before the first frame (loading shaders,
+		 * buffers, and so on).
+		 */
+		public long setupCalls;
+		/**
+		 * The number of bytes uploaded before the first frame.
+		 */
+		public long setupBytesUploaded;
+		/**
+		 * The number of GL calls made during frames.
+		 */
+		public long calls;
+		/**
+		 * The number of glDrawElements calls made during frames.
+		 */
+		public long drawCalls;
+		/**
+		 * The number of bytes passed to glBufferData, glBufferSubData and
+		 * glTexImage2D during frames.
+		 */
+		public long bytesUploaded;
+		/**
+		 * The time taken by each frame, in nanoseconds. This only includes
+		 * making the GL calls; the capture is decoded beforehand.
+		 */
+		public long[] frameNanos = new long[0];
+
+		/**
+		 * @return The mean frame time, in nanoseconds.
+		 */
+		public long getMeanFrameNanos() {
+			if (frames == 0) {
+				return 0;
+			}
+			long total = 0;
+			for (int i = 0; i < frames; i++) {
+				total += frameNanos[i];
+			}
+			return total / frames;
+		}
+
+		/**
+		 * @param percentile
+		 *            The percentile, from 0 to 100.
+		 * @return The frame time at the given percentile, in nanoseconds.
+		 */
+		public long getFrameNanos(double percentile) {
+			if (frames == 0) {
+				return 0;
+			}
+			long[] sorted = new long[frames];
+			System.arraycopy(frameNanos, 0, sorted, 0, frames);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100.0 * frames) - 1;
+			return sorted[Math.max(0, Math.min(frames - 1, index))];
+		}
+
+		@Override
+		public String toString() {
+			if (frames == 0) {
+				return "0 frames";
+			}
+			return frames + " frames: " + (calls / frames) + " calls/frame, "
+					+ (drawCalls / frames) + " draws/frame, "
+					+ (bytesUploaded / frames) + " bytes uploaded/frame, mean "
+					+ micros(getMeanFrameNanos()) + ", p50 "
+					+ micros(getFrameNanos(50)) + ", p99 "
+					+ micros(getFrameNanos(99)) + ", max "
+					+ micros(getFrameNanos(100)) + " (setup: " + setupCalls
+					+ " calls, " + setupBytesUploaded + " bytes uploaded)";
+		}
+
+		private static String micros(long nanos) {
+			return (nanos / 1000) + "us";
+		}
+	}
+
+	/**
+	 * A growable int array, used while decoding.
+	 */
+	private static class IntList {
+		int[] values = new int[256];
+		int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			int[] array = new int[size];
+			System.arraycopy(values, 0, array, 0, size);
+			return array;
+		}
+	}
+
+	/**
+	 * Maps the values in a capture of one kind of handle (or uniform
+	 * location) to dense ids, used as indices into the arrays of replayed
+	 * handles.
+	 */
+	private static class IdMap {
+		final HashMap<Long, Integer> ids = new HashMap<Long, Integer>();
+		/**
+		 * The captured value of each id, which is also what it is replayed
+		 * as until the replay creates a handle for it.
+		 */
+		final IntList captured = new IntList();
+
+		int id(long key, int capturedValue) {
+			Integer id = ids.get(key);
+			if (id == null) {
+				id = captured.size;
+				ids.put(key, id);
+				captured.add(capturedValue);
+			}
+			return id;
+		}
+
+		int id(int capturedValue) {
+			return id(capturedValue, capturedValue);
+		}
+	}
+
+	/*
+	 * The decoded commands. Command i has opcode ops[i], int arguments
+	 * starting at ints[intStarts[i]], float arguments starting at
+	 * floats[floatStarts[i]], and a String or Buffer argument in objects[i].
+	 * Handles and uniform locations are replaced by their ids.
+	 */
+	private final int commandCount;
+	private final byte[] ops;
+	private final int[] intStarts;
+	private final int[] ints;
+	private final int[] floatStarts;
+	private final float[] floats;
+	private final Object[] objects;
+	/**
+	 * The number of frame markers in the capture.
+	 */
+	private final int frameCount;
+
+	// The captured value of each id, to start each replay with
+	private final int[] capturedBuffers;
+	private final int[] capturedTextures;
+	private final int[] capturedPrograms;
+	private final int[] capturedUniforms;
+
+	// The replayed value of each id
+	private final int[] buffers;
+	private final int[] textures;
+	private final int[] programs;
+	private final int[] uniforms;
+
+	private final int[] handles = new int[16];
+	private final int[] params = new int[1];
+
+	/**
+	 * Reads and decodes a capture, so that replaying it only makes the
+	 * captured calls.
+	 *
+	 * @param in
+	 *            The stream to read the capture from. This is not closed.
+	 * @throws IOException
+	 *             If the stream cannot be read, or is not a valid capture.
+	 */
+	public GLReplay(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[65536];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			bytes.write(buf, 0, n);
+		}
+		final byte[] capture = bytes.toByteArray();
+
+		DataInputStream data = new DataInputStream(new ByteArrayInputStream(
+				capture));
+		if (capture.length < 8 || data.readInt() != CaptureFormat.MAGIC) {
+			throw new IOException("Not a Schooner GL capture");
+		}
+		int version = data.readInt();
+		// Later versions only add opcodes
+		if (version < 1 || version > CaptureFormat.VERSION) {
+			throw new IOException("Unsupported capture version " + version);
+		}
+
+		final IntList opList = new IntList();
+		final IntList intStartList = new IntList();
+		final IntList intList = new IntList();
+		final IntList floatStartList = new IntList();
+		final ArrayList<Float> floatList = new ArrayList<Float>();
+		final ArrayList<Object> objectList = new ArrayList<Object>();
+		final IdMap bufferIds = new IdMap();
+		final IdMap textureIds = new IdMap();
+		final IdMap programIds = new IdMap();
+		final IdMap uniformIds = new IdMap();
+		int frames = 0;
+		int currentProgram = 0;
+
+		while (data.available() > 0) {
+			final byte op = data.readByte();
+			opList.add(op);
+			intStartList.add(intList.size);
+			floatStartList.add(floatList.size());
+			Object object = null;
+			switch (op) {
+			case CaptureFormat.OP_FRAME:
+				frames++;
+				break;
+			case CaptureFormat.OP_ACTIVE_TEXTURE:
+			case CaptureFormat.OP_CLEAR:
+			case CaptureFormat.OP_DISABLE_VERTEX_ATTRIB_ARRAY:
+			case CaptureFormat.OP_ENABLE:
+			case CaptureFormat.OP_ENABLE_VERTEX_ATTRIB_ARRAY:
+			case CaptureFormat.OP_GENERATE_MIPMAP:
+				intList.add(data.readInt());
+				break;
+			case CaptureFormat.OP_ATTACH_SHADER:
+				intList.add(programIds.id(data.readInt()));
+				intList.add(programIds.id(data.readInt()));
+				break;
+			case CaptureFormat.OP_BIND_ATTRIB_LOCATION:
+				intList.add(programIds.id(data.readInt()));
+				intList.add(data.readInt());
+				object = data.readUTF();
+				break;
+			case CaptureFormat.OP_BIND_BUFFER:
+				intList.add(data.readInt());
+				intList.add(bufferIds.id(data.readInt()));
+				break;
+			case CaptureFormat.OP_BIND_TEXTURE:
+				intList.add(data.readInt());
+				intList.add(textureIds.id(data.readInt()));
+				break;
+			case CaptureFormat.OP_BUFFER_DATA:
+			case CaptureFormat.OP_BUFFER_SUB_DATA:
+				intList.add(data.readInt()); // target
+				intList.add(data.readInt()); // size, or offset
+				intList.add(data.readInt()); // usage, or size
+				object = readData(data);
+				break;
+			case CaptureFormat.OP_CLEAR_COLOR:
+				readFloats(data, 4, floatList);
+				break;
+			case CaptureFormat.OP_COMPILE_SHADER:
+			case CaptureFormat.OP_CREATE_PROGRAM:
+			case CaptureFormat.OP_DELETE_PROGRAM:
+			case CaptureFormat.OP_DELETE_SHADER:
+			case CaptureFormat.OP_GET_PROGRAM_INFO_LOG:
+			case CaptureFormat.OP_GET_SHADER_INFO_LOG:
+			case CaptureFormat.OP_IS_PROGRAM:
+			case CaptureFormat.OP_LINK_PROGRAM:
+				intList.add(programIds.id(data.readInt()));
+				break;
+			case CaptureFormat.OP_CREATE_SHADER:
+				intList.add(data.readInt());
+				intList.add(programIds.id(data.readInt()));
+				break;
+			case CaptureFormat.OP_DELETE_TEXTURES:
+			case CaptureFormat.OP_GEN_BUFFERS:
+			case CaptureFormat.OP_GEN_TEXTURES: {
+				final int count = data.readInt();
+				if (count < 0 || count > handles.length) {
+					throw new IOException("Bad handle count " + count);
+				}
+				final IdMap ids = (op == CaptureFormat.OP_GEN_BUFFERS) ? bufferIds
+						: textureIds;
+				intList.add(count);
+				for (int i = 0; i < count; i++) {
+					intList.add(ids.id(data.readInt()));
+				}
+				break;
+			}
+			case CaptureFormat.OP_DRAW_ELEMENTS:
+			case CaptureFormat.OP_VIEWPORT:
+				for (int i = 0; i < 4; i++) {
+					intList.add(data.readInt());
+				}
+				break;
+			case CaptureFormat.OP_GET_ATTRIB_LOCATION:
+				intList.add(programIds.id(data.readInt()));
+				object = data.readUTF();
+				data.readInt(); // The returned location, which isn't used
+				break;
+			case CaptureFormat.OP_GET_ERROR:
+				break;
+			case CaptureFormat.OP_GET_PROGRAMIV:
+			case CaptureFormat.OP_GET_SHADERIV:
+				intList.add(programIds.id(data.readInt()));
+				intList.add(data.readInt());
+				break;
+			case CaptureFormat.OP_GET_UNIFORM_LOCATION: {
+				final int program = data.readInt();
+				intList.add(programIds.id(program));
+				object = data.readUTF();
+				final int location = data.readInt();
+				intList.add(uniformIds.id(uniformKey(program, location),
+						location));
+				break;
+			}
+			case CaptureFormat.OP_IS_TEXTURE:
+				intList.add(textureIds.id(data.readInt()));
+				break;
+			case CaptureFormat.OP_SHADER_SOURCE:
+				intList.add(programIds.id(data.readInt()));
+				object = data.readUTF();
+				break;
+			case CaptureFormat.OP_TEX_IMAGE_2D: {
+				for (int i = 0; i < 8; i++) {
+					intList.add(data.readInt());
+				}
+				final Buffer pixels = readData(data);
+				object = pixels;
+				// The size of the image, in bytes
+				intList.add((pixels != null) ? pixels.capacity()
+						* bytesPerElement(pixels) : 0);
+				break;
+			}
+			case CaptureFormat.OP_TEX_PARAMETERI:
+				for (int i = 0; i < 3; i++) {
+					intList.add(data.readInt());
+				}
+				break;
+			case CaptureFormat.OP_UNIFORM1I: {
+				final int location = data.readInt();
+				intList.add(uniformIds.id(uniformKey(currentProgram, location),
+						location));
+				intList.add(data.readInt());
+				break;
+			}
+			case CaptureFormat.OP_UNIFORM3FV:
+			case CaptureFormat.OP_UNIFORM_MATRIX4FV: {
+				final int location = data.readInt();
+				intList.add(uniformIds.id(uniformKey(currentProgram, location),
+						location));
+				final int count = data.readInt();
+				intList.add(count);
+				if (op == CaptureFormat.OP_UNIFORM3FV) {
+					readFloats(data, count * 3, floatList);
+				} else {
+					intList.add(data.readBoolean() ? 1 : 0);
+					readFloats(data, count * 16, floatList);
+				}
+				break;
+			}
+			case CaptureFormat.OP_USE_PROGRAM:
+				currentProgram = data.readInt();
+				intList.add(programIds.id(currentProgram));
+				break;
+			case CaptureFormat.OP_VERTEX_ATTRIB1FV:
+			case CaptureFormat.OP_VERTEX_ATTRIB2FV:
+			case CaptureFormat.OP_VERTEX_ATTRIB3FV:
+			case CaptureFormat.OP_VERTEX_ATTRIB4FV:
+				intList.add(data.readInt());
+				readFloats(data, op - CaptureFormat.OP_VERTEX_ATTRIB1FV + 1,
+						floatList);
+				break;
+			case CaptureFormat.OP_VERTEX_ATTRIB_POINTER:
+				intList.add(data.readInt());
+				intList.add(data.readInt());
+				intList.add(data.readInt());
+				intList.add(data.readBoolean() ? 1 : 0);
+				intList.add(data.readInt());
+				intList.add(data.readInt());
+				break;
+			default:
+				throw new IOException("Unknown opcode " + op);
+			}
+			objectList.add(object);
+		}
+
+		commandCount = opList.size;
+		ops = new byte[commandCount];
+		for (int i = 0; i < commandCount; i++) {
+			ops[i] = (byte) opList.values[i];
+		}
+		intStarts = intStartList.toArray();
+		ints = intList.toArray();
+		floatStarts = floatStartList.toArray();
+		floats = new float[floatList.size()];
+		for (int i = 0; i < floats.length; i++) {
+			floats[i] = floatList.get(i);
+		}
+		objects = objectList.toArray();
+		frameCount = frames;
+
+		capturedBuffers = bufferIds.captured.toArray();
+		capturedTextures = textureIds.captured.toArray();
+		capturedPrograms = programIds.captured.toArray();
+		capturedUniforms = uniformIds.captured.toArray();
+		buffers = new int[capturedBuffers.length];
+		textures = new int[capturedTextures.length];
+		programs = new int[capturedPrograms.length];
+		uniforms = new int[capturedUniforms.length];
+	}
+
+	/**
+	 * Replays the whole capture. Only the GL calls are made while frames are
+	 * timed; the capture was decoded by the constructor.
+	 *
+	 * @param gl
+	 *            The GLBackend to replay the calls on.
+	 * @return The statistics of the replay.
+	 */
+	public Stats replay(GLBackend gl) {
+		System.arraycopy(capturedBuffers, 0, buffers, 0, buffers.length);
+		System.arraycopy(capturedTextures, 0, textures, 0, textures.length);
+		System.arraycopy(capturedPrograms, 0, programs, 0, programs.length);
+		System.arraycopy(capturedUniforms, 0, uniforms, 0, uniforms.length);
+
+		final Stats stats = new Stats();
+		final long[] frameNanos = new long[frameCount];
+		long frameStart = 0;
+		boolean inFrame = false;
+
+		for (int i = 0; i < commandCount; i++) {
+			final byte op = ops[i];
+			if (op == CaptureFormat.OP_FRAME) {
+				final long now = System.nanoTime();
+				if (inFrame) {
+					frameNanos[stats.frames++] = now - frameStart;
+				}
+				inFrame = true;
+				frameStart = now;
+				continue;
+			}
+
+			final int uploaded = execute(i, op, gl);
+			if (inFrame) {
+				stats.calls++;
+				stats.bytesUploaded += uploaded;
+				if (op == CaptureFormat.OP_DRAW_ELEMENTS) {
+					stats.drawCalls++;
+				}
+			} else {
+				stats.setupCalls++;
+				stats.setupBytesUploaded += uploaded;
+			}
+		}
+		if (inFrame) {
+			frameNanos[stats.frames++] = System.nanoTime() - frameStart;
+		}
+		stats.frameNanos = frameNanos;
+		return stats;
+	}
+
+	/**
+	 * Replays one decoded command.
+	 *
+	 * @param i
+	 *            The index of the command.
+	 * @return The number of bytes uploaded by the command.
+	 */
+	private int execute(int i, byte op, GLBackend gl) {
+		final int[] a = ints;
+		final int k = intStarts[i];
+		final int f = floatStarts[i];
+		switch (op) {
+		case CaptureFormat.OP_ACTIVE_TEXTURE:
+			gl.glActiveTexture(a[k]);
+			break;
+		case CaptureFormat.OP_ATTACH_SHADER:
+			gl.glAttachShader(programs[a[k]], programs[a[k + 1]]);
+			break;
+		case CaptureFormat.OP_BIND_ATTRIB_LOCATION:
+			gl.glBindAttribLocation(programs[a[k]], a[k + 1],
+					(String) objects[i]);
+			break;
+		case CaptureFormat.OP_BIND_BUFFER:
+			gl.glBindBuffer(a[k], buffers[a[k + 1]]);
+			break;
+		case CaptureFormat.OP_BIND_TEXTURE:
+			gl.glBindTexture(a[k], textures[a[k + 1]]);
+			break;
+		case CaptureFormat.OP_BUFFER_DATA:
+			gl.glBufferData(a[k], a[k + 1], rewind(objects[i]), a[k + 2]);
+			return a[k + 1];
+		case CaptureFormat.OP_BUFFER_SUB_DATA:
+			gl.glBufferSubData(a[k], a[k + 1], a[k + 2], rewind(objects[i]));
+			return a[k + 2];
+		case CaptureFormat.OP_CLEAR:
+			gl.glClear(a[k]);
+			break;
+		case CaptureFormat.OP_CLEAR_COLOR:
+			gl.glClearColor(floats[f], floats[f + 1], floats[f + 2],
+					floats[f + 3]);
+			break;
+		case CaptureFormat.OP_COMPILE_SHADER:
+			gl.glCompileShader(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_CREATE_PROGRAM:
+			programs[a[k]] = gl.glCreateProgram();
+			break;
+		case CaptureFormat.OP_CREATE_SHADER:
+			programs[a[k + 1]] = gl.glCreateShader(a[k]);
+			break;
+		case CaptureFormat.OP_DELETE_PROGRAM:
+			gl.glDeleteProgram(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_DELETE_SHADER:
+			gl.glDeleteShader(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_DELETE_TEXTURES: {
+			final int n = a[k];
+			for (int j = 0; j < n; j++) {
+				handles[j] = textures[a[k + 1 + j]];
+			}
+			gl.glDeleteTextures(n, handles, 0);
+			break;
+		}
+		case CaptureFormat.OP_DISABLE_VERTEX_ATTRIB_ARRAY:
+			gl.glDisableVertexAttribArray(a[k]);
+			break;
+		case CaptureFormat.OP_DRAW_ELEMENTS:
+			gl.glDrawElements(a[k], a[k + 1], a[k + 2], a[k + 3]);
+			break;
+		case CaptureFormat.OP_ENABLE:
+			gl.glEnable(a[k]);
+			break;
+		case CaptureFormat.OP_ENABLE_VERTEX_ATTRIB_ARRAY:
+			gl.glEnableVertexAttribArray(a[k]);
+			break;
+		case CaptureFormat.OP_GEN_BUFFERS:
+		case CaptureFormat.OP_GEN_TEXTURES: {
+			final int n = a[k];
+			final int[] ids;
+			if (op == CaptureFormat.OP_GEN_BUFFERS) {
+				gl.glGenBuffers(n, handles, 0);
+				ids = buffers;
+			} else {
+				gl.glGenTextures(n, handles, 0);
+				ids = textures;
+			}
+			for (int j = 0; j < n; j++) {
+				ids[a[k + 1 + j]] = handles[j];
+			}
+			break;
+		}
+		case CaptureFormat.OP_GENERATE_MIPMAP:
+			gl.glGenerateMipmap(a[k]);
+			break;
+		case CaptureFormat.OP_GET_ATTRIB_LOCATION:
+			gl.glGetAttribLocation(programs[a[k]], (String) objects[i]);
+			break;
+		case CaptureFormat.OP_GET_ERROR:
+			gl.glGetError();
+			break;
+		case CaptureFormat.OP_GET_PROGRAM_INFO_LOG:
+			gl.glGetProgramInfoLog(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_GET_PROGRAMIV:
+			gl.glGetProgramiv(programs[a[k]], a[k + 1], params, 0);
+			break;
+		case CaptureFormat.OP_GET_SHADER_INFO_LOG:
+			gl.glGetShaderInfoLog(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_GET_SHADERIV:
+			gl.glGetShaderiv(programs[a[k]], a[k + 1], params, 0);
+			break;
+		case CaptureFormat.OP_GET_UNIFORM_LOCATION:
+			uniforms[a[k + 1]] = gl.glGetUniformLocation(programs[a[k]],
+					(String) objects[i]);
+			break;
+		case CaptureFormat.OP_IS_PROGRAM:
+			gl.glIsProgram(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_IS_TEXTURE:
+			gl.glIsTexture(textures[a[k]]);
+			break;
+		case CaptureFormat.OP_LINK_PROGRAM:
+			gl.glLinkProgram(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_SHADER_SOURCE:
+			gl.glShaderSource(programs[a[k]], (String) objects[i]);
+			break;
+		case CaptureFormat.OP_TEX_IMAGE_2D:
+			gl.glTexImage2D(a[k], a[k + 1], a[k + 2], a[k + 3], a[k + 4],
+					a[k + 5], a[k + 6], a[k + 7], rewind(objects[i]));
+			return a[k + 8];
+		case CaptureFormat.OP_TEX_PARAMETERI:
+			gl.glTexParameteri(a[k], a[k + 1], a[k + 2]);
+			break;
+		case CaptureFormat.OP_UNIFORM1I:
+			gl.glUniform1i(uniforms[a[k]], a[k + 1]);
+			break;
+		case CaptureFormat.OP_UNIFORM3FV:
+			gl.glUniform3fv(uniforms[a[k]], a[k + 1], floats, f);
+			break;
+		case CaptureFormat.OP_UNIFORM_MATRIX4FV:
+			gl.glUniformMatrix4fv(uniforms[a[k]], a[k + 1], a[k + 2] != 0,
+					floats, f);
+			break;
+		case CaptureFormat.OP_USE_PROGRAM:
+			gl.glUseProgram(programs[a[k]]);
+			break;
+		case CaptureFormat.OP_VERTEX_ATTRIB1FV:
+			gl.glVertexAttrib1fv(a[k], floats, f);
+			break;
+		case CaptureFormat.OP_VERTEX_ATTRIB2FV:
+			gl.glVertexAttrib2fv(a[k], floats, f);
+			break;
+		case CaptureFormat.OP_VERTEX_ATTRIB3FV:
+			gl.glVertexAttrib3fv(a[k], floats, f);
+			break;
+		case CaptureFormat.OP_VERTEX_ATTRIB4FV:
+			gl.glVertexAttrib4fv(a[k], floats, f);
+			break;
+		case CaptureFormat.OP_VERTEX_ATTRIB_POINTER:
+			gl.glVertexAttribPointer(a[k], a[k + 1], a[k + 2], a[k + 3] != 0,
+					a[k + 4], a[k + 5]);
+			break;
+		case CaptureFormat.OP_VIEWPORT:
+			gl.glViewport(a[k], a[k + 1], a[k + 2], a[k + 3]);
+			break;
+		default:
+		}
+		return 0;
+	}
+
+	private static long uniformKey(int program, int location) {
+		return ((long) program << 32) | (location & 0xFFFFFFFFL);
+	}
+
+	private static Buffer rewind(Object data) {
+		return (data != null) ? ((Buffer) data).rewind() : null;
+	}
+
+	private static void readFloats(DataInputStream in, int count,
+			ArrayList<Float> out) throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.add(in.readFloat());
+		}
+	}
+
+	/**
+	 * Reads buffer data into a new native-order direct buffer.
+	 *
+	 * @return The data, or null if none was captured.
+	 */
+	private static Buffer readData(DataInputStream in) throws IOException {
+		final byte type = in.readByte();
+		if (type == CaptureFormat.DATA_NONE) {
+			return null;
+		}
+		final int n = in.readInt();
+		if (n < 0) {
+			throw new IOException("Bad data length " + n);
+		}
+		switch (type) {
+		case CaptureFormat.DATA_FLOAT: {
+			final FloatBuffer data = allocate(n * 4).asFloatBuffer();
+			for (int i = 0; i < n; i++) {
+				data.put(i, in.readFloat());
+			}
+			return data;
+		}
+		case CaptureFormat.DATA_SHORT: {
+			final ShortBuffer data = allocate(n * 2).asShortBuffer();
+			for (int i = 0; i < n; i++) {
+				data.put(i, in.readShort());
+			}
+			return data;
+		}
+		case CaptureFormat.DATA_INT: {
+			final IntBuffer data = allocate(n * 4).asIntBuffer();
+			for (int i = 0; i < n; i++) {
+				data.put(i, in.readInt());
+			}
+			return data;
+		}
+		case CaptureFormat.DATA_BYTE: {
+			final ByteBuffer data = allocate(n);
+			for (int i = 0; i < n; i++) {
+				data.put(i, in.readByte());
+			}
+			return data;
+		}
+		default:
+			throw new IOException("Unknown data type " + type);
+		}
+	}
+
+	private static int bytesPerElement(Buffer data) {
+		if (data instanceof ByteBuffer) {
+			return 1;
+		} else if (data instanceof ShortBuffer) {
+			return 2;
+		} else {
+			return 4;
+		}
+	}
+
+	private static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: GLReplay <capture file> [runs]");
+			System.exit(1);
+		}
+		final int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		final GLReplay replay;
+		final FileInputStream in = new FileInputStream(args[0]);
+		try {
+			replay = new GLReplay(in);
+		} finally {
+			in.close();
+		}
+
+		for (int i = 0; i < runs; i++) {
+			Stats stats = replay.replay(new NullGL());
+			System.out.println("Run " + (i + 1) + ": " + stats);
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.supermercerbros.gameengine.gl;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+/**
+ * A GLBackend that draws nothing. Object creation always succeeds and returns
+ * a new handle, and queries return plausible values, so that the renderer can
+ * run without a GPU (for example, on a desktop JVM while testing or
+ * benchmarking).
+ */
+public class NullGL implements GLBackend {
+	private int nextHandle = 1;
+	private final HashMap<String, Integer> attribs = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> uniforms = new HashMap<String, Integer>();
+
+	@Override
+	public int checkError(String location) {
+		return GLES20.GL_NO_ERROR;
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+	}
+
+	@Override
+	public void glBindAttribLocation(int program, int index, String name) {
+		attribs.put(name, index);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+	}
+
+	@Override
+	public void glClear(int mask) {
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+	}
+
+	@Override
+	public int glCreateProgram() {
+		return nextHandle++;
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		return nextHandle++;
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+	}
+
+	@Override
+	public void glEnable(int cap) {
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+	}
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		for (int i = 0; i < n; i++) {
+			buffers[offset + i] = nextHandle++;
+		}
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		for (int i = 0; i < n; i++) {
+			textures[offset + i] = nextHandle++;
+		}
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+	}
+
+	/**
+	 * Returns the location that <code>name</code> was last bound to, or -1.
+	 */
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		Integer location = attribs.get(name);
+		return (location != null) ? location : -1;
+	}
+
+	@Override
+	public int glGetError() {
+		return GLES20.GL_NO_ERROR;
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		return "";
+	}
+
+	/**
+	 * Sets <code>params[offset]</code> to GL_TRUE, so that status checks pass.
+	 */
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		params[offset] = GLES20.GL_TRUE;
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		return "";
+	}
+
+	/**
+	 * Sets <code>params[offset]</code> to GL_TRUE, so that status checks pass.
+	 */
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		params[offset] = GLES20.GL_TRUE;
+	}
+
+	/**
+	 * Returns a different location for every uniform name.
+	 */
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		Integer location = uniforms.get(name);
+		if (location == null) {
+			location = uniforms.size();
+			uniforms.put(name, location);
+		}
+		return location;
+	}
+
+	@Override
+	public boolean glIsProgram(int program) {
+		return program > 0;
+	}
+
+	@Override
+	public boolean glIsTexture(int texture) {
+		return texture > 0;
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+	}
+
+	@Override
+	public void glShaderSource(int shader, String string) {
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+	}
+
+	@Override
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset) {
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+	}
+
+	@Override
+	public void glVertexAttrib1fv(int index, float[] values, int offset) {
+	}
+
+	@Override
+	public void glVertexAttrib2fv(int index, float[] values, int offset) {
+	}
+
+	@Override
+	public void glVertexAttrib3fv(int index, float[] values, int offset) {
+	}
+
+	@Override
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset) {
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+	}
+
+	@Override
+	public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+	}
+}
@@ -0,0 +1,570 @@
+package com.supermercerbros.gameengine.gl;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+
+/**
+ * A GLBackend that writes every call, with its arguments, to a Writer (one
+ * call per line) and then passes it on to another GLBackend. Wrap a
+ * {@link NullGL} to record the calls that the renderer would make without
+ * using a GPU.
+ */
+public class RecordingGL implements GLBackend {
+	private final GLBackend delegate;
+	private final PrintWriter out;
+	private long callCount = 0;
+	private boolean firstArg;
+
+	/**
+	 * @param delegate
+	 *            The GLBackend to pass calls on to.
+	 * @param out
+	 *            The Writer to record calls to.
+	 */
+	public RecordingGL(GLBackend delegate, Writer out) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate == null");
+		}
+		this.delegate = delegate;
+		this.out = (out instanceof PrintWriter) ? (PrintWriter) out
+				: new PrintWriter(out);
+	}
+
+	/**
+	 * @return The number of GL calls recorded so far.
+	 */
+	public long getCallCount() {
+		return callCount;
+	}
+
+	/**
+	 * Flushes the recorded calls to the underlying Writer.
+	 */
+	public void flush() {
+		out.flush();
+	}
+
+	private void begin(String name) {
+		callCount++;
+		out.print(name);
+		out.print('(');
+		firstArg = true;
+	}
+
+	private void separate() {
+		if (firstArg) {
+			firstArg = false;
+		} else {
+			out.print(", ");
+		}
+	}
+
+	private void arg(int value) {
+		separate();
+		out.print(value);
+	}
+
+	private void arg(float value) {
+		separate();
+		out.print(value);
+	}
+
+	private void arg(boolean value) {
+		separate();
+		out.print(value);
+	}
+
+	private void arg(String value) {
+		separate();
+		out.print(value);
+	}
+
+	private void args(int[] values, int offset, int count) {
+		separate();
+		out.print('[');
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				out.print(", ");
+			}
+			out.print(values[offset + i]);
+		}
+		out.print(']');
+	}
+
+	private void args(float[] values, int offset, int count) {
+		separate();
+		out.print('[');
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				out.print(", ");
+			}
+			out.print(values[offset + i]);
+		}
+		out.print(']');
+	}
+
+	private void end() {
+		out.println(')');
+	}
+
+	private void end(int result) {
+		out.print(") = ");
+		out.println(result);
+	}
+
+	private void end(boolean result) {
+		out.print(") = ");
+		out.println(result);
+	}
+
+	private void end(String result) {
+		out.print(") = ");
+		out.println(result);
+	}
+
+	@Override
+	public int checkError(String location) {
+		return delegate.checkError(location);
+	}
+
+	@Override
+	public void glActiveTexture(int texture) {
+		begin("glActiveTexture");
+		arg(texture);
+		end();
+		delegate.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		begin("glAttachShader");
+		arg(program);
+		arg(shader);
+		end();
+		delegate.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void glBindAttribLocation(int program, int index, String name) {
+		begin("glBindAttribLocation");
+		arg(program);
+		arg(index);
+		arg(name);
+		end();
+		delegate.glBindAttribLocation(program, index, name);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		begin("glBindBuffer");
+		arg(target);
+		arg(buffer);
+		end();
+		delegate.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture) {
+		begin("glBindTexture");
+		arg(target);
+		arg(texture);
+		end();
+		delegate.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		begin("glBufferData");
+		arg(target);
+		arg(size);
+		arg(data != null ? "<data>" : "null");
+		arg(usage);
+		end();
+		delegate.glBufferData(target, size, data, usage);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		begin("glBufferSubData");
+		arg(target);
+		arg(offset);
+		arg(size);
+		end();
+		delegate.glBufferSubData(target, offset, size, data);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		begin("glClear");
+		arg(mask);
+		end();
+		delegate.glClear(mask);
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		begin("glClearColor");
+		arg(red);
+		arg(green);
+		arg(blue);
+		arg(alpha);
+		end();
+		delegate.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		begin("glCompileShader");
+		arg(shader);
+		end();
+		delegate.glCompileShader(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		final int result = delegate.glCreateProgram();
+		begin("glCreateProgram");
+		end(result);
+		return result;
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		final int result = delegate.glCreateShader(type);
+		begin("glCreateShader");
+		arg(type);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		begin("glDeleteProgram");
+		arg(program);
+		end();
+		delegate.glDeleteProgram(program);
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		begin("glDeleteShader");
+		arg(shader);
+		end();
+		delegate.glDeleteShader(shader);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset) {
+		begin("glDeleteTextures");
+		arg(n);
+		args(textures, offset, n);
+		end();
+		delegate.glDeleteTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		begin("glDisableVertexAttribArray");
+		arg(index);
+		end();
+		delegate.glDisableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		begin("glDrawElements");
+		arg(mode);
+		arg(count);
+		arg(type);
+		arg(offset);
+		end();
+		delegate.glDrawElements(mode, count, type, offset);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		begin("glEnable");
+		arg(cap);
+		end();
+		delegate.glEnable(cap);
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		begin("glEnableVertexAttribArray");
+		arg(index);
+		end();
+		delegate.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		delegate.glGenBuffers(n, buffers, offset);
+		begin("glGenBuffers");
+		arg(n);
+		args(buffers, offset, n);
+		end();
+	}
+
+	@Override
+	public void glGenTextures(int n, int[] textures, int offset) {
+		delegate.glGenTextures(n, textures, offset);
+		begin("glGenTextures");
+		arg(n);
+		args(textures, offset, n);
+		end();
+	}
+
+	@Override
+	public void glGenerateMipmap(int target) {
+		begin("glGenerateMipmap");
+		arg(target);
+		end();
+		delegate.glGenerateMipmap(target);
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		final int result = delegate.glGetAttribLocation(program, name);
+		begin("glGetAttribLocation");
+		arg(program);
+		arg(name);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public int glGetError() {
+		final int result = delegate.glGetError();
+		begin("glGetError");
+		end(result);
+		return result;
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		final String result = delegate.glGetProgramInfoLog(program);
+		begin("glGetProgramInfoLog");
+		arg(program);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params,
+			int offset) {
+		delegate.glGetProgramiv(program, pname, params, offset);
+		begin("glGetProgramiv");
+		arg(program);
+		arg(pname);
+		args(params, offset, 1);
+		end();
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		final String result = delegate.glGetShaderInfoLog(shader);
+		begin("glGetShaderInfoLog");
+		arg(shader);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		delegate.glGetShaderiv(shader, pname, params, offset);
+		begin("glGetShaderiv");
+		arg(shader);
+		arg(pname);
+		args(params, offset, 1);
+		end();
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		final int result = delegate.glGetUniformLocation(program, name);
+		begin("glGetUniformLocation");
+		arg(program);
+		arg(name);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public boolean glIsProgram(int program) {
+		final boolean result = delegate.glIsProgram(program);
+		begin("glIsProgram");
+		arg(program);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public boolean glIsTexture(int texture) {
+		final boolean result = delegate.glIsTexture(texture);
+		begin("glIsTexture");
+		arg(texture);
+		end(result);
+		return result;
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		begin("glLinkProgram");
+		arg(program);
+		end();
+		delegate.glLinkProgram(program);
+	}
+
+	@Override
+	public void glShaderSource(int shader, String string) {
+		begin("glShaderSource");
+		arg(shader);
+		arg("<" + string.length() + " chars>");
+		end();
+		delegate.glShaderSource(shader, string);
+	}
+
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int format, int type,
+			Buffer pixels) {
+		begin("glTexImage2D");
+		arg(target);
+		arg(level);
+		arg(internalformat);
+		arg(width);
+		arg(height);
+		arg(border);
+		arg(format);
+		arg(type);
+		arg(pixels != null ? "<data>" : "null");
+		end();
+		delegate.glTexImage2D(target, level, internalformat, width, height,
+				border, format, type, pixels);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+		begin("glTexParameteri");
+		arg(target);
+		arg(pname);
+		arg(param);
+		end();
+		delegate.glTexParameteri(target, pname, param);
+	}
+
+	@Override
+	public void glUniform1i(int location, int x) {
+		begin("glUniform1i");
+		arg(location);
+		arg(x);
+		end();
+		delegate.glUniform1i(location, x);
+	}
+
+	@Override
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+		begin("glUniform3fv");
+		arg(location);
+		arg(count);
+		args(v, offset, count * 3);
+		end();
+		delegate.glUniform3fv(location, count, v, offset);
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset) {
+		begin("glUniformMatrix4fv");
+		arg(location);
+		arg(count);
+		arg(transpose);
+		args(value, offset, count * 16);
+		end();
+		delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		begin("glUseProgram");
+		arg(program);
+		end();
+		delegate.glUseProgram(program);
+	}
+
+	@Override
+	public void glVertexAttrib1fv(int index, float[] values, int offset) {
+		begin("glVertexAttrib1fv");
+		arg(index);
+		args(values, offset, 1);
+		end();
+		delegate.glVertexAttrib1fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib2fv(int index, float[] values, int offset) {
+		begin("glVertexAttrib2fv");
+		arg(index);
+		args(values, offset, 2);
+		end();
+		delegate.glVertexAttrib2fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib3fv(int index, float[] values, int offset) {
+		begin("glVertexAttrib3fv");
+		arg(index);
+		args(values, offset, 3);
+		end();
+		delegate.glVertexAttrib3fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+		begin("glVertexAttrib4fv");
+		arg(index);
+		args(values, offset, 4);
+		end();
+		delegate.glVertexAttrib4fv(index, values, offset);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, int offset) {
+		begin("glVertexAttribPointer");
+		arg(index);
+		arg(size);
+		arg(type);
+		arg(normalized);
+		arg(stride);
+		arg(offset);
+		end();
+		delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		begin("glViewport");
+		arg(x);
+		arg(y);
+		arg(width);
+		arg(height);
+		end();
+		delegate.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+		begin("texImage2D");
+		arg(target);
+		arg(level);
+		arg(bitmap.getWidth() + "x" + bitmap.getHeight());
+		arg(border);
+		end();
+		delegate.texImage2D(target, level, bitmap, border);
+	}
+}
@@ -0,0 +1,170 @@
+package com.supermercerbros.gameengine.math;
+
+/**
+ * Pure-Java 4x4 matrix operations, with the same column-major layout and
+ * method signatures as android.opengl.Matrix, so that they can be used on any
+ * JVM. These are also cheaper than android.opengl.Matrix.multiplyMM, which
+ * makes a JNI call for every multiplication.
+ */
+public class Matrix {
+
+	private Matrix() {
+	} // This class should never be instantiated
+
+	/**
+	 * Sets a 4x4 matrix to the identity matrix.
+	 *
+	 * @param sm
+	 *            The array that holds the matrix.
+	 * @param smOffset
+	 *            The offset of the matrix in <code>sm</code>.
+	 */
+	public static void setIdentityM(float[] sm, int smOffset) {
+		for (int i = 0; i < 16; i++) {
+			sm[smOffset + i] = 0.0f;
+		}
+		for (int i = 0; i < 16; i += 5) {
+			sm[smOffset + i] = 1.0f;
+		}
+	}
+
+	/**
+	 * Multiplies two 4x4 matrices together and stores the result in a third.
+	 * <code>result</code> may be the same array as <code>rhs</code> (at the
+	 * same offset), but must not overlap <code>lhs</code>.
+	 *
+	 * @param result
+	 *            The array that receives <code>lhs * rhs</code>.
+	 * @param resultOffset
+	 *            The offset of the result in <code>result</code>.
+	 * @param lhs
+	 *            The array that holds the left-hand matrix.
+	 * @param lhsOffset
+	 *            The offset of the left-hand matrix.
+	 * @param rhs
+	 *            The array that holds the right-hand matrix.
+	 * @param rhsOffset
+	 *            The offset of the right-hand matrix.
+	 */
+	public static void multiplyMM(float[] result, int resultOffset,
+			float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+		for (int c = 0; c < 4; c++) {
+			final int rc = rhsOffset + c * 4;
+			final float r0 = rhs[rc], r1 = rhs[rc + 1];
+			final float r2 = rhs[rc + 2], r3 = rhs[rc + 3];
+			for (int r = 0; r < 4; r++) {
+				final int l = lhsOffset + r;
+				result[resultOffset + c * 4 + r] = lhs[l] * r0 + lhs[l + 4]
+						* r1 + lhs[l + 8] * r2 + lhs[l + 12] * r3;
+			}
+		}
+	}
+
+	/**
+	 * Multiplies a 4-element vector by a 4x4 matrix. <code>resultVec</code>
+	 * must not overlap <code>rhsVec</code>.
+	 *
+	 * @param resultVec
+	 *            The array that receives <code>lhsMat * rhsVec</code>.
+	 * @param resultVecOffset
+	 *            The offset of the result vector.
+	 * @param lhsMat
+	 *            The array that holds the matrix.
+	 * @param lhsMatOffset
+	 *            The offset of the matrix.
+	 * @param rhsVec
+	 *            The array that holds the vector.
+	 * @param rhsVecOffset
+	 *            The offset of the vector.
+	 */
+	public static void multiplyMV(float[] resultVec, int resultVecOffset,
+			float[] lhsMat, int lhsMatOffset, float[] rhsVec, int rhsVecOffset) {
+		final float x = rhsVec[rhsVecOffset], y = rhsVec[rhsVecOffset + 1];
+		final float z = rhsVec[rhsVecOffset + 2], w = rhsVec[rhsVecOffset + 3];
+		for (int r = 0; r < 4; r++) {
+			final int l = lhsMatOffset + r;
+			resultVec[resultVecOffset + r] = lhsMat[l] * x + lhsMat[l + 4] * y
+					+ lhsMat[l + 8] * z + lhsMat[l + 12] * w;
+		}
+	}
+
+	/**
+	 * Translates a matrix in place by x, y, and z.
+	 *
+	 * @param m
+	 *            The array that holds the matrix.
+	 * @param mOffset
+	 *            The offset of the matrix.
+	 * @param x
+	 *            The translation along the x axis.
+	 * @param y
+	 *            The translation along the y axis.
+	 * @param z
+	 *            The translation along the z axis.
+	 */
+	public static void translateM(float[] m, int mOffset, float x, float y,
+			float z) {
+		for (int i = 0; i < 4; i++) {
+			final int mi = mOffset + i;
+			m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+		}
+	}
+
+	/**
+	 * Defines a viewing transformation in terms of an eye point, a center of
+	 * view, and an up vector.
+	 *
+	 * @param rm
+	 *            The array that receives the matrix.
+	 * @param rmOffset
+	 *            The offset of the matrix.
+	 */
+	public static void setLookAtM(float[] rm, int rmOffset, float eyeX,
+			float eyeY, float eyeZ, float centerX, float centerY,
+			float centerZ, float upX, float upY, float upZ) {
+		// f = normalize(center - eye)
+		float fx = centerX - eyeX;
+		float fy = centerY - eyeY;
+		float fz = centerZ - eyeZ;
+		final float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+		fx *= rlf;
+		fy *= rlf;
+		fz *= rlf;
+
+		// s = normalize(f x up)
+		float sx = fy * upZ - fz * upY;
+		float sy = fz * upX - fx * upZ;
+		float sz = fx * upY - fy * upX;
+		final float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+		sx *= rls;
+		sy *= rls;
+		sz *= rls;
+
+		// u = s x f
+		final float ux = sy * fz - sz * fy;
+		final float uy = sz * fx - sx * fz;
+		final float uz = sx * fy - sy * fx;
+
+		rm[rmOffset + 0] = sx;
+		rm[rmOffset + 1] = ux;
+		rm[rmOffset + 2] = -fx;
+		rm[rmOffset + 3] = 0.0f;
+
+		rm[rmOffset + 4] = sy;
+		rm[rmOffset + 5] = uy;
+		rm[rmOffset + 6] = -fy;
+		rm[rmOffset + 7] = 0.0f;
+
+		rm[rmOffset + 8] = sz;
+		rm[rmOffset + 9] = uz;
+		rm[rmOffset + 10] = -fz;
+		rm[rmOffset + 11] = 0.0f;
+
+		rm[rmOffset + 12] = 0.0f;
+		rm[rmOffset + 13] = 0.0f;
+		rm[rmOffset + 14] = 0.0f;
+		rm[rmOffset + 15] = 1.0f;
+
+		translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+	}
+}
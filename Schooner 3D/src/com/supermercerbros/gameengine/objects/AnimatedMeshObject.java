@@ -1,16 +1,12 @@
 package com.supermercerbros.gameengine.objects;
 
-import android.util.Log;
-
 import com.supermercerbros.gameengine.animation.AnimationData;
 import com.supermercerbros.gameengine.animation.MeshAnimation;
-import com.supermercerbros.gameengine.engine.Normals;
 
 /**
  * Represents an animated 3D mesh object.
  */
 public class AnimatedMeshObject extends GameObject {
-	private static final String TAG = "com.supermercerbros.gameengine.objects.GameObject";
 
 	private MeshAnimation anim;
 	private AnimationData data;
@@ -30,16 +26,20 @@ public class AnimatedMeshObject extends GameObject {
 
 	@Override
 	public void draw(long time) {
-		Log.d(TAG, "AnimatedMeshObject.draw(" + time + ") was called.");
 		if (anim != null) {
 			anim.getFrame(time, data, this);
+			markNormalsDirty();
 		}
-		
-		Normals.calculate(this);
+		updateNormals();
 		super.draw(time);
 
 	}
 
+	@Override
+	public boolean isStreamed() {
+		return true;
+	}
+
 	public void setAnimation(MeshAnimation anim, long startTime, long duration,
 			int loop) {
 		this.anim = anim;
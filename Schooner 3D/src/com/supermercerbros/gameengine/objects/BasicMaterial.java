@@ -1,5 +1,7 @@
 package com.supermercerbros.gameengine.objects;
 
+import java.nio.FloatBuffer;
+
 import android.opengl.GLES20;
 
 /**
@@ -9,7 +11,7 @@ public class BasicMaterial extends Material {
 	private static final int STRIDE = 6;
 
 	public BasicMaterial(){
-		super("vertexColor", STRIDE);
+		super("vertexColor", "vertexColor-instanced", STRIDE);
 	}
 	
 	@Override
@@ -28,12 +30,11 @@ public class BasicMaterial extends Material {
 	}
 
 	@Override
-	public int loadObjectToVBO(GameObject obj, int[] vbo, int offset) {
+	public int loadObjectToVBO(GameObject obj, FloatBuffer vbo, int offset) {
 		int numOfVerts = obj.verts.length / 3;
 		
-		setLoadOffset(offset);
-		loadArrayToVbo(obj.verts, vbo, 3, numOfVerts); // Vertex position data
-		loadArrayToVbo(obj.mtl, vbo, 3, numOfVerts);   // Vertex color data
+		offset = loadArrayToVbo(obj.verts, vbo, offset, 3, numOfVerts); // Vertex position data
+		loadArrayToVbo(obj.mtl, vbo, offset, 3, numOfVerts);   // Vertex color data
 		
 		return obj.info.count * STRIDE;
 	}
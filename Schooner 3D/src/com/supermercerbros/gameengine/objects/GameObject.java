@@ -4,13 +4,13 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
-import android.opengl.Matrix;
-import android.util.Log;
-
 import com.supermercerbros.gameengine.animation.Movable;
 import com.supermercerbros.gameengine.animation.Movement;
 import com.supermercerbros.gameengine.engine.Engine;
 import com.supermercerbros.gameengine.engine.Normals;
+import com.supermercerbros.gameengine.engine.ObjectTable;
+import com.supermercerbros.gameengine.engine.TransformStore;
+import com.supermercerbros.gameengine.util.Log;
 
 /**
  * Represents a 3D mesh object.
@@ -55,22 +55,54 @@ public class GameObject implements Movable {
 	 */
 	public Metadata info;
 	/**
-	 * The model transformation matrix for this GameObject
+	 * The TransformStore holding this GameObject's transform: the Engine's,
+	 * once this GameObject has been added to it, or a private one before
+	 * then.
+	 */
+	private TransformStore transforms;
+	/**
+	 * The slot of this GameObject's transform in <code>transforms</code>.
 	 */
-	public float[] modelMatrix = new float[16];
+	private int transformSlot;
+	/**
+	 * The private TransformStore of this GameObject, which holds its
+	 * transform while it is not in an Engine.
+	 */
+	private final TransformStore ownTransforms = new TransformStore(1);
 	protected Movement motion;
 	/**
-	 * Contains the VBO offset at which this GameObject's data is loaded. This
-	 * is used for multiple instances of the same primitive.
+	 * Contains the geometry of this GameObject if it is not streamed. This is
+	 * shared by multiple instances of the same primitive, so that it is only
+	 * uploaded to the GPU once.
 	 */
-	protected int[] instanceLoaded = { -1 };
+	private StaticMesh staticMesh;
 
 	private long lastDrawTime;
 	/**
 	 * Used by the Engine class when loading the GameObject into buffers.
 	 */
 	public int iOffset = -1;
+	/**
+	 * The handle of this GameObject in the Engine it was added to.
+	 */
+	private int handle = ObjectTable.INVALID_HANDLE;
 	private boolean stationary;
+	/**
+	 * True if the vertex data of this GameObject has changed since the Engine
+	 * last loaded it into the VBO.
+	 */
+	private boolean vertsDirty = true;
+	/**
+	 * True if <code>verts</code> has changed since the normals were last
+	 * calculated.
+	 */
+	private boolean normalsDirty = false;
+	/**
+	 * Incremented whenever the vertex data changes. The Engine compares this
+	 * with the version it packed into each RenderData, so that unchanged
+	 * objects are not packed again.
+	 */
+	private int vertsVersion = 0;
 
 	private boolean debug = false;
 
@@ -101,17 +133,20 @@ public class GameObject implements Movable {
 		info.count = verts.length / 3;
 		info.mtl = mtl;
 
-		Matrix.setIdentityM(modelMatrix, 0);
+		transforms = ownTransforms;
+		transformSlot = transforms.allocate();
 		stationary = false;
 		
-		Log.d(TAG, Arrays.toString(normals));
+		if (Log.V) {
+			Log.v(TAG, Arrays.toString(normals));
+		}
 		if (normals == null) {
 			Normals.calculate(this);
 		}
 	}
 
 	private GameObject(float[] verts, short[] indices, float[] uvs,
-			float[] normals, int[] instanceLoaded, Material mtl,
+			float[] normals, StaticMesh staticMesh, Material mtl,
 			short[][] doubles) {
 		Log.d(TAG, "Constructing GameObject...");
 		this.verts = verts;
@@ -124,14 +159,16 @@ public class GameObject implements Movable {
 		info.count = verts.length / 3;
 		info.mtl = mtl;
 
-		Matrix.setIdentityM(modelMatrix, 0);
+		transforms = ownTransforms;
+		transformSlot = transforms.allocate();
 		stationary = false;
 
 		if (normals == null) {
 			Normals.calculate(this);
 		}
 
-		this.instanceLoaded = instanceLoaded;
+		this.staticMesh = staticMesh;
+		info.mesh = staticMesh;
 	}
 
 	/**
@@ -147,9 +184,13 @@ public class GameObject implements Movable {
 		if (quantity <= 0)
 			return null;
 		LinkedList<GameObject> instances = new LinkedList<GameObject>();
+		final StaticMesh mesh = getStaticMesh();
+		if (mesh != null) {
+			mesh.setShared();
+		}
 		for (int i = 0; i < quantity; i++) {
 			instances.add(new GameObject(verts, indices, mtl, normals,
-					instanceLoaded, info.mtl, doubles));
+					mesh, info.mtl, doubles));
 		}
 		return instances;
 	}
@@ -159,6 +200,17 @@ public class GameObject implements Movable {
 	 * and/or transformation matrix for the given point in time, in
 	 * milliseconds. To do something with the object-space (local) vertices
 	 * every frame, override this method in a <code>GameObject</code> subclass.
+	 * <p>
+	 * If the Engine has a {@link com.supermercerbros.gameengine.engine.WorkerPool},
+	 * this is called on several threads at once, for different GameObjects.
+	 * It must then only change this GameObject: its fields, its vertex data
+	 * and normals, and its own transform (through {@link #setPosition},
+	 * {@link #setModelMatrix(float[], int)} and the like). It may read data
+	 * that nothing changes during the update, such as keyframes and
+	 * Materials, but must not touch other GameObjects, the Camera or other
+	 * shared state, and must not call methods of the Engine (a GameObject can
+	 * still remove itself with {@link #markForDeletion()}). The Engine packs
+	 * the frame only after every GameObject has been drawn.
 	 * 
 	 * @param time
 	 *            The (estimated) time of the frame currently being calculated,
@@ -168,11 +220,12 @@ public class GameObject implements Movable {
 	 */
 	public void draw(long time) {
 		if (motion != null) {
-			motion.getFrame(modelMatrix, 0, time);
+			motion.getFrame(transforms.matrices, transformSlot * 16, time);
+			transforms.matrixChanged(transformSlot);
 		}
 		lastDrawTime = time;
 		
-		if (debug) {
+		if (Log.D && debug) {
 			Log.d(TAG, Arrays.toString(normals));
 		}
 	}
@@ -194,29 +247,247 @@ public class GameObject implements Movable {
 	}
 
 	/**
-	 * @return true if this object is stationary.
+	 * Returns true if the vertex data of this GameObject changes over time. The
+	 * vertex data of streamed GameObjects is sent to the renderer every frame
+	 * that it changes; the vertex data of other GameObjects is uploaded to the
+	 * GPU once and must not be modified afterwards. The default implementation
+	 * returns false, so subclasses that modify their vertex data must override
+	 * this.
+	 * 
+	 * @return true if this GameObject's vertex data is streamed.
+	 * @see AnimatedMeshObject
+	 */
+	public boolean isStreamed() {
+		return false;
+	}
+
+	/**
+	 * Returns the StaticMesh containing this GameObject's geometry, creating it
+	 * if necessary.
+	 * 
+	 * @return The StaticMesh of this GameObject, or null if this GameObject
+	 *         is streamed.
+	 * @see #isStreamed()
+	 */
+	public StaticMesh getStaticMesh() {
+		if (staticMesh == null && !isStreamed()) {
+			staticMesh = new StaticMesh();
+			info.mesh = staticMesh;
+		}
+		return staticMesh;
+	}
+
+	/**
+	 * @return true if the vertex data of this GameObject has changed since it
+	 *         was last loaded into the VBO.
+	 * @see #markVertsDirty()
+	 */
+	public boolean isVertsDirty() {
+		return vertsDirty;
+	}
+
+	/**
+	 * Tells the Engine that the vertex data (<code>verts</code>,
+	 * <code>normals</code>, or <code>mtl</code>) of this GameObject has
+	 * changed and needs to be sent to the renderer again. Subclasses that
+	 * modify their vertex data must call this, and must be streamed.
+	 * 
+	 * @see #isStreamed()
+	 */
+	public void markVertsDirty() {
+		vertsDirty = true;
+		vertsVersion++;
+	}
+
+	/**
+	 * Called by the Engine after it loads this GameObject's vertex data into
+	 * the VBO.
+	 */
+	public void clearVertsDirty() {
+		vertsDirty = false;
+	}
+
+	/**
+	 * @return A number that changes whenever {@link #markVertsDirty()} is
+	 *         called. Used by the Engine.
+	 */
+	public int getVertsVersion() {
+		return vertsVersion;
+	}
+
+	/**
+	 * Tells this GameObject that <code>verts</code> has changed, so its
+	 * normals must be recalculated by {@link #updateNormals()}. This also
+	 * marks the vertex data dirty.
+	 */
+	public void markNormalsDirty() {
+		normalsDirty = true;
+		markVertsDirty();
+	}
+
+	/**
+	 * Recalculates the normals of this GameObject if <code>verts</code> has
+	 * changed since they were last calculated.
+	 * 
+	 * @see #markNormalsDirty()
+	 */
+	public void updateNormals() {
+		if (normalsDirty) {
+			Normals.calculate(this);
+			normalsDirty = false;
+		}
+	}
+
+	/**
+	 * @return The TransformStore that holds this GameObject's transform.
+	 */
+	public TransformStore getTransforms() {
+		return transforms;
+	}
+
+	/**
+	 * @return The slot of this GameObject's transform in
+	 *         {@link #getTransforms()}.
+	 */
+	public int getTransformSlot() {
+		return transformSlot;
+	}
+
+	/**
+	 * Moves this GameObject's transform into the given TransformStore. Used by
+	 * the Engine when this GameObject is added to it.
+	 * 
+	 * @param store
+	 *            The Engine's TransformStore.
+	 */
+	public void attachTransforms(TransformStore store) {
+		if (store == transforms) {
+			return;
+		}
+		final int slot = store.allocate();
+		store.copySlot(transforms, transformSlot, slot);
+		transforms.release(transformSlot);
+		transforms = store;
+		transformSlot = slot;
+	}
+
+	/**
+	 * Moves this GameObject's transform out of the Engine's TransformStore,
+	 * into a private one. Used by the Engine when this GameObject is removed
+	 * from it.
+	 */
+	public void detachTransforms() {
+		if (transforms == ownTransforms) {
+			return;
+		}
+		final TransformStore store = ownTransforms;
+		final int slot = store.allocate();
+		store.copySlot(transforms, transformSlot, slot);
+		transforms.release(transformSlot);
+		transforms = store;
+		transformSlot = slot;
+	}
+
+	/**
+	 * Sets the position of this GameObject. The model matrix is rebuilt from
+	 * the position, rotation and scale before the next frame is rendered.
+	 */
+	public void setPosition(float x, float y, float z) {
+		transforms.setPosition(transformSlot, x, y, z);
+	}
+
+	/**
+	 * Sets the rotation of this GameObject to the given (normalized)
+	 * quaternion.
+	 * 
+	 * @see #setPosition(float, float, float)
+	 */
+	public void setRotation(float x, float y, float z, float w) {
+		transforms.setRotation(transformSlot, x, y, z, w);
+	}
+
+	/**
+	 * Sets the scale of this GameObject.
+	 * 
+	 * @see #setPosition(float, float, float)
+	 */
+	public void setScale(float x, float y, float z) {
+		transforms.setScale(transformSlot, x, y, z);
+	}
+
+	/**
+	 * Sets the model transformation matrix of this GameObject directly. The
+	 * position, rotation and scale are not changed to match.
+	 * 
+	 * @param m
+	 *            The array containing the matrix.
+	 * @param offset
+	 *            The offset into <code>m</code> of the matrix.
+	 */
+	public void setModelMatrix(float[] m, int offset) {
+		transforms.setMatrix(transformSlot, m, offset);
+	}
+
+	/**
+	 * Copies the model transformation matrix of this GameObject into
+	 * <code>m</code>.
+	 * 
+	 * @param m
+	 *            The array to copy the matrix to.
+	 * @param offset
+	 *            The offset into <code>m</code> to copy the matrix to.
+	 */
+	public void getModelMatrix(float[] m, int offset) {
+		transforms.getMatrix(transformSlot, m, offset);
+	}
+
+	/**
+	 * @return true if this object has been marked as stationary with
+	 *         {@link #setStationary(boolean)}.
 	 */
 	public boolean isStationary() {
 		return stationary;
 	}
 
+	/**
+	 * @return The handle of this GameObject, as returned by
+	 *         {@link Engine#addObject(GameObject)}, or
+	 *         {@link ObjectTable#INVALID_HANDLE} if it is not in an Engine.
+	 */
+	public int getHandle() {
+		return handle;
+	}
+
+	/**
+	 * Called by the Engine when this GameObject is added to or removed from
+	 * it.
+	 */
+	public void setHandle(int handle) {
+		this.handle = handle;
+	}
+
 	/**
 	 * Marks this GameObject for deletion. The Engine doesn't update this
 	 * GameObject for rendering anymore, but it is not actually deleted from the
-	 * Engine until {@link Engine#flushDeletedObjects()} is called. Should only
-	 * be called from the Engine thread
+	 * Engine until {@link Engine#flushDeletedObjects()} is called; use
+	 * {@link Engine#removeObject(int)} instead to have it deleted at the start
+	 * of the next frame. Should only be called from the Engine thread
 	 */
 	public void markForDeletion() {
 		info.delete = true;
 	}
 
 	/**
+	 * Marks this GameObject as stationary. This is only a hint for subclasses
+	 * and games; the Engine does not read it. In particular, it has no effect
+	 * on packing: an object's model matrix and vertex data are only sent to
+	 * the renderer again when they change, whether or not the object is
+	 * stationary.
+	 * 
 	 * @param stationary
 	 *            <code>true</code> if this <code>GameObject</code> has no
-	 *            motion. Note that <code>modelMatrix</code> can still be
-	 *            modified, and will still affect the <code>GameObject</code>'s
-	 *            position, but the object will not be translated or rotated
-	 *            when <code>draw()</code> is called.
+	 *            motion. Its model matrix can still be modified, and a
+	 *            Movement set on it still moves it.
 	 */
 	public void setStationary(boolean stationary) {
 		this.stationary = stationary;
@@ -234,7 +505,9 @@ public class GameObject implements Movable {
 	 */
 	public void startMotion(Movement motion, long time, float speed) {
 		this.motion = motion;
-		motion.start(time, modelMatrix, speed);
+		final float[] relativeMatrix = new float[16];
+		getModelMatrix(relativeMatrix, 0);
+		motion.start(time, relativeMatrix, speed);
 	}
 	
 	public void setDebug(boolean debug){
@@ -1,11 +1,15 @@
 package com.supermercerbros.gameengine.objects;
 
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+
 import android.opengl.GLES20;
 
+import com.supermercerbros.gameengine.engine.GLState;
 import com.supermercerbros.gameengine.engine.GameRenderer;
 import com.supermercerbros.gameengine.engine.Program;
 import com.supermercerbros.gameengine.engine.ShaderLib;
-import com.supermercerbros.gameengine.util.GLES2;
+import com.supermercerbros.gameengine.gl.GL;
 
 /**
  * Superclass for materials to be used when rendering 3D objects. Subclasses
@@ -21,6 +25,12 @@ import com.supermercerbros.gameengine.util.GLES2;
  * </pre>
  */
 public abstract class Material {
+	/**
+	 * The sort ids given to program names. Program names are used instead of
+	 * Programs so that primitives can be sorted without a GL context.
+	 */
+	private static final HashMap<String, Integer> programSortIds = new HashMap<String, Integer>();
+
 	/**
 	 * Contains the OpenGL shader program used by this Material. This field is
 	 * initialized during {@link #attachAttribs(Metadata, int, float[], int)}.
@@ -48,17 +58,13 @@ public abstract class Material {
 	protected int a_mtl;
 
 	/**
-	 * Contains the handle to the <code>a_mtl</code> attribute in the shader,
+	 * Contains the handle to the <code>a_model</code> attribute in the shader,
 	 * the attribute used to store the object-specific tranformation matrix.
 	 * This handle is initialized during
 	 * {@link #attachAttribs(Metadata, int, float[], int)}.
 	 */
 	private int a_model;
 
-	/**
-	 * The loading offset for the VBO. Starts at the offset provided by {@link #setLoadOffset(int)}
-	 */
-	private int inPos = 0;
 	/**
 	 * The unloading offset for the VBO. Starts at the offset where the data begins.
 	 */
@@ -67,10 +73,45 @@ public abstract class Material {
 	 * The name of the program that this Material uses.
 	 */
 	private final String programName;
+	/**
+	 * The name of the program that this Material uses to draw several
+	 * instances at once, or null if it cannot.
+	 */
+	private final String instancedProgramName;
 	private final int stride;
 
+	private Program normalProgram;
+	private Program instancedProgram;
+	/**
+	 * True while {@link #attachInstancedAttribs(Metadata, int)} is attaching
+	 * attributes.
+	 */
+	private boolean instancing = false;
+	/**
+	 * The sort id of this Material's program, or -1 if it has not been looked
+	 * up yet.
+	 */
+	private int programSortId = -1;
+
 	protected Material(String programName, int stride) {
+		this(programName, null, stride);
+	}
+
+	/**
+	 * @param programName
+	 *            The name of the program to draw with
+	 * @param instancedProgramName
+	 *            The name of the program to draw several instances at once
+	 *            with. Its vertex shader must take its model matrix from
+	 *            <code>u_models[int(a_instance)]</code> instead of
+	 *            <code>a_model</code>.
+	 * @param stride
+	 *            The number of floats per vertex
+	 */
+	protected Material(String programName, String instancedProgramName,
+			int stride) {
 		this.programName = programName;
+		this.instancedProgramName = instancedProgramName;
 		this.stride = stride;
 	}
 
@@ -99,29 +140,79 @@ public abstract class Material {
 	 */
 	public int attachAttribs(Metadata primitive, int vboOffset, float[] matrix,
 			int matrixIndex) {
-		if (program == null) {
-			program = ShaderLib.getProgram(programName);
+		final Program p;
+		if (instancing) {
+			if (instancedProgram == null) {
+				instancedProgram = ShaderLib.getProgram(instancedProgramName);
+			}
+			p = instancedProgram;
+		} else {
+			if (normalProgram == null) {
+				normalProgram = ShaderLib.getProgram(programName);
+			}
+			p = normalProgram;
+		}
+		if (program != p) {
+			program = p;
 			a_pos = program.getAttribLocation(ShaderLib.A_POS);
 			a_normal = program.getAttribLocation(ShaderLib.A_NORMAL);
 			a_mtl = program.getAttribLocation(ShaderLib.A_MTL);
 			a_model = program.getAttribLocation(ShaderLib.A_MODEL);
 		}
 
-		GLES20.glDisableVertexAttribArray(a_model);
-		GLES20.glDisableVertexAttribArray(a_model + 1);
-		GLES20.glDisableVertexAttribArray(a_model + 2);
-		GLES20.glDisableVertexAttribArray(a_model + 3);
-		
-		GLES20.glVertexAttrib4fv(a_model + 0, matrix, matrixIndex * 16 + 0);
-		GLES20.glVertexAttrib4fv(a_model + 1, matrix, matrixIndex * 16 + 4);
-		GLES20.glVertexAttrib4fv(a_model + 2, matrix, matrixIndex * 16 + 8);
-		GLES20.glVertexAttrib4fv(a_model + 3, matrix, matrixIndex * 16 + 12);
+		if (!instancing) {
+			GLState.disableAttribArray(ShaderLib.LOC_INSTANCE);
+
+			if (a_model >= 0) {
+				GLState.disableAttribArray(a_model);
+				GLState.disableAttribArray(a_model + 1);
+				GLState.disableAttribArray(a_model + 2);
+				GLState.disableAttribArray(a_model + 3);
+			}
+
+			GL.get().glVertexAttrib4fv(a_model + 0, matrix, matrixIndex * 16 + 0);
+			GL.get().glVertexAttrib4fv(a_model + 1, matrix, matrixIndex * 16 + 4);
+			GL.get().glVertexAttrib4fv(a_model + 2, matrix, matrixIndex * 16 + 8);
+			GL.get().glVertexAttrib4fv(a_model + 3, matrix, matrixIndex * 16 + 12);
+		}
 
 		outPos = vboOffset;
 
 		return primitive.count * stride * 4;
 	}
 
+	/**
+	 * Called by the renderer to attach the vertex attributes for a batch of
+	 * instances of a {@link StaticMesh}, using this Material's instanced
+	 * program. The model matrices are passed to the program's
+	 * <code>u_models</code> uniform by the renderer, and each vertex's index
+	 * into that array is read from the <code>a_instance</code> attribute.
+	 * 
+	 * @param primitive
+	 *            The Metadata about the primitive to load
+	 * @param idOffset
+	 *            The byte offset into the VBO where the instance ids are
+	 *            stored
+	 * @throws IllegalStateException
+	 *             If this Material does not have an instanced program.
+	 */
+	public final void attachInstancedAttribs(Metadata primitive, int idOffset) {
+		if (instancedProgramName == null) {
+			throw new IllegalStateException(
+					"This Material does not support instancing.");
+		}
+		instancing = true;
+		try {
+			attachAttribs(primitive, 0, null, 0);
+		} finally {
+			instancing = false;
+		}
+		GLState.enableAttribArray(ShaderLib.LOC_INSTANCE);
+		GL.get().glVertexAttribPointer(ShaderLib.LOC_INSTANCE, 1,
+				GLES20.GL_FLOAT, false, 0, idOffset);
+		GameRenderer.logError("VertexAttribPointer(a_instance)");
+	}
+
 	/**
 	 * @return The OpenGL geometry type. Usually {@link GLES20#GL_TRIANGLES}
 	 */
@@ -135,48 +226,101 @@ public abstract class Material {
 	}
 
 	/**
-	 * Called by the Engine thread to load a GameObject's data to the VBO array.
+	 * @return The name of the program that this Material uses to draw several
+	 *         instances at once, or null if it cannot.
+	 */
+	public final String getInstancedProgramName() {
+		return instancedProgramName;
+	}
+
+	/**
+	 * Called by the Engine thread when sorting primitives.
+	 * 
+	 * @return A small number that is the same for all Materials that use the
+	 *         same program.
+	 */
+	public final int getProgramSortId() {
+		if (programSortId == -1) {
+			synchronized (programSortIds) {
+				Integer id = programSortIds.get(programName);
+				if (id == null) {
+					id = programSortIds.size() + 1;
+					programSortIds.put(programName, id);
+				}
+				programSortId = id;
+			}
+		}
+		return programSortId;
+	}
+
+	/**
+	 * Called by the Engine thread when sorting primitives. Materials that bind
+	 * a texture should override this so that primitives using the same
+	 * texture are drawn together.
+	 * 
+	 * @return The sort id of the texture that this Material binds, or 0.
+	 */
+	public int getTextureSortId() {
+		return 0;
+	}
+
+	/**
+	 * @return true if primitives using this Material must be drawn after
+	 *         opaque primitives, from back to front.
+	 */
+	public boolean isTranslucent() {
+		return false;
+	}
+
+	/**
+	 * Called by the Engine to load a GameObject's data to the VBO. If the
+	 * Engine has a {@link com.supermercerbros.gameengine.engine.WorkerPool},
+	 * this is called on several threads at once, for different GameObjects
+	 * and disjoint ranges of the VBO, so implementations must not change the
+	 * state of the Material, and must only write to <code>vbo</code> with
+	 * absolute puts in the object's range.
 	 * 
 	 * @param obj
 	 *            The GameObject to load
 	 * @param vbo
-	 *            The vertex buffer array
+	 *            The vertex buffer, which is uploaded to OpenGL as-is
 	 * @param offset
-	 *            The offset into vbo to load the data at
+	 *            The offset into vbo, in floats, to load the data at
 	 * @return The size of the object's data in the vbo (
 	 *         <code>obj.info.count * stride</code>)
 	 */
-	public abstract int loadObjectToVBO(GameObject obj, int[] vbo, int offset);
+	public abstract int loadObjectToVBO(GameObject obj, FloatBuffer vbo,
+			int offset);
 
 	/**
+	 * Interleaves one vertex attribute into the VBO. This does not change the
+	 * position of <code>vbo</code>. Call this once for each attribute, in
+	 * order, passing the offset returned by the previous call (starting with
+	 * the offset given to
+	 * {@link #loadObjectToVBO(GameObject, FloatBuffer, int)}).
+	 * 
 	 * @param data
 	 *            The array of vertex data to load (such as obj.verts)
 	 * @param vbo
-	 *            The vertex buffer array to load to
-	 * @param vboOffset
-	 *            The offset into vbo to load the data at
+	 *            The vertex buffer to load to
+	 * @param offset
+	 *            The offset into vbo, in floats, of the attribute's value
+	 *            for the first vertex
 	 * @param size
 	 *            The number of values for each vertex
 	 * @param count
 	 *            The number of vertices represented
+	 * @return The offset of the next attribute (<code>offset + size</code>)
 	 */
-	protected final void loadArrayToVbo(float[] data, int[] vbo,
-			int size, int count) {
+	protected final int loadArrayToVbo(float[] data, FloatBuffer vbo,
+			int offset, int size, int count) {
 		for (int i = 0; i < count; i++) {
+			final int pos = offset + i * stride;
 			for (int j = 0; j < size; j++) {
-				vbo[inPos + i * stride + j] = Float
-						.floatToRawIntBits(data[i * size + j]);
+				vbo.put(pos + j, data[i * size + j]);
 			}
 		}
-		inPos += size;
-	}
-
-	/**
-	 * Call from {@link #loadObjectToVBO(GameObject, int[], int)} before calling
-	 * {@link #loadArrayToVbo(float[], int[], int, int, int)}
-	 */
-	protected final void setLoadOffset(int vboOffset) {
-		inPos = vboOffset;
+		return offset + size;
 	}
 
 	/**
@@ -188,13 +332,12 @@ public abstract class Material {
 	 *            The size of the attribute.
 	 */
 	protected final void attachAttrib(int attrib, int size) {
-		GLES2.glGetError();
 		final int byteStride = 4 * stride;
-		GLES2.glEnableVertexAttribArray(attrib);
-		GameRenderer.logError("EnableVertexAttribArray(" + attrib + ")");
-		GLES2.glVertexAttribPointer(attrib, size, GLES20.GL_FLOAT, false,
+		GLState.enableAttribArray(attrib);
+		GameRenderer.logError("EnableVertexAttribArray");
+		GL.get().glVertexAttribPointer(attrib, size, GLES20.GL_FLOAT, false,
 				byteStride, outPos);
-		GameRenderer.logError("VertexAttribPointer(" + attrib + ")");
+		GameRenderer.logError("VertexAttribPointer");
 		outPos += size * 4;
 	}
 
@@ -215,24 +358,24 @@ public abstract class Material {
 			throw new IllegalArgumentException(
 					"Cannot attach more than 4 values.");
 
-		GLES2.glDisableVertexAttribArray(attrib);
-		GameRenderer.logError("DisableVertexAttribArray(" + attrib + ")");
+		GLState.disableAttribArray(attrib);
+		GameRenderer.logError("DisableVertexAttribArray");
 		switch (value.length) {
 		case 1:
-			GLES2.glVertexAttrib1fv(attrib, value, 0);
-			GameRenderer.logError("VertexAttrib1fv(" + attrib + ")");
+			GL.get().glVertexAttrib1fv(attrib, value, 0);
+			GameRenderer.logError("VertexAttrib1fv");
 			break;
 		case 2:
-			GLES2.glVertexAttrib2fv(attrib, value, 0);
-			GameRenderer.logError("VertexAttrib2fv(" + attrib + ")");
+			GL.get().glVertexAttrib2fv(attrib, value, 0);
+			GameRenderer.logError("VertexAttrib2fv");
 			break;
 		case 3:
-			GLES2.glVertexAttrib3fv(attrib, value, 0);
-			GameRenderer.logError("VertexAttrib3fv(" + attrib + ")");
+			GL.get().glVertexAttrib3fv(attrib, value, 0);
+			GameRenderer.logError("VertexAttrib3fv");
 			break;
 		case 4:
-			GLES2.glVertexAttrib4fv(attrib, value, 0);
-			GameRenderer.logError("VertexAttrib4fv(" + attrib + ")");
+			GL.get().glVertexAttrib4fv(attrib, value, 0);
+			GameRenderer.logError("VertexAttrib4fv");
 			break;
 		default:
 		}
@@ -31,6 +31,11 @@ public class Metadata {
 	 * The material to render this object with.
 	 */
 	public Material mtl;
+	/**
+	 * The StaticMesh containing the described GameObject's geometry, or null
+	 * if its geometry is streamed through the shared VBO.
+	 */
+	public StaticMesh mesh;
 
 	Metadata() {
 	}
@@ -0,0 +1,207 @@
+package com.supermercerbros.gameengine.objects;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import com.supermercerbros.gameengine.engine.ShaderLib;
+
+/**
+ * Contains the geometry of a {@link GameObject} whose vertex data never
+ * changes. The renderer uploads this to its own VBO and IBO once, instead of
+ * streaming it every frame. All of the instances created by
+ * {@link GameObject#instance(int)} share one StaticMesh.
+ * <p>
+ * If the mesh is shared and its Material has an instanced program, the mesh
+ * is also packed into a second VBO and IBO that hold several copies of it,
+ * each vertex tagged with the number of its copy (see {@link InstancedData}).
+ * The renderer uses these to draw up to that many instances in one draw call,
+ * passing their model matrices in a uniform array.
+ */
+public class StaticMesh {
+	/**
+	 * The data for drawing several instances of a StaticMesh at once. This is
+	 * immutable, so that the Engine thread can publish it while the renderer
+	 * is drawing the mesh.
+	 */
+	public static final class InstancedData {
+		/**
+		 * The vertex data, repeated {@link #batchSize} times, followed by one
+		 * instance id (0 to batchSize - 1) for each of those vertices.
+		 */
+		public final FloatBuffer vertexData;
+		/**
+		 * The index data, repeated {@link #batchSize} times, with each copy
+		 * pointing to its own copy of the vertices.
+		 */
+		public final ShortBuffer indexData;
+		/**
+		 * The byte offset of the instance ids in {@link #vertexData}.
+		 */
+		public final int instanceIdOffset;
+		/**
+		 * The most instances of the mesh that can be drawn in one draw call.
+		 * Always at least 2.
+		 */
+		public final int batchSize;
+
+		InstancedData(FloatBuffer vertexData, ShortBuffer indexData,
+				int instanceIdOffset, int batchSize) {
+			this.vertexData = vertexData;
+			this.indexData = indexData;
+			this.instanceIdOffset = instanceIdOffset;
+			this.batchSize = batchSize;
+		}
+	}
+
+	/**
+	 * The id of this mesh in the sort keys of the Engine's render queue, so
+	 * that instances of it are drawn together, and the number of the frame
+	 * it was given in. Only used by the Engine thread.
+	 */
+	public int queueId, queueFrame = -1;
+	/**
+	 * The interleaved vertex data, as packed by the object's Material. This is
+	 * null until {@link #load(GameObject)} is called.
+	 */
+	public FloatBuffer vertexData;
+	/**
+	 * The index data. This is null until {@link #load(GameObject)} is called.
+	 */
+	public ShortBuffer indexData;
+	/**
+	 * The handle of the VBO containing this mesh, or -1 if it has not been
+	 * uploaded. Only used by the renderer thread.
+	 */
+	public int vbo = -1;
+	/**
+	 * The handle of the IBO containing this mesh, or -1 if it has not been
+	 * uploaded. Only used by the renderer thread.
+	 */
+	public int ibo = -1;
+
+	/**
+	 * The data for drawing several instances of this mesh at once, or null if
+	 * instances are drawn one at a time. The Engine thread may set this while
+	 * the mesh is being drawn, so the renderer should read it once per frame
+	 * (or per batch).
+	 */
+	public volatile InstancedData instanced;
+	/**
+	 * The handles of the VBO and IBO containing the instanced data, or -1 if
+	 * they have not been uploaded. Only used by the renderer thread.
+	 */
+	public int instancedVbo = -1, instancedIbo = -1;
+
+	private boolean loaded = false;
+	private boolean instancedLoaded = false;
+	/**
+	 * True if more than one GameObject uses this mesh.
+	 */
+	private volatile boolean shared = false;
+
+	StaticMesh() {
+	}
+
+	/**
+	 * @return true if the mesh data has been packed.
+	 */
+	public boolean isLoaded() {
+		return loaded && (instancedLoaded || !shared);
+	}
+
+	/**
+	 * Marks this mesh as being used by more than one GameObject, so that it is
+	 * packed for instanced drawing. Called by {@link GameObject#instance(int)}.
+	 */
+	void setShared() {
+		shared = true;
+	}
+
+	/**
+	 * Forgets the GL handles of this mesh. Called by the renderer when the GL
+	 * context has been lost.
+	 */
+	public void clearHandles() {
+		vbo = -1;
+		ibo = -1;
+		instancedVbo = -1;
+		instancedIbo = -1;
+	}
+
+	/**
+	 * Packs the vertex and index data of the given GameObject. This is called
+	 * once, by the Engine thread, before the object is first rendered.
+	 *
+	 * @param obj
+	 *            The GameObject (or any of its instances) to load.
+	 */
+	public void load(GameObject obj) {
+		final Material mtl = obj.info.mtl;
+		if (!loaded) {
+			vertexData = ByteBuffer
+					.allocateDirect(obj.info.count * mtl.getStride() * 4)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			mtl.loadObjectToVBO(obj, vertexData, 0);
+
+			indexData = ByteBuffer.allocateDirect(obj.info.size * 2)
+					.order(ByteOrder.nativeOrder()).asShortBuffer();
+			indexData.put(obj.indices, 0, obj.info.size);
+			indexData.position(0);
+			loaded = true;
+		}
+		if (shared && !instancedLoaded) {
+			if (mtl.getInstancedProgramName() != null) {
+				loadInstanced(obj.info.count, obj.info.size, mtl.getStride());
+			}
+			instancedLoaded = true;
+		}
+	}
+
+	/**
+	 * Packs the instanced data and publishes it in {@link #instanced}. The
+	 * mesh may already have been drawn, so this only reads
+	 * {@link #vertexData} and {@link #indexData} through duplicates and
+	 * absolute gets, leaving their positions alone for the renderer.
+	 */
+	private void loadInstanced(int count, int size, int stride) {
+		if (count == 0) {
+			return;
+		}
+		// Indices are unsigned shorts, so every copy must fit in 65536 verts.
+		final int n = Math.min(ShaderLib.MAX_INSTANCES, 65536 / count);
+		if (n < 2) {
+			return;
+		}
+		final int floats = count * stride;
+
+		final FloatBuffer verts = ByteBuffer
+				.allocateDirect((floats + count) * n * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		final FloatBuffer source = vertexData.duplicate();
+		for (int k = 0; k < n; k++) {
+			source.position(0);
+			verts.put(source);
+		}
+		for (int k = 0; k < n; k++) {
+			for (int i = 0; i < count; i++) {
+				verts.put(k);
+			}
+		}
+		verts.position(0);
+
+		final ShortBuffer inds = ByteBuffer.allocateDirect(size * n * 2)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		for (int k = 0; k < n; k++) {
+			final int base = k * count;
+			for (int i = 0; i < size; i++) {
+				inds.put((short) ((indexData.get(i) & 0xFFFF) + base));
+			}
+		}
+		inds.position(0);
+
+		// Published last, so the renderer sees either none or all of it
+		instanced = new InstancedData(verts, inds, floats * n * 4, n);
+	}
+}
@@ -1,6 +1,7 @@
 package com.supermercerbros.gameengine.objects;
 
 import java.io.IOException;
+import java.nio.FloatBuffer;
 
 import android.opengl.GLES20;
 
@@ -24,7 +25,7 @@ public class TexturedMaterial extends Material {
 	private Texture texture;
 	
 	public TexturedMaterial(String textureName){
-		super("shaded-texture", STRIDE);
+		super("shaded-texture", "shaded-texture-instanced", STRIDE);
 		try {
 			texture = TextureLib.getTexture(textureName);
 		} catch (IOException e) {
@@ -32,6 +33,15 @@ public class TexturedMaterial extends Material {
 		}
 	}
 
+	/**
+	 * @param texture
+	 *            The Texture to draw with.
+	 */
+	public TexturedMaterial(Texture texture) {
+		super("shaded-texture", "shaded-texture-instanced", STRIDE);
+		this.texture = texture;
+	}
+
 	@Override
 	public int attachAttribs(Metadata primitive, int vboOffset, float[] matrix, int matrixOffset) {
 		int response = super.attachAttribs(primitive, vboOffset, matrix, matrixOffset);
@@ -40,25 +50,28 @@ public class TexturedMaterial extends Material {
 		attachAttrib(a_normal, 3);
 		attachAttrib(a_mtl, 2);
 				
-		texture.use(0, ShaderLib.S_BASEMAP, 
-					this.program.getHandle());
+		texture.use(0, ShaderLib.S_BASEMAP, this.program);
 		
 		return response;
 	}
 
+	@Override
+	public int getTextureSortId() {
+		return (texture != null) ? texture.getSortId() : 0;
+	}
+
 	@Override
 	public int getGeometryType() {
 		return GLES20.GL_TRIANGLES;
 	}
 
 	@Override
-	public int loadObjectToVBO(GameObject obj, int[] vbo, int vboOffset) {
+	public int loadObjectToVBO(GameObject obj, FloatBuffer vbo, int vboOffset) {
 		int numOfVerts = obj.verts.length / 3;
 
-		setLoadOffset(vboOffset);
-		loadArrayToVbo(obj.verts, vbo, 3, numOfVerts);
-		loadArrayToVbo(obj.normals, vbo, 3, numOfVerts);
-		loadArrayToVbo(obj.mtl, vbo, 2, numOfVerts);
+		int offset = loadArrayToVbo(obj.verts, vbo, vboOffset, 3, numOfVerts);
+		offset = loadArrayToVbo(obj.normals, vbo, offset, 3, numOfVerts);
+		loadArrayToVbo(obj.mtl, vbo, offset, 2, numOfVerts);
 		
 		return obj.info.count * STRIDE;
 
@@ -10,9 +10,12 @@ import android.content.res.Resources;
 
 import com.supermercerbros.gameengine.animation.Keyframe;
 import com.supermercerbros.gameengine.animation.MeshAnimation;
+import com.supermercerbros.gameengine.debug.Tracer;
 import com.supermercerbros.gameengine.objects.AnimatedMeshObject;
 import com.supermercerbros.gameengine.objects.GameObject;
 import com.supermercerbros.gameengine.objects.Material;
+import com.supermercerbros.gameengine.util.AndroidAssetSource;
+import com.supermercerbros.gameengine.util.AssetSource;
 import com.supermercerbros.gameengine.util.BetterDataInputStream;
 import com.supermercerbros.gameengine.util.Utils;
 
@@ -23,6 +26,7 @@ public class Sch3D {
 	}
 	private static Resources res;
 	private static AssetManager am;
+	private static AssetSource assets;
 
 	/**
 	 * Sets the default Context to use when loading resources and assets.
@@ -33,6 +37,18 @@ public class Sch3D {
 	public static void setContext(Context context) {
 		res = context.getResources();
 		am = context.getAssets();
+		assets = new AndroidAssetSource(am);
+	}
+
+	/**
+	 * Sets the default AssetSource to use when loading assets. Use this
+	 * instead of {@link #setContext(Context)} when running without Android.
+	 * 
+	 * @param source
+	 *            The default AssetSource to use.
+	 */
+	public static void setAssetSource(AssetSource source) {
+		assets = source;
 	}
 
 	/**
@@ -97,10 +113,52 @@ public class Sch3D {
 		}
 	}
 
+	/**
+	 * Parse a GameObject from the given Sch3D file.
+	 * 
+	 * @param source
+	 *            The AssetSource to use, or null if the default (set by
+	 *            {@link #setAssetSource(AssetSource)} or
+	 *            {@link #setContext(Context)}) should be used.
+	 * @param fileName
+	 *            The name of the asset to open. This name can be hierarchical.
+	 * @param mtl
+	 *            The Material to give to this GameObject.
+	 * @return A shiny new GameObject!
+	 * @throws IOException
+	 *             If an error occurs when opening the asset or the file is
+	 *             corrupt.
+	 * @throws IllegalStateException
+	 *             If no AssetSource has been set and none is supplied.
+	 */
+	public static GameObject parse(AssetSource source, String fileName,
+			Material mtl) throws IOException {
+		AssetSource s = (source != null) ? source : Sch3D.assets;
+		if (s == null) {
+			throw new IllegalStateException("AssetSource has not been set.");
+		}
+		InputStream is = s.open(fileName);
+		try {
+			return parseInputStream(is, mtl, "a@" + fileName);
+		} catch (IOException e) {
+			throw new IOException("File is corrupt.", e);
+		} finally {
+			is.close();
+		}
+	}
+
 	private static GameObject parseInputStream(InputStream is, Material mtl, String idStem)
 			throws IOException {
-		BetterDataInputStream data = new BetterDataInputStream(is);
-		
+		final long traceStart = Tracer.begin();
+		try {
+			return parseInputStream(new BetterDataInputStream(is), mtl, idStem);
+		} finally {
+			Tracer.end("Sch3D.parse", traceStart);
+		}
+	}
+
+	private static GameObject parseInputStream(BetterDataInputStream data,
+			Material mtl, String idStem) throws IOException {
 		short version = data.readShort();
 		if (version == 1) {
 			byte flags = data.readByte();
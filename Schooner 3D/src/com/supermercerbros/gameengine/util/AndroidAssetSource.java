@@ -0,0 +1,29 @@
+package com.supermercerbros.gameengine.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.res.AssetManager;
+
+/**
+ * An AssetSource that opens assets with an AssetManager.
+ */
+public class AndroidAssetSource implements AssetSource {
+	private final AssetManager am;
+
+	/**
+	 * @param am
+	 *            The AssetManager to open assets with.
+	 */
+	public AndroidAssetSource(AssetManager am) {
+		if (am == null) {
+			throw new IllegalArgumentException("am == null");
+		}
+		this.am = am;
+	}
+
+	@Override
+	public InputStream open(String name) throws IOException {
+		return am.open(name);
+	}
+}
@@ -0,0 +1,15 @@
+package com.supermercerbros.gameengine.util;
+
+/**
+ * Passes Schooner's log messages to {@link android.util.Log}.
+ */
+class AndroidLogSink implements Log.Sink {
+
+	@Override
+	public void println(int priority, String tag, String msg, Throwable tr) {
+		if (tr != null) {
+			msg = msg + '\n' + android.util.Log.getStackTraceString(tr);
+		}
+		android.util.Log.println(priority, tag, msg);
+	}
+}
@@ -0,0 +1,23 @@
+package com.supermercerbros.gameengine.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens assets by name. On Android, assets come from the app's
+ * {@link android.content.res.AssetManager} (see {@link AndroidAssetSource});
+ * elsewhere they can be read from a directory (see {@link FileAssetSource}).
+ */
+public interface AssetSource {
+	/**
+	 * Opens an asset.
+	 * 
+	 * @param name
+	 *            The name of the asset to open. This name can be hierarchical.
+	 * @return An InputStream of the asset's contents, which the caller must
+	 *         close.
+	 * @throws IOException
+	 *             If the asset cannot be opened.
+	 */
+	public InputStream open(String name) throws IOException;
+}
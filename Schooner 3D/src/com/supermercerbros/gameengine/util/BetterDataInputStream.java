@@ -4,14 +4,11 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import android.util.Log;
-
 /**
  * Subclass of {@link DataInputStream} that adds array-reading functions.
  *
  */
 public class BetterDataInputStream extends DataInputStream {
-	private static final String TAG = "BetterDataInputStream";
 	private byte[] array;
 
 	public BetterDataInputStream(InputStream in) {
@@ -20,38 +17,54 @@ public class BetterDataInputStream extends DataInputStream {
 	}
 
 	/**
-	 * Reads at most <code>length</code> shorts from this stream and stores them
-	 * in the <code>short</code> array <code>out</code> starting at
-	 * <code>offset</code>. Returns the number of shorts that have been read or
-	 * -1 if no shorts have been read and the end of the stream has been
-	 * reached.
+	 * Reads <code>length</code> big-endian shorts from this stream and stores
+	 * them in the <code>short</code> array <code>out</code> starting at
+	 * <code>offset</code>.
 	 * 
 	 * @param out
 	 * @param offset
 	 * @param length
 	 * @return The number of shorts read.
+	 * @throws java.io.EOFException
+	 *             If the stream ends before <code>length</code> shorts have
+	 *             been read.
 	 * @throws IOException
 	 */
 	public int readShortArray(short[] out, int offset, int length)
 			throws IOException {
 		ensureLength(length * 2);
-		int bytesRead = super.read(array, 0, length * 2);
-		Log.d(TAG, "read(array, 0, " + (length * 2) + ") returns " + bytesRead);
-		for (int i = 0; i < bytesRead * 2; i++) {
-			out[offset + i] = (short) (array[i * 2] | (array[i * 2 + 1] << 8));
+		readFully(array, 0, length * 2);
+		for (int i = 0; i < length; i++) {
+			out[offset + i] = (short) ((array[i * 2] << 8) | (array[i * 2 + 1] & 0xff));
 		}
-		return bytesRead / 2;
+		return length;
 	}
 
-	public int readFloatArray(float[] out, int offset, int length) 
-		throws IOException {
-			ensureLength(length * 2);
-			int bytesRead = super.read(array, 0, length * 2);
-			Log.d(TAG, "read(array, 0, " + (length * 2) + ") returns " + bytesRead);
-			for (int i = 0; i < bytesRead * 2; i++) {
-				out[offset + i] = (short) (array[i * 2] | (array[i * 2 + 1] << 8));
-			}
-			return bytesRead / 2;
+	/**
+	 * Reads <code>length</code> big-endian floats from this stream and stores
+	 * them in the <code>float</code> array <code>out</code> starting at
+	 * <code>offset</code>.
+	 * 
+	 * @param out
+	 * @param offset
+	 * @param length
+	 * @return The number of floats read.
+	 * @throws java.io.EOFException
+	 *             If the stream ends before <code>length</code> floats have
+	 *             been read.
+	 * @throws IOException
+	 */
+	public int readFloatArray(float[] out, int offset, int length)
+			throws IOException {
+		ensureLength(length * 4);
+		readFully(array, 0, length * 4);
+		for (int i = 0; i < length; i++) {
+			final int b = i * 4;
+			out[offset + i] = Float.intBitsToFloat((array[b] << 24)
+					| ((array[b + 1] & 0xff) << 16)
+					| ((array[b + 2] & 0xff) << 8) | (array[b + 3] & 0xff));
+		}
+		return length;
 	}
 
 	private void ensureLength(int l) {
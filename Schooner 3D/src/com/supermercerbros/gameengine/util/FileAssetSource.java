@@ -0,0 +1,31 @@
+package com.supermercerbros.gameengine.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An AssetSource that reads assets from a directory, for running without
+ * Android. An asset's name is its path relative to the directory.
+ */
+public class FileAssetSource implements AssetSource {
+	private final File root;
+
+	/**
+	 * @param root
+	 *            The directory containing the assets.
+	 */
+	public FileAssetSource(File root) {
+		if (root == null) {
+			throw new IllegalArgumentException("root == null");
+		}
+		this.root = root;
+	}
+
+	@Override
+	public InputStream open(String name) throws IOException {
+		return new BufferedInputStream(new FileInputStream(new File(root, name)));
+	}
+}
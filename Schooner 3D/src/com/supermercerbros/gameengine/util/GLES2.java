@@ -1,7 +1,6 @@
 package com.supermercerbros.gameengine.util;
 
 import android.opengl.GLES20;
-import android.util.Log;
 
 /**
  * A patched copy of {@link android.opengl.GLES20}. In Android
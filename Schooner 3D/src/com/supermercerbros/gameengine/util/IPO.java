@@ -46,4 +46,32 @@ public class IPO {
 		}
 	}
 
+	/**
+	 * Interpolates between two 4x4 matrices, component by component. This is
+	 * only accurate for matrices that are close together, such as the
+	 * transformations of an object in two consecutive simulation steps.
+	 * 
+	 * @param result
+	 *            The float array to store the interpolated matrix in.
+	 * @param resultOffset
+	 *            The offset into <code>result</code> at which to store the
+	 *            matrix.
+	 * @param start
+	 *            The float array that holds the first matrix.
+	 * @param end
+	 *            The float array that holds the second matrix.
+	 * @param offset
+	 *            The offset into <code>start</code> and <code>end</code> at
+	 *            which the matrices are stored.
+	 * @param framePoint
+	 *            The point to be interpolated to, from 0.0f to 1.0f.
+	 */
+	public static void matrix(float[] result, int resultOffset, float[] start,
+			float[] end, int offset, float framePoint) {
+		for (int i = 0; i < 16; i++) {
+			float a = start[offset + i];
+			result[resultOffset + i] = a + (end[offset + i] - a) * framePoint;
+		}
+	}
+
 }
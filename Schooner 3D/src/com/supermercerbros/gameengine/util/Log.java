@@ -0,0 +1,436 @@
+package com.supermercerbros.gameengine.util;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Schooner's logging facade. Messages are passed to a {@link Sink}: on
+ * Android this is android.util.Log, and on any other JVM the messages are
+ * printed to System.err. This lets the Engine and the objects it simulates
+ * run without Android.
+ * <p>
+ * Messages below {@link #LEVEL} are compiled out. Since building a message
+ * usually costs more than logging it, calls that build their message should
+ * be guarded by the matching constant, so that the whole statement is
+ * removed:
+ * 
+ * <pre>
+ * if (Log.D) {
+ * 	Log.d(TAG, &quot;Loaded &quot; + count + &quot; objects&quot;);
+ * }
+ * </pre>
+ * 
+ * Messages that can be logged every frame should also be limited with a
+ * {@link Limiter} or {@link Sampler}. A {@link RingSink} keeps the most
+ * recent messages in memory, so that they can be dumped after a crash
+ * without being printed as they are logged.
+ */
+public class Log {
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+
+	/**
+	 * The lowest priority that is compiled in. Messages with a lower priority
+	 * are never logged, and the statements guarded by {@link #V}, {@link #D},
+	 * {@link #I} or {@link #W} are removed when this is higher than their
+	 * priority. Raise this to {@link #INFO} or {@link #WARN} for release
+	 * builds.
+	 */
+	public static final int LEVEL = DEBUG;
+	/**
+	 * True if verbose messages are compiled in.
+	 */
+	public static final boolean V = LEVEL <= VERBOSE;
+	/**
+	 * True if debug messages are compiled in.
+	 */
+	public static final boolean D = LEVEL <= DEBUG;
+	/**
+	 * True if info messages are compiled in.
+	 */
+	public static final boolean I = LEVEL <= INFO;
+	/**
+	 * True if warnings are compiled in.
+	 */
+	public static final boolean W = LEVEL <= WARN;
+
+	/**
+	 * Receives log messages.
+	 */
+	public interface Sink {
+		/**
+		 * @param priority
+		 *            One of {@link Log#VERBOSE}, {@link Log#DEBUG},
+		 *            {@link Log#INFO}, {@link Log#WARN} or {@link Log#ERROR}.
+		 * @param tag
+		 *            The tag of the message.
+		 * @param msg
+		 *            The message.
+		 * @param tr
+		 *            An exception to log, or null.
+		 */
+		public void println(int priority, String tag, String msg, Throwable tr);
+	}
+
+	/**
+	 * A Sink that prints messages to a PrintStream.
+	 */
+	public static class StreamSink implements Sink {
+		private static final String LEVELS = "??VDIWE";
+		private final PrintStream out;
+
+		public StreamSink(PrintStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void println(int priority, String tag, String msg, Throwable tr) {
+			synchronized (out) {
+				out.print(LEVELS.charAt(priority));
+				out.print('/');
+				out.print(tag);
+				out.print(": ");
+				out.println(msg);
+				if (tr != null) {
+					tr.printStackTrace(out);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Allows at most a number of messages in each interval of time, and
+	 * counts the messages it stops. Use one Limiter per message (or kind of
+	 * message):
+	 * 
+	 * <pre>
+	 * if (Log.W &amp;&amp; LIMITER.allow()) {
+	 * 	Log.w(TAG, &quot;Frame dropped (&quot; + LIMITER.takeSuppressed()
+	 * 			+ &quot; more not logged)&quot;);
+	 * }
+	 * </pre>
+	 */
+	public static class Limiter {
+		private final int messages;
+		private final long intervalNanos;
+		private long windowStart;
+		private int count = 0;
+		private int suppressed = 0;
+
+		/**
+		 * @param messages
+		 *            The number of messages allowed per interval.
+		 * @param intervalMillis
+		 *            The length of the interval, in milliseconds.
+		 */
+		public Limiter(int messages, long intervalMillis) {
+			if (messages < 1 || intervalMillis < 1) {
+				throw new IllegalArgumentException("Invalid rate: " + messages
+						+ " per " + intervalMillis + " ms");
+			}
+			this.messages = messages;
+			this.intervalNanos = intervalMillis * 1000000;
+			this.windowStart = System.nanoTime() - intervalNanos;
+		}
+
+		/**
+		 * @return true if a message may be logged now.
+		 */
+		public synchronized boolean allow() {
+			final long now = System.nanoTime();
+			if (now - windowStart >= intervalNanos) {
+				windowStart = now;
+				count = 0;
+			}
+			if (count < messages) {
+				count++;
+				return true;
+			}
+			suppressed++;
+			return false;
+		}
+
+		/**
+		 * @return The number of messages stopped since the last call to this
+		 *         method.
+		 */
+		public synchronized int takeSuppressed() {
+			final int n = suppressed;
+			suppressed = 0;
+			return n;
+		}
+	}
+
+	/**
+	 * Allows one in every <code>n</code> messages, starting with the first.
+	 * This is cheaper than a {@link Limiter}, and suits events that happen at
+	 * a steady rate, such as once per frame.
+	 */
+	public static class Sampler {
+		private final int n;
+		private int count = 0;
+
+		/**
+		 * @param n
+		 *            The number of events per message.
+		 */
+		public Sampler(int n) {
+			if (n < 1) {
+				throw new IllegalArgumentException("n < 1");
+			}
+			this.n = n;
+		}
+
+		/**
+		 * Counts an event. Not synchronized: a Sampler shared between threads
+		 * may occasionally allow an extra message or skip one.
+		 * 
+		 * @return true if this event should be logged.
+		 */
+		public boolean sample() {
+			if (count == 0) {
+				count = n - 1;
+				return true;
+			}
+			count--;
+			return false;
+		}
+	}
+
+	/**
+	 * A Sink that keeps the most recent messages in a ring buffer, to be
+	 * dumped when something goes wrong. Storing a message doesn't allocate.
+	 * Messages at or above a given priority can also be passed on to another
+	 * Sink as they are logged.
+	 */
+	public static class RingSink implements Sink {
+		private final int[] priorities;
+		private final String[] tags;
+		private final String[] messages;
+		private final Throwable[] throwables;
+		private final Sink next;
+		private final int forwardPriority;
+		/**
+		 * The number of messages ever stored.
+		 */
+		private long count = 0;
+
+		/**
+		 * Creates a RingSink that only stores messages.
+		 * 
+		 * @param capacity
+		 *            The number of messages to keep.
+		 */
+		public RingSink(int capacity) {
+			this(capacity, null, ERROR + 1);
+		}
+
+		/**
+		 * @param capacity
+		 *            The number of messages to keep.
+		 * @param next
+		 *            The Sink to pass messages on to, or null.
+		 * @param forwardPriority
+		 *            The lowest priority of the messages passed on to
+		 *            <code>next</code>.
+		 */
+		public RingSink(int capacity, Sink next, int forwardPriority) {
+			if (capacity < 1) {
+				throw new IllegalArgumentException("capacity < 1");
+			}
+			priorities = new int[capacity];
+			tags = new String[capacity];
+			messages = new String[capacity];
+			throwables = new Throwable[capacity];
+			this.next = next;
+			this.forwardPriority = forwardPriority;
+		}
+
+		@Override
+		public void println(int priority, String tag, String msg, Throwable tr) {
+			synchronized (this) {
+				final int i = (int) (count % priorities.length);
+				priorities[i] = priority;
+				tags[i] = tag;
+				messages[i] = msg;
+				throwables[i] = tr;
+				count++;
+			}
+			if (next != null && priority >= forwardPriority) {
+				next.println(priority, tag, msg, tr);
+			}
+		}
+
+		/**
+		 * @return The number of messages that are kept.
+		 */
+		public synchronized int size() {
+			return (int) Math.min(count, priorities.length);
+		}
+
+		/**
+		 * Passes the kept messages to <code>out</code>, oldest first. The
+		 * messages are not removed.
+		 */
+		public void dump(Sink out) {
+			final int size;
+			final int[] p;
+			final String[] t, m;
+			final Throwable[] tr;
+			synchronized (this) {
+				size = size();
+				p = new int[size];
+				t = new String[size];
+				m = new String[size];
+				tr = new Throwable[size];
+				for (int j = 0; j < size; j++) {
+					final int i = (int) ((count - size + j) % priorities.length);
+					p[j] = priorities[i];
+					t[j] = tags[i];
+					m[j] = messages[i];
+					tr[j] = throwables[i];
+				}
+			}
+			for (int j = 0; j < size; j++) {
+				out.println(p[j], t[j], m[j], tr[j]);
+			}
+		}
+
+		/**
+		 * Discards the kept messages.
+		 */
+		public synchronized void clear() {
+			count = 0;
+			Arrays.fill(tags, null);
+			Arrays.fill(messages, null);
+			Arrays.fill(throwables, null);
+		}
+
+		/**
+		 * Makes the kept messages be dumped to <code>out</code> when any
+		 * thread (including the Engine) dies of an uncaught exception. The
+		 * previous default handler is then called, so the app still crashes
+		 * as usual.
+		 */
+		public void dumpOnCrash(final Sink out) {
+			final Thread.UncaughtExceptionHandler previous = Thread
+					.getDefaultUncaughtExceptionHandler();
+			Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+				@Override
+				public void uncaughtException(Thread thread, Throwable ex) {
+					out.println(ERROR, TAG, "Last " + size()
+							+ " log messages before " + thread.getName()
+							+ " crashed:", null);
+					dump(out);
+					if (previous != null) {
+						previous.uncaughtException(thread, ex);
+					} else {
+						out.println(ERROR, TAG, "Uncaught exception in "
+								+ thread.getName(), ex);
+					}
+				}
+			});
+		}
+	}
+
+	private static final String TAG = "Log";
+	private static volatile Sink sink = createDefaultSink();
+	/**
+	 * The lowest priority that is logged, which may be raised at runtime.
+	 */
+	private static volatile int priority = LEVEL;
+
+	private Log() {
+	} // This class should never be instantiated
+
+	private static Sink createDefaultSink() {
+		final String vm = System.getProperty("java.vm.name");
+		if (vm != null && vm.startsWith("Dalvik")) {
+			return new AndroidLogSink();
+		}
+		return new StreamSink(System.err);
+	}
+
+	/**
+	 * Sets the Sink that log messages are passed to.
+	 * 
+	 * @param sink
+	 *            The new Sink.
+	 */
+	public static void setSink(Sink sink) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink == null");
+		}
+		Log.sink = sink;
+	}
+
+	/**
+	 * @return The current Sink.
+	 */
+	public static Sink getSink() {
+		return sink;
+	}
+
+	/**
+	 * Sets the lowest priority of messages that are logged. This cannot go
+	 * below {@link #LEVEL}.
+	 * 
+	 * @param priority
+	 *            One of {@link #VERBOSE}, {@link #DEBUG}, {@link #INFO},
+	 *            {@link #WARN} or {@link #ERROR}.
+	 */
+	public static void setLevel(int priority) {
+		if (priority < VERBOSE || priority > ERROR) {
+			throw new IllegalArgumentException("Invalid priority: " + priority);
+		}
+		Log.priority = Math.max(priority, LEVEL);
+	}
+
+	/**
+	 * @return true if messages of the given priority are currently logged.
+	 */
+	public static boolean isLoggable(int priority) {
+		return priority >= LEVEL && priority >= Log.priority;
+	}
+
+	public static void v(String tag, String msg) {
+		if (V && VERBOSE >= priority) {
+			sink.println(VERBOSE, tag, msg, null);
+		}
+	}
+
+	public static void d(String tag, String msg) {
+		if (D && DEBUG >= priority) {
+			sink.println(DEBUG, tag, msg, null);
+		}
+	}
+
+	public static void i(String tag, String msg) {
+		if (I && INFO >= priority) {
+			sink.println(INFO, tag, msg, null);
+		}
+	}
+
+	public static void w(String tag, String msg) {
+		if (W && WARN >= priority) {
+			sink.println(WARN, tag, msg, null);
+		}
+	}
+
+	public static void w(String tag, String msg, Throwable tr) {
+		if (W && WARN >= priority) {
+			sink.println(WARN, tag, msg, tr);
+		}
+	}
+
+	public static void e(String tag, String msg) {
+		sink.println(ERROR, tag, msg, null);
+	}
+
+	public static void e(String tag, String msg, Throwable tr) {
+		sink.println(ERROR, tag, msg, tr);
+	}
+}
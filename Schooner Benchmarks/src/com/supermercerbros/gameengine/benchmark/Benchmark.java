@@ -0,0 +1,74 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single benchmark, run by {@link BenchmarkRunner}. Subclasses declare the
+ * parameters they accept with {@link #param(String, String...)} in their
+ * constructors, build their data in {@link #setUp(Params)}, and perform one
+ * operation per call of {@link #run()}.
+ */
+public abstract class Benchmark {
+	private final String name;
+	private final LinkedHashMap<String, String[]> params = new LinkedHashMap<String, String[]>();
+
+	/**
+	 * @param name
+	 *            The name of this benchmark, which is used to select it on
+	 *            the command line and to identify its results.
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Declares a parameter of this benchmark. The runner runs this benchmark
+	 * once for every combination of parameter values.
+	 *
+	 * @param key
+	 *            The name of the parameter.
+	 * @param defaults
+	 *            The values to run with, unless overridden on the command
+	 *            line.
+	 */
+	protected final void param(String key, String... defaults) {
+		params.put(key, defaults);
+	}
+
+	public final String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The parameters of this benchmark, mapped to their default
+	 *         values, in the order they were declared.
+	 */
+	public final Map<String, String[]> getParams() {
+		return params;
+	}
+
+	/**
+	 * Prepares this benchmark to run with the given parameters. This is not
+	 * timed.
+	 *
+	 * @param p
+	 *            The parameter values to use.
+	 */
+	public abstract void setUp(Params p) throws Exception;
+
+	/**
+	 * Performs one operation. This is timed.
+	 *
+	 * @return A value derived from the work that was done, which the runner
+	 *         consumes so that the JIT cannot eliminate the work.
+	 */
+	public abstract int run() throws Exception;
+
+	/**
+	 * Releases anything acquired by {@link #setUp(Params)}. This is not timed.
+	 * The default implementation does nothing.
+	 */
+	public void tearDown() throws Exception {
+	}
+}
@@ -0,0 +1,352 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.supermercerbros.gameengine.util.Log;
+
+/**
+ * Runs the engine benchmarks on a desktop JVM and prints the time per
+ * operation of each one.
+ * <p>
+ * Each benchmark is run once for every combination of its parameter values.
+ * A run consists of a number of untimed warmup iterations, to let the JIT
+ * compile the code under test, followed by timed measurement iterations.
+ * Each iteration calls the benchmark repeatedly for a fixed amount of time.
+ * All test data is generated from fixed seeds, so runs with the same options
+ * on the same machine are comparable.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * BenchmarkRunner [options] [regex...]
+ *   -wi N          warmup iterations (default 5)
+ *   -i N           measurement iterations (default 10)
+ *   -t MILLIS      length of each iteration (default 500)
+ *   -p key=v1,v2   override the values of a parameter
+ *   -o FILE        also write the results as CSV
+ *   -b FILE        compare with the results in a CSV written by -o
+ *   -log           keep engine logging (discarded by default)
+ *   -l             list the benchmarks and their parameters
+ * </pre>
+ *
+ * Only the benchmarks whose names match one of the regular expressions are
+ * run; if none are given, all of them are.
+ */
+public class BenchmarkRunner {
+	private static final String CSV_HEADER = "benchmark,params,mean_ns,stddev_ns,min_ns,iterations";
+
+	/**
+	 * The result of one benchmark with one set of parameters.
+	 */
+	static class Result {
+		final String benchmark;
+		final String params;
+		final double mean, stddev, min;
+		final int iterations;
+
+		Result(String benchmark, String params, double mean, double stddev,
+				double min, int iterations) {
+			this.benchmark = benchmark;
+			this.params = params;
+			this.mean = mean;
+			this.stddev = stddev;
+			this.min = min;
+			this.iterations = iterations;
+		}
+
+		String key() {
+			return benchmark + " " + params;
+		}
+	}
+
+	/**
+	 * Accumulates the values returned by benchmarks, so that the JIT cannot
+	 * eliminate the work that produced them.
+	 */
+	static volatile int sink;
+
+	private int warmups = 5;
+	private int iterations = 10;
+	private long iterationMillis = 500;
+	private final HashMap<String, String[]> overrides = new HashMap<String, String[]>();
+	private final ArrayList<Pattern> filters = new ArrayList<Pattern>();
+
+	/**
+	 * @return A new instance of every benchmark.
+	 */
+	static List<Benchmark> createBenchmarks() {
+		ArrayList<Benchmark> list = new ArrayList<Benchmark>();
+		list.add(new EngineFrameBenchmark());
+		list.add(new ObjectChurnBenchmark());
+		list.add(new LoadToVboBenchmark());
+		list.add(new NormalsBenchmark());
+		list.add(new IpoMeshBenchmark());
+		list.add(new MeshAnimationBenchmark());
+		list.add(new Sch3DParseBenchmark());
+		list.add(new DataPipeBenchmark());
+		return list;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		String outFile = null, baselineFile = null;
+		boolean log = false, list = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-wi".equals(arg)) {
+				runner.warmups = Integer.parseInt(args[++i]);
+			} else if ("-i".equals(arg)) {
+				runner.iterations = Integer.parseInt(args[++i]);
+			} else if ("-t".equals(arg)) {
+				runner.iterationMillis = Long.parseLong(args[++i]);
+			} else if ("-p".equals(arg)) {
+				String[] kv = args[++i].split("=", 2);
+				if (kv.length != 2) {
+					throw new IllegalArgumentException("Expected key=values: "
+							+ args[i]);
+				}
+				runner.overrides.put(kv[0], kv[1].split(","));
+			} else if ("-o".equals(arg)) {
+				outFile = args[++i];
+			} else if ("-b".equals(arg)) {
+				baselineFile = args[++i];
+			} else if ("-log".equals(arg)) {
+				log = true;
+			} else if ("-l".equals(arg)) {
+				list = true;
+			} else if (arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			} else {
+				runner.filters.add(Pattern.compile(arg));
+			}
+		}
+		if (runner.iterations < 1 || runner.warmups < 0
+				|| runner.iterationMillis < 1) {
+			throw new IllegalArgumentException("Invalid iteration options.");
+		}
+
+		if (!log) {
+			Log.setSink(new Log.Sink() {
+				@Override
+				public void println(int priority, String tag, String msg,
+						Throwable tr) {
+				}
+			});
+		}
+
+		if (list) {
+			for (Benchmark b : createBenchmarks()) {
+				System.out.println(b.getName() + " " + describe(b.getParams()));
+			}
+			return;
+		}
+
+		Map<String, Result> baseline = (baselineFile != null) ? readCsv(baselineFile)
+				: null;
+		List<Result> results = runner.runAll(baseline);
+		if (outFile != null) {
+			writeCsv(outFile, results);
+		}
+	}
+
+	/**
+	 * Runs every selected benchmark with every combination of its parameters,
+	 * printing each result as it is measured.
+	 *
+	 * @param baseline
+	 *            Previous results to compare with, or null.
+	 * @return The results.
+	 */
+	List<Result> runAll(Map<String, Result> baseline) throws Exception {
+		System.out.println("# " + System.getProperty("java.vm.name") + " "
+				+ System.getProperty("java.version") + ", " + warmups
+				+ " warmup + " + iterations + " iterations of "
+				+ iterationMillis + " ms");
+		ArrayList<Result> results = new ArrayList<Result>();
+		for (Benchmark b : createBenchmarks()) {
+			if (!isSelected(b.getName())) {
+				continue;
+			}
+			for (Params p : expand(b.getParams())) {
+				Result r = run(b, p);
+				results.add(r);
+				System.out.println(format(r, (baseline != null) ? baseline
+						.get(r.key()) : null));
+			}
+		}
+		return results;
+	}
+
+	private boolean isSelected(String name) {
+		if (filters.isEmpty()) {
+			return true;
+		}
+		for (Pattern filter : filters) {
+			if (filter.matcher(name).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns every combination of the values of the given parameters, with
+	 * command-line overrides applied.
+	 */
+	private List<Params> expand(Map<String, String[]> params) {
+		ArrayList<LinkedHashMap<String, String>> combos = new ArrayList<LinkedHashMap<String, String>>();
+		combos.add(new LinkedHashMap<String, String>());
+		for (Map.Entry<String, String[]> e : params.entrySet()) {
+			String[] values = overrides.containsKey(e.getKey()) ? overrides
+					.get(e.getKey()) : e.getValue();
+			ArrayList<LinkedHashMap<String, String>> next = new ArrayList<LinkedHashMap<String, String>>();
+			for (LinkedHashMap<String, String> combo : combos) {
+				for (String value : values) {
+					LinkedHashMap<String, String> c = new LinkedHashMap<String, String>(
+							combo);
+					c.put(e.getKey(), value);
+					next.add(c);
+				}
+			}
+			combos = next;
+		}
+		ArrayList<Params> list = new ArrayList<Params>(combos.size());
+		for (LinkedHashMap<String, String> combo : combos) {
+			list.add(new Params(combo));
+		}
+		return list;
+	}
+
+	private Result run(Benchmark b, Params p) throws Exception {
+		b.setUp(p);
+		try {
+			for (int i = 0; i < warmups; i++) {
+				iteration(b);
+			}
+			double[] times = new double[iterations];
+			for (int i = 0; i < iterations; i++) {
+				times[i] = iteration(b);
+			}
+			double sum = 0, min = Double.MAX_VALUE;
+			for (double t : times) {
+				sum += t;
+				min = Math.min(min, t);
+			}
+			final double mean = sum / iterations;
+			double var = 0;
+			for (double t : times) {
+				var += (t - mean) * (t - mean);
+			}
+			final double stddev = (iterations > 1) ? Math.sqrt(var
+					/ (iterations - 1)) : 0;
+			return new Result(b.getName(), p.toString(), mean, stddev, min,
+					iterations);
+		} finally {
+			b.tearDown();
+		}
+	}
+
+	/**
+	 * Runs the benchmark for about <code>iterationMillis</code> and returns
+	 * the mean time per operation, in nanoseconds.
+	 */
+	private double iteration(Benchmark b) throws Exception {
+		final long length = iterationMillis * 1000000;
+		final long start = System.nanoTime();
+		long ops = 0, elapsed;
+		int batch = 1, acc = 0;
+		do {
+			for (int i = 0; i < batch; i++) {
+				acc += b.run();
+			}
+			ops += batch;
+			elapsed = System.nanoTime() - start;
+			// Grow the batch so that the clock is read rarely.
+			if (elapsed < length / 100 && batch < (1 << 20)) {
+				batch <<= 1;
+			}
+		} while (elapsed < length);
+		sink += acc;
+		return (double) elapsed / ops;
+	}
+
+	private static String describe(Map<String, String[]> params) {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String[]> e : params.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(e.getKey()).append('=');
+			String[] values = e.getValue();
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				sb.append(values[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String format(Result r, Result base) {
+		String line = String.format(Locale.US,
+				"%-20s %-40s %14.1f +- %10.1f ns/op (min %.1f)", r.benchmark,
+				r.params, r.mean, r.stddev, r.min);
+		if (base != null) {
+			line += String.format(Locale.US, "  %+6.1f%% vs baseline",
+					(r.mean - base.mean) / base.mean * 100);
+		}
+		return line;
+	}
+
+	static void writeCsv(String fileName, List<Result> results)
+			throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(fileName));
+		try {
+			out.println(CSV_HEADER);
+			for (Result r : results) {
+				out.println(String.format(Locale.US, "%s,%s,%.3f,%.3f,%.3f,%d",
+						r.benchmark, r.params, r.mean, r.stddev, r.min,
+						r.iterations));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	static Map<String, Result> readCsv(String fileName) throws IOException {
+		HashMap<String, Result> results = new HashMap<String, Result>();
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		try {
+			String line = in.readLine();
+			if (!CSV_HEADER.equals(line)) {
+				throw new IOException(fileName + " is not a benchmark CSV file.");
+			}
+			while ((line = in.readLine()) != null) {
+				String[] f = line.split(",");
+				if (f.length != 6) {
+					throw new IOException("Malformed line in " + fileName
+							+ ": " + line);
+				}
+				Result r = new Result(f[0], f[1], Double.parseDouble(f[2]),
+						Double.parseDouble(f[3]), Double.parseDouble(f[4]),
+						Integer.parseInt(f[5]));
+				results.put(r.key(), r);
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,63 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import com.supermercerbros.gameengine.engine.Camera;
+import com.supermercerbros.gameengine.engine.DataPipe;
+import com.supermercerbros.gameengine.engine.Engine;
+import com.supermercerbros.gameengine.engine.HeadlessRenderer;
+import com.supermercerbros.gameengine.engine.RenderData;
+
+/**
+ * Measures passing an empty frame from the Engine to the renderer through a
+ * {@link DataPipe}. In "same" mode the frame is retrieved on the same thread;
+ * in "threaded" mode a {@link HeadlessRenderer} retrieves frames concurrently,
+ * as the GL thread would.
+ */
+public class DataPipeBenchmark extends Benchmark {
+	private DataPipe pipe;
+	private Engine engine;
+	private HeadlessRenderer renderer;
+	private boolean threaded;
+	private long time;
+
+	public DataPipeBenchmark() {
+		super("datapipe.handoff");
+		param("mode", "same", "threaded");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		threaded = "threaded".equals(p.get("mode"));
+		if (!threaded && !"same".equals(p.get("mode"))) {
+			throw new IllegalArgumentException("Unknown mode: " + p.get("mode"));
+		}
+		Camera cam = new Camera();
+		cam.set(0, 0, 10, 0, 0, 0, 0, 1, 0);
+		pipe = new DataPipe();
+		engine = new Engine(pipe, cam);
+		if (threaded) {
+			renderer = new HeadlessRenderer(pipe);
+			renderer.start();
+		}
+		time = 0;
+	}
+
+	@Override
+	public int run() {
+		engine.runFrame(++time);
+		if (!threaded) {
+			RenderData data = pipe.retrieveData();
+			return (int) data.sequence;
+		}
+		return (int) time;
+	}
+
+	@Override
+	public void tearDown() throws InterruptedException {
+		if (renderer != null) {
+			renderer.end();
+			renderer.join();
+			renderer = null;
+		}
+		pipe.close();
+	}
+}
@@ -0,0 +1,78 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.Random;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.engine.Camera;
+import com.supermercerbros.gameengine.engine.DataPipe;
+import com.supermercerbros.gameengine.engine.Engine;
+import com.supermercerbros.gameengine.engine.RenderData;
+import com.supermercerbros.gameengine.objects.Material;
+
+/**
+ * Measures one Engine frame: ticking every object and packing the frame into
+ * the DataPipe (see {@link Engine#runFrame(long)}). Static objects are only
+ * packed once, so with "static" objects this measures the per-object
+ * overhead of <code>updatePipe()</code>; with "animated" objects every
+ * object's vertices are interpolated, get new normals, and are repacked into
+ * the VBO every frame.
+ */
+public class EngineFrameBenchmark extends Benchmark {
+	private static final long FRAME_MILLIS = 16;
+	private static final long ANIMATION_MILLIS = 1000;
+
+	private DataPipe pipe;
+	private Engine engine;
+	private long time;
+
+	public EngineFrameBenchmark() {
+		super("engine.frame");
+		param("objects", "10", "100", "500");
+		param("verts", "64", "1024");
+		param("materials", "basic", "textured", "mixed");
+		param("kind", "static", "animated");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		final int objects = p.getInt("objects");
+		final int side = Meshes.side(p.getInt("verts"));
+		final int verts = side * side;
+		final boolean animated = "animated".equals(p.get("kind"));
+		if (!animated && !"static".equals(p.get("kind"))) {
+			throw new IllegalArgumentException("Unknown kind: " + p.get("kind"));
+		}
+		Schooner3D.maxObjects = objects;
+		Schooner3D.vboSize = objects * verts * 8 * 4;
+		Schooner3D.iboSize = objects * (side - 1) * (side - 1) * 6 * 2;
+
+		Camera cam = new Camera();
+		cam.set(0, 0, 10, 0, 0, 0, 0, 1, 0);
+		pipe = new DataPipe();
+		engine = new Engine(pipe, cam);
+		Random random = new Random(objects);
+		for (int i = 0; i < objects; i++) {
+			Material mtl = Meshes.material(p.get("materials"), i);
+			if (animated) {
+				engine.addObject(Meshes.animated(verts, 2, ANIMATION_MILLIS,
+						mtl, random));
+			} else {
+				engine.addObject(Meshes.object(verts, mtl, random));
+			}
+		}
+		time = 0;
+	}
+
+	@Override
+	public int run() {
+		time += FRAME_MILLIS;
+		engine.runFrame(time);
+		RenderData data = pipe.retrieveData();
+		return data.vboUsed;
+	}
+
+	@Override
+	public void tearDown() {
+		pipe.close();
+	}
+}
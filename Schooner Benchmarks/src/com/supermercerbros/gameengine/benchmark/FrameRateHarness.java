@@ -0,0 +1,581 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.supermercerbros.gameengine.debug.FrameProfiler;
+import com.supermercerbros.gameengine.debug.Tracer;
+import com.supermercerbros.gameengine.engine.Camera;
+import com.supermercerbros.gameengine.engine.DataPipe;
+import com.supermercerbros.gameengine.engine.Engine;
+import com.supermercerbros.gameengine.engine.GameRenderer;
+import com.supermercerbros.gameengine.engine.HeadlessRenderer;
+import com.supermercerbros.gameengine.engine.ShaderLib;
+import com.supermercerbros.gameengine.engine.WorkerPool;
+import com.supermercerbros.gameengine.gl.GL;
+import com.supermercerbros.gameengine.gl.NullGL;
+import com.supermercerbros.gameengine.objects.Material;
+import com.supermercerbros.gameengine.util.Log;
+
+/**
+ * Drives the Engine, DataPipe and a stand-in renderer headlessly over a
+ * generated scene, and reports how fast frames are produced. This answers
+ * capacity questions like "how many animated vertices can the Engine handle
+ * at 60 fps on this CPU?".
+ * <p>
+ * By default, frames are run synchronously on the calling thread with
+ * {@link Engine#runFrame(long)}, on a simulated clock that advances 16 ms per
+ * frame, and each frame is retrieved from the DataPipe as the renderer
+ * would. This gives exact per-frame times. With <code>-threaded</code>, the
+ * Engine runs on its own thread against a {@link HeadlessRenderer} in real
+ * time, exactly as it would on a device, and only throughput is reported.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * FrameRateHarness [options]
+ *   -static N        static objects (default 100)
+ *   -animated N      animated objects (default 0)
+ *   -keyframes N     keyframes per animation (default 2)
+ *   -verts N         vertices per object (default 64)
+ *   -materials MIX   basic, textured or mixed (default basic)
+ *   -seed N          scene seed (default 1)
+ *   -frames N        measured frames (default 600)
+ *   -warmup N        unmeasured frames run first (default 300, or 5000
+ *                    with -checkalloc)
+ *   -threaded        run the Engine on its own thread for -frames frames
+ *   -workers N       update objects in parallel on N worker threads, plus
+ *                    the Engine thread (default 0: no parallel update)
+ *   -capacity FPS    find the most animated objects (or static objects, if
+ *                    -animated is 0) whose p99 frame time fits in 1/FPS
+ *   -profile         also print the time spent in each phase of the
+ *                    Engine's frames (see {@link FrameProfiler})
+ *   -trace FILE      write a Chrome trace of the measured frames (see
+ *                    {@link Tracer})
+ *   -log             keep engine logging (discarded by default)
+ *   -checkalloc      measure the allocation of each frame (on the calling
+ *                    thread and the workers), and exit with status 1 if
+ *                    any measured frame allocates
+ * </pre>
+ * <p>
+ * Once warmed up, the Engine and the renderer should not allocate at all,
+ * since garbage collection pauses on Android show up as dropped frames.
+ * <code>-checkalloc</code> checks this by measuring each frame on its own
+ * (which needs synchronous frames and a VM that can count a thread's
+ * allocations), and fails if any of them allocated. Each frame is drawn by a
+ * {@link GameRenderer} on a {@link NullGL}, so that the renderer is measured
+ * too; this needs <code>android.jar</code> on the classpath, for the
+ * interfaces that GameRenderer implements.
+ */
+public class FrameRateHarness {
+	/**
+	 * The simulated time between frames, in milliseconds.
+	 */
+	private static final long FRAME_MILLIS = 16;
+	/**
+	 * The default warmup with -checkalloc, which is long enough for the JIT
+	 * to finish compiling the frame loop. Until then, frames can appear to
+	 * allocate while compiled code is being replaced.
+	 */
+	private static final int CHECK_ALLOC_WARMUP = 5000;
+	private static final ThreadMXBean THREADS = ManagementFactory
+			.getThreadMXBean();
+	/**
+	 * The WorkerPool given to each Engine, or null.
+	 */
+	private static WorkerPool workers;
+	/**
+	 * The most objects that {@link #findCapacity} will try.
+	 */
+	private static final int MAX_OBJECTS = 1 << 14;
+
+	/**
+	 * The results of one run.
+	 */
+	static class Report {
+		String scene;
+		int frames;
+		/**
+		 * The Engine's profiler, or null if not profiled.
+		 */
+		FrameProfiler profiler;
+		long totalNanos;
+		/**
+		 * Sorted frame times, or null if not measured.
+		 */
+		long[] frameNanos;
+		/**
+		 * Bytes allocated by the Engine per frame, or -1 if unknown.
+		 */
+		double allocatedPerFrame = -1;
+		/**
+		 * The number of measured frames that allocated, or -1 if frames
+		 * were not checked individually.
+		 */
+		int allocatingFrames = -1;
+		/**
+		 * The most bytes allocated by one frame, if frames were checked.
+		 */
+		long maxFrameAllocation;
+		long droppedFrames = -1;
+		int animatedVerts;
+
+		double fps() {
+			return frames * 1e9 / totalNanos;
+		}
+
+		/**
+		 * @return The frame time at the given percentile, in nanoseconds.
+		 */
+		long percentile(double p) {
+			int i = (int) Math.ceil(p / 100.0 * frameNanos.length) - 1;
+			return frameNanos[Math.max(0, Math.min(i, frameNanos.length - 1))];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(scene).append('\n');
+			sb.append(String.format(Locale.US,
+					"  %d frames in %.3f s: %.1f fps, %d animated verts%n",
+					frames, totalNanos / 1e9, fps(), animatedVerts));
+			if (frameNanos != null) {
+				sb.append(String.format(Locale.US,
+						"  frame time ms: p50 %.3f  p90 %.3f  p99 %.3f  max %.3f%n",
+						percentile(50) / 1e6, percentile(90) / 1e6,
+						percentile(99) / 1e6,
+						frameNanos[frameNanos.length - 1] / 1e6));
+			}
+			if (droppedFrames >= 0) {
+				sb.append("  frames dropped by renderer: ").append(
+						droppedFrames).append('\n');
+			}
+			if (allocatedPerFrame >= 0) {
+				sb.append(String.format(Locale.US,
+						"  allocated per frame: %.0f bytes%n",
+						allocatedPerFrame));
+			} else {
+				sb.append("  allocated per frame: unavailable on this VM\n");
+			}
+			if (allocatingFrames >= 0) {
+				sb.append(String.format(Locale.US,
+						"  frames that allocated: %d (max %d bytes)%n",
+						allocatingFrames, maxFrameAllocation));
+			}
+			return sb.toString();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		SceneGenerator scene = new SceneGenerator();
+		int frames = 600, warmup = -1, staticCount = 100, animatedCount = 0;
+		boolean threaded = false, log = false, profile = false;
+		boolean checkAlloc = false;
+		double capacity = 0;
+		String traceFile = null;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-static".equals(arg)) {
+				staticCount = Integer.parseInt(args[++i]);
+			} else if ("-animated".equals(arg)) {
+				animatedCount = Integer.parseInt(args[++i]);
+			} else if ("-keyframes".equals(arg)) {
+				scene.setKeyframes(Integer.parseInt(args[++i]));
+			} else if ("-verts".equals(arg)) {
+				scene.setVerts(Integer.parseInt(args[++i]));
+			} else if ("-materials".equals(arg)) {
+				scene.setMaterials(args[++i]);
+			} else if ("-seed".equals(arg)) {
+				scene.setSeed(Long.parseLong(args[++i]));
+			} else if ("-frames".equals(arg)) {
+				frames = Integer.parseInt(args[++i]);
+			} else if ("-warmup".equals(arg)) {
+				warmup = Integer.parseInt(args[++i]);
+			} else if ("-threaded".equals(arg)) {
+				threaded = true;
+			} else if ("-workers".equals(arg)) {
+				final int n = Integer.parseInt(args[++i]);
+				workers = (n > 0) ? new WorkerPool(n) : null;
+			} else if ("-capacity".equals(arg)) {
+				capacity = Double.parseDouble(args[++i]);
+			} else if ("-trace".equals(arg)) {
+				traceFile = args[++i];
+			} else if ("-profile".equals(arg)) {
+				profile = true;
+			} else if ("-log".equals(arg)) {
+				log = true;
+			} else if ("-checkalloc".equals(arg)) {
+				checkAlloc = true;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if (warmup < 0) {
+			warmup = checkAlloc ? CHECK_ALLOC_WARMUP : 300;
+		}
+		if (frames < 1 || warmup < 0) {
+			throw new IllegalArgumentException("Invalid frame counts.");
+		}
+		if (checkAlloc && (threaded || capacity > 0)) {
+			throw new IllegalArgumentException(
+					"-checkalloc cannot be used with -threaded or -capacity.");
+		}
+		if (checkAlloc && allocatedBytes(threadIds(Thread.currentThread())) < 0) {
+			throw new IllegalStateException(
+					"This VM cannot measure allocation.");
+		}
+		scene.setStaticObjects(staticCount).setAnimatedObjects(animatedCount);
+
+		if (!log) {
+			Log.setSink(new Log.Sink() {
+				@Override
+				public void println(int priority, String tag, String msg,
+						Throwable tr) {
+				}
+			});
+		}
+
+		if (capacity > 0) {
+			findCapacity(scene, animatedCount > 0, staticCount, capacity,
+					frames, warmup);
+			return;
+		}
+		final Report report = threaded ? runThreaded(scene, frames, warmup,
+				profile, traceFile != null) : runSync(scene, frames, warmup,
+				profile, traceFile != null, checkAlloc);
+		System.out.print(report);
+		if (workers != null) {
+			printUtilisation(report.totalNanos);
+		}
+		if (traceFile != null) {
+			Writer out = new FileWriter(traceFile);
+			try {
+				Tracer.writeJson(out);
+			} finally {
+				out.close();
+			}
+			System.out.println("  trace written to " + traceFile);
+		}
+		if (report.profiler != null) {
+			System.out.println();
+			report.profiler.writeCsv(new OutputStreamWriter(System.out));
+		}
+		if (report.allocatingFrames > 0) {
+			System.out.println("FAILED: " + report.allocatingFrames
+					+ " frames allocated after warming up.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs <code>frames</code> frames synchronously, after
+	 * <code>warmup</code> unmeasured frames. If <code>checkAlloc</code> is
+	 * true, each frame is also drawn by a GameRenderer, and the allocation of
+	 * each measured frame is counted as well.
+	 */
+	static Report runSync(SceneGenerator scene, int frames, int warmup,
+			boolean profile, boolean trace, boolean checkAlloc) {
+		scene.configureBuffers();
+		DataPipe pipe = new DataPipe();
+		Engine engine = createEngine(pipe, scene, profile, frames);
+		final GameRenderer renderer = checkAlloc ? createRenderer(pipe) : null;
+		try {
+			long time = 0;
+			for (int i = 0; i < warmup; i++) {
+				time += FRAME_MILLIS;
+				engine.runFrame(time);
+				retrieveFrame(pipe, renderer);
+			}
+			if (profile) {
+				engine.getProfiler().reset();
+			}
+			if (workers != null) {
+				workers.resetCounters();
+			}
+			if (trace) {
+				Tracer.start(Tracer.DEFAULT_CAPACITY);
+			}
+
+			// The frames run on this thread and the workers
+			final long[] threads = threadIds(Thread.currentThread());
+			final long[] frameNanos = new long[frames];
+			// What measuring one frame's allocation allocates by itself
+			final long overhead = checkAlloc ? allocationOverhead(threads) : 0;
+			int allocatingFrames = 0;
+			long maxFrameAllocation = 0;
+			final long allocStart = allocatedBytes(threads);
+			final long start = System.nanoTime();
+			long last = start;
+			for (int i = 0; i < frames; i++) {
+				final long frameAlloc = checkAlloc ? allocatedBytes(threads) : 0;
+				time += FRAME_MILLIS;
+				engine.runFrame(time);
+				retrieveFrame(pipe, renderer);
+				if (checkAlloc) {
+					final long bytes = allocatedBytes(threads) - frameAlloc
+							- overhead;
+					if (bytes > 0) {
+						allocatingFrames++;
+						maxFrameAllocation = Math.max(maxFrameAllocation,
+								bytes);
+					}
+				}
+				final long now = System.nanoTime();
+				frameNanos[i] = now - last;
+				last = now;
+			}
+			final long allocEnd = allocatedBytes(threads);
+			Tracer.stop();
+
+			Report report = new Report();
+			report.scene = scene.toString() + workersLabel();
+			report.profiler = engine.getProfiler();
+			report.frames = frames;
+			report.totalNanos = last - start;
+			Arrays.sort(frameNanos);
+			report.frameNanos = frameNanos;
+			report.animatedVerts = scene.getAnimatedVerts();
+			if (allocStart >= 0 && allocEnd >= 0) {
+				report.allocatedPerFrame = (double) (allocEnd - allocStart)
+						/ frames;
+			}
+			if (checkAlloc) {
+				report.allocatingFrames = allocatingFrames;
+				report.maxFrameAllocation = maxFrameAllocation;
+			}
+			return report;
+		} finally {
+			pipe.close();
+		}
+	}
+
+	/**
+	 * Runs the Engine on its own thread, in real time, with a
+	 * {@link HeadlessRenderer}, until <code>frames</code> frames have been
+	 * retrieved after <code>warmup</code> unmeasured frames.
+	 */
+	static Report runThreaded(SceneGenerator scene, int frames, int warmup,
+			boolean profile, boolean trace) throws InterruptedException {
+		scene.configureBuffers();
+		DataPipe pipe = new DataPipe();
+		Engine engine = createEngine(pipe, scene, profile, frames);
+		HeadlessRenderer renderer = new HeadlessRenderer(pipe);
+		try {
+			renderer.start();
+			engine.start();
+			while (renderer.getFrameCount() < warmup) {
+				Thread.sleep(1);
+			}
+			if (profile) {
+				engine.getProfiler().reset();
+			}
+			if (workers != null) {
+				workers.resetCounters();
+			}
+			if (trace) {
+				Tracer.start(Tracer.DEFAULT_CAPACITY);
+			}
+			final long firstFrame = renderer.getFrameCount();
+			final long dropped = renderer.getDroppedFrames();
+			final long[] threads = threadIds(engine);
+			final long allocStart = allocatedBytes(threads);
+			final long start = System.nanoTime();
+			while (renderer.getFrameCount() < firstFrame + frames) {
+				Thread.sleep(1);
+			}
+			final long end = System.nanoTime();
+			final long allocEnd = allocatedBytes(threads);
+			Tracer.stop();
+			final long measured = renderer.getFrameCount() - firstFrame;
+
+			Report report = new Report();
+			report.scene = scene.toString() + workersLabel() + " threaded";
+			report.profiler = engine.getProfiler();
+			report.frames = (int) measured;
+			report.totalNanos = end - start;
+			report.droppedFrames = renderer.getDroppedFrames() - dropped;
+			report.animatedVerts = scene.getAnimatedVerts();
+			if (allocStart >= 0 && allocEnd >= 0) {
+				// Every published frame counts, including dropped ones.
+				report.allocatedPerFrame = (double) (allocEnd - allocStart)
+						/ (measured + report.droppedFrames);
+			}
+			return report;
+		} finally {
+			engine.end();
+			renderer.end();
+			engine.join();
+			renderer.join();
+			pipe.close();
+		}
+	}
+
+	/**
+	 * Searches for the largest number of animated (or static) objects whose
+	 * p99 frame time fits in the frame budget of <code>fps</code>, printing
+	 * each trial.
+	 */
+	static int findCapacity(SceneGenerator scene, boolean animated,
+			int staticCount, double fps, int frames, int warmup) {
+		final long budget = (long) (1e9 / fps);
+		System.out.println(String.format(Locale.US,
+				"Finding capacity at %.1f fps (budget %.3f ms at p99)", fps,
+				budget / 1e6));
+		int good = 0, bad = -1, n = 1;
+		while (bad < 0 || bad - good > Math.max(1, good / 50)) {
+			if (animated) {
+				scene.setAnimatedObjects(n);
+			} else {
+				scene.setStaticObjects(n);
+			}
+			Report r = runSync(scene, frames, warmup, false, false, false);
+			final boolean fits = r.percentile(99) <= budget;
+			System.out.println(String.format(Locale.US,
+					"  %6d objects: p99 %.3f ms %s", n,
+					r.percentile(99) / 1e6, fits ? "ok" : "over budget"));
+			if (fits) {
+				good = n;
+			} else {
+				bad = n;
+			}
+			if (n >= MAX_OBJECTS && fits) {
+				break; // Plenty.
+			}
+			n = (bad < 0) ? n * 2 : (good + bad) / 2;
+			if (n == good) {
+				break;
+			}
+		}
+		if (animated) {
+			scene.setAnimatedObjects(good);
+		} else {
+			scene.setStaticObjects(good);
+		}
+		System.out.println("Capacity: " + good + " "
+				+ (animated ? "animated" : "static") + " objects ("
+				+ scene.getAnimatedVerts() + " animated verts) with "
+				+ (animated ? staticCount + " static objects" : "no animation"));
+		return good;
+	}
+
+	/**
+	 * Prints how busy each thread of the WorkerPool was while the frames were
+	 * measured, out of <code>totalNanos</code>.
+	 */
+	private static void printUtilisation(long totalNanos) {
+		final int threads = workers.getThreadCount();
+		for (int i = 0; i <= threads; i++) {
+			System.out.println(String.format(Locale.US,
+					"  %-8s busy %5.1f%%  %8d jobs  %8d stolen",
+					(i < threads) ? "worker " + i : "engine",
+					100.0 * workers.getBusyNanos(i) / totalNanos,
+					workers.getJobCount(i), workers.getStealCount(i)));
+		}
+	}
+
+	/**
+	 * Creates a GameRenderer that draws on a {@link NullGL}, with placeholder
+	 * programs for the materials that {@link Meshes} uses.
+	 */
+	private static GameRenderer createRenderer(DataPipe pipe) {
+		GL.set(new NullGL());
+		ShaderLib.initWithoutContext();
+		for (int i = 0; i < 2; i++) {
+			final Material mtl = Meshes.material("mixed", i);
+			ShaderLib.addProgram(mtl.getProgramName(), "", "");
+			if (mtl.getInstancedProgramName() != null) {
+				ShaderLib.addProgram(mtl.getInstancedProgramName(), "", "");
+			}
+		}
+		GameRenderer renderer = new GameRenderer(pipe, 1, 100);
+		renderer.onSurfaceCreated(null, null);
+		renderer.onSurfaceChanged(null, 800, 480);
+		return renderer;
+	}
+
+	/**
+	 * Draws the latest frame with <code>renderer</code>, or just retrieves it
+	 * from <code>pipe</code> if <code>renderer</code> is null.
+	 */
+	private static void retrieveFrame(DataPipe pipe, GameRenderer renderer) {
+		if (renderer != null) {
+			renderer.onDrawFrame(null);
+		} else {
+			pipe.retrieveData();
+		}
+	}
+
+	private static String workersLabel() {
+		return (workers != null) ? " workers=" + workers.getThreadCount() : "";
+	}
+
+	private static Engine createEngine(DataPipe pipe, SceneGenerator scene,
+			boolean profile, int frames) {
+		Camera cam = new Camera();
+		cam.set(0, 0, 10, 0, 0, 0, 0, 1, 0);
+		Engine engine = new Engine(pipe, cam);
+		engine.setWorkerPool(workers);
+		if (profile) {
+			engine.setProfiler(new FrameProfiler(Engine.PHASE_NAMES, frames));
+		}
+		engine.addAllObjects(scene.generate());
+		return engine;
+	}
+
+	/**
+	 * @return The IDs of <code>thread</code> and of the threads of the
+	 *         WorkerPool, if there is one, which run the Engine's frames
+	 *         between them.
+	 */
+	private static long[] threadIds(Thread thread) {
+		final int n = (workers != null) ? workers.getThreadCount() : 0;
+		final long[] ids = new long[n + 1];
+		ids[0] = thread.getId();
+		for (int i = 0; i < n; i++) {
+			ids[i + 1] = workers.getThreadId(i);
+		}
+		return ids;
+	}
+
+	/**
+	 * @return The total number of bytes allocated by the given threads, or
+	 *         -1 if the VM cannot measure it.
+	 */
+	private static long allocatedBytes(long[] threadIds) {
+		final ThreadMXBean bean = THREADS;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+			if (hotspot.isThreadAllocatedMemorySupported()
+					&& hotspot.isThreadAllocatedMemoryEnabled()) {
+				long total = 0;
+				for (int i = 0; i < threadIds.length; i++) {
+					total += hotspot.getThreadAllocatedBytes(threadIds[i]);
+				}
+				return total;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Measures an allocation-free section of the given threads enough times
+	 * that the measurement itself has been compiled (while it is interpreted
+	 * or being recompiled, it can allocate).
+	 *
+	 * @return The number of bytes that the measurement reports by itself,
+	 *         which is subtracted from each frame's measurement.
+	 */
+	private static long allocationOverhead(long[] threadIds) {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 100000; i++) {
+			final long start = allocatedBytes(threadIds);
+			overhead = Math.min(overhead, allocatedBytes(threadIds) - start);
+		}
+		return overhead;
+	}
+}
@@ -0,0 +1,39 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.Random;
+
+import com.supermercerbros.gameengine.util.IPO;
+
+/**
+ * Measures {@link IPO#mesh(float[], float[], float[], double)}, the keyframe
+ * interpolation used by mesh animations.
+ */
+public class IpoMeshBenchmark extends Benchmark {
+	private float[] frame, start, end;
+	private double point;
+
+	public IpoMeshBenchmark() {
+		super("ipo.mesh");
+		param("verts", "64", "1024", "16384");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		Random random = new Random(1);
+		int side = Meshes.side(p.getInt("verts"));
+		start = Meshes.gridVerts(side, random);
+		end = Meshes.gridVerts(side, random);
+		frame = new float[start.length];
+		point = 0;
+	}
+
+	@Override
+	public int run() {
+		point += 0.01;
+		if (point > 1.0) {
+			point = 0;
+		}
+		IPO.mesh(frame, start, end, point);
+		return Float.floatToRawIntBits(frame[0]);
+	}
+}
@@ -0,0 +1,39 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import com.supermercerbros.gameengine.objects.GameObject;
+import com.supermercerbros.gameengine.objects.Material;
+
+/**
+ * Measures <code>Material.loadObjectToVBO()</code> (and so
+ * <code>loadArrayToVbo()</code>) for one object into a direct buffer, as the
+ * Engine does every frame.
+ */
+public class LoadToVboBenchmark extends Benchmark {
+	private GameObject object;
+	private Material mtl;
+	private FloatBuffer vbo;
+
+	public LoadToVboBenchmark() {
+		super("material.loadToVbo");
+		param("verts", "64", "1024", "16384");
+		param("materials", "basic", "textured");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		mtl = Meshes.material(p.get("materials"), 0);
+		object = Meshes.object(p.getInt("verts"), mtl, new Random(1));
+		vbo = ByteBuffer.allocateDirect(object.verts.length / 3 * 8 * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	@Override
+	public int run() {
+		return mtl.loadObjectToVBO(object, vbo, 0);
+	}
+}
@@ -0,0 +1,39 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.Random;
+
+import com.supermercerbros.gameengine.animation.MeshAnimation;
+import com.supermercerbros.gameengine.objects.AnimatedMeshObject;
+
+/**
+ * Measures <code>AnimatedMeshObject.draw()</code>, which finds the current
+ * keyframes with {@link MeshAnimation#getFrame}, interpolates between them,
+ * and recalculates normals.
+ */
+public class MeshAnimationBenchmark extends Benchmark {
+	private static final long DURATION = 1000;
+	private static final long FRAME_MILLIS = 16;
+
+	private AnimatedMeshObject object;
+	private long time;
+
+	public MeshAnimationBenchmark() {
+		super("animation.getFrame");
+		param("verts", "64", "1024");
+		param("keyframes", "2", "16");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		object = Meshes.animated(p.getInt("verts"), p.getInt("keyframes"),
+				DURATION, Meshes.material("basic", 0), new Random(1));
+		time = 0;
+	}
+
+	@Override
+	public int run() {
+		time += FRAME_MILLIS;
+		object.draw(time);
+		return Float.floatToRawIntBits(object.verts[2]);
+	}
+}
@@ -0,0 +1,216 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.supermercerbros.gameengine.animation.Keyframe;
+import com.supermercerbros.gameengine.animation.MeshAnimation;
+import com.supermercerbros.gameengine.engine.Texture;
+import com.supermercerbros.gameengine.objects.AnimatedMeshObject;
+import com.supermercerbros.gameengine.objects.BasicMaterial;
+import com.supermercerbros.gameengine.objects.GameObject;
+import com.supermercerbros.gameengine.objects.Material;
+import com.supermercerbros.gameengine.objects.TexturedMaterial;
+
+/**
+ * Builds deterministic test geometry for benchmarks. Every mesh is a square
+ * grid of vertices with slightly jittered heights, so that the same
+ * parameters and seed always produce the same data.
+ */
+public class Meshes {
+	/**
+	 * A Texture that never loads anything, for using TexturedMaterial without
+	 * Android.
+	 */
+	static class NullTexture extends Texture {
+		@Override
+		protected void load() {
+		}
+	}
+
+	private static final BasicMaterial BASIC = new BasicMaterial();
+	private static final TexturedMaterial TEXTURED = new TexturedMaterial(
+			new NullTexture());
+
+	private Meshes() {
+	} // This class should never be instantiated
+
+	/**
+	 * Returns the number of vertices along each side of the grid used for a
+	 * mesh of about <code>verts</code> vertices.
+	 */
+	public static int side(int verts) {
+		int side = (int) Math.ceil(Math.sqrt(verts));
+		if (side < 2) {
+			side = 2;
+		}
+		if (side * side > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many vertices: " + verts);
+		}
+		return side;
+	}
+
+	public static float[] gridVerts(int side, Random random) {
+		float[] verts = new float[side * side * 3];
+		for (int y = 0; y < side; y++) {
+			for (int x = 0; x < side; x++) {
+				int i = (y * side + x) * 3;
+				verts[i] = (float) x / (side - 1) - 0.5f;
+				verts[i + 1] = (float) y / (side - 1) - 0.5f;
+				verts[i + 2] = random.nextFloat() * 0.05f;
+			}
+		}
+		return verts;
+	}
+
+	public static short[] gridIndices(int side) {
+		short[] indices = new short[(side - 1) * (side - 1) * 6];
+		int i = 0;
+		for (int y = 0; y < side - 1; y++) {
+			for (int x = 0; x < side - 1; x++) {
+				short a = (short) (y * side + x);
+				short b = (short) (a + 1);
+				short c = (short) (a + side);
+				short d = (short) (c + 1);
+				indices[i++] = a;
+				indices[i++] = b;
+				indices[i++] = c;
+				indices[i++] = b;
+				indices[i++] = d;
+				indices[i++] = c;
+			}
+		}
+		return indices;
+	}
+
+	/**
+	 * Returns the Material to use for the <code>index</code>th object of a
+	 * scene.
+	 *
+	 * @param mix
+	 *            "basic", "textured", or "mixed" (alternating).
+	 * @param index
+	 *            The index of the object.
+	 */
+	public static Material material(String mix, int index) {
+		if ("basic".equals(mix)) {
+			return BASIC;
+		} else if ("textured".equals(mix)) {
+			return TEXTURED;
+		} else if ("mixed".equals(mix)) {
+			return (index % 2 == 0) ? BASIC : TEXTURED;
+		}
+		throw new IllegalArgumentException("Unknown material mix: " + mix);
+	}
+
+	/**
+	 * Returns the per-vertex material data (colors or UVs) that
+	 * <code>mtl</code> expects for a mesh of <code>count</code> vertices.
+	 */
+	public static float[] materialData(Material mtl, int count, Random random) {
+		final int size = (mtl instanceof TexturedMaterial) ? 2 : 3;
+		float[] data = new float[count * size];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextFloat();
+		}
+		return data;
+	}
+
+	/**
+	 * Builds a GameObject with about <code>verts</code> vertices.
+	 */
+	public static GameObject object(int verts, Material mtl, Random random) {
+		int side = side(verts);
+		return new GameObject(gridVerts(side, random), gridIndices(side),
+				materialData(mtl, side * side, random), null, mtl, null);
+	}
+
+	/**
+	 * Builds an AnimatedMeshObject with about <code>verts</code> vertices
+	 * and a looping animation of <code>keyframes</code> keyframes, which
+	 * starts at time 0 and lasts <code>duration</code> milliseconds.
+	 */
+	public static AnimatedMeshObject animated(int verts, int keyframes,
+			long duration, Material mtl, Random random) {
+		int side = side(verts);
+		AnimatedMeshObject object = new AnimatedMeshObject(gridVerts(side,
+				random), gridIndices(side), materialData(mtl, side * side,
+				random), null, mtl, null);
+		object.setAnimation(animation(side, keyframes, random), 0, duration,
+				0);
+		return object;
+	}
+
+	/**
+	 * Builds a MeshAnimation for a grid of <code>side * side</code> vertices.
+	 */
+	public static MeshAnimation animation(int side, int keyframes,
+			Random random) {
+		ArrayList<Keyframe> frames = new ArrayList<Keyframe>(keyframes);
+		float[] times = new float[keyframes];
+		for (int i = 0; i < keyframes; i++) {
+			frames.add(new Keyframe(gridVerts(side, random)));
+			times[i] = (float) i / keyframes;
+		}
+		return new MeshAnimation(frames, times, "benchmark");
+	}
+
+	/**
+	 * Encodes a grid mesh of about <code>verts</code> vertices in the Sch3D
+	 * version 1 format.
+	 *
+	 * @param textured
+	 *            Whether to include UV coordinates.
+	 * @param keyframes
+	 *            The number of keyframes of the single animation to include,
+	 *            or 0 for none.
+	 */
+	public static byte[] sch3d(int verts, boolean textured, int keyframes,
+			Random random) {
+		final int side = side(verts);
+		final int count = side * side;
+		final short[] indices = gridIndices(side);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeShort(1);
+			out.writeByte((textured ? 1 : 0) | (keyframes > 0 ? 2 : 0));
+			out.writeShort(indices.length / 3);
+			out.writeShort(count);
+			for (short index : indices) {
+				out.writeShort(index);
+			}
+			writeFloats(out, gridVerts(side, random));
+			out.writeShort(0); // No doubles
+			if (textured) {
+				for (int i = 0; i < count * 2; i++) {
+					out.writeFloat(random.nextFloat());
+				}
+			}
+			if (keyframes > 0) {
+				out.writeByte(1);
+				out.writeUTF("anim");
+				out.writeShort(keyframes);
+				for (int i = 0; i < keyframes; i++) {
+					out.writeShort(i);
+					writeFloats(out, gridVerts(side, random));
+				}
+			}
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// ByteArrayOutputStream never throws.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeFloats(DataOutputStream out, float[] values)
+			throws IOException {
+		for (float f : values) {
+			out.writeFloat(f);
+		}
+	}
+}
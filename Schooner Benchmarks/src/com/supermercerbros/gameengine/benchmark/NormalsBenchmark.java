@@ -0,0 +1,31 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.Random;
+
+import com.supermercerbros.gameengine.engine.Normals;
+import com.supermercerbros.gameengine.objects.GameObject;
+
+/**
+ * Measures {@link Normals#calculate(GameObject)}, which animated objects call
+ * every frame.
+ */
+public class NormalsBenchmark extends Benchmark {
+	private GameObject object;
+
+	public NormalsBenchmark() {
+		super("normals.calculate");
+		param("verts", "64", "1024", "16384");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		object = Meshes.object(p.getInt("verts"), Meshes.material("basic", 0),
+				new Random(1));
+	}
+
+	@Override
+	public int run() {
+		Normals.calculate(object);
+		return Float.floatToRawIntBits(object.normals[0]);
+	}
+}
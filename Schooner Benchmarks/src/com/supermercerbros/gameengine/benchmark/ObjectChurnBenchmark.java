@@ -0,0 +1,74 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.Random;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.engine.Camera;
+import com.supermercerbros.gameengine.engine.DataPipe;
+import com.supermercerbros.gameengine.engine.Engine;
+import com.supermercerbros.gameengine.objects.GameObject;
+
+/**
+ * Measures removing and re-adding objects in an Engine, as happens when
+ * projectiles are spawned and despawned. Each operation removes
+ * <code>churn</code> objects (chosen at random) and adds the same number of
+ * spare objects, without running a frame.
+ */
+public class ObjectChurnBenchmark extends Benchmark {
+	private Engine engine;
+	private GameObject[] live;
+	private GameObject[] spare;
+	private Random random;
+	private int churn;
+
+	public ObjectChurnBenchmark() {
+		super("engine.churn");
+		param("objects", "100", "1000", "10000");
+		param("churn", "1", "100");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		final int objects = p.getInt("objects");
+		churn = p.getInt("churn");
+		if (churn > objects) {
+			throw new IllegalArgumentException("churn > objects");
+		}
+		Schooner3D.maxObjects = objects + churn;
+		Schooner3D.vboSize = 1024;
+		Schooner3D.iboSize = 1024;
+
+		Camera cam = new Camera();
+		cam.set(0, 0, 10, 0, 0, 0, 0, 1, 0);
+		engine = new Engine(new DataPipe(), cam);
+		random = new Random(objects);
+		live = new GameObject[objects];
+		for (int i = 0; i < objects; i++) {
+			live[i] = Meshes.object(4, Meshes.material("basic", i), random);
+			engine.addObject(live[i]);
+		}
+		spare = new GameObject[churn];
+		for (int i = 0; i < churn; i++) {
+			spare[i] = Meshes.object(4, Meshes.material("basic", i), random);
+		}
+	}
+
+	@Override
+	public int run() {
+		for (int i = 0; i < churn; i++) {
+			final int k = random.nextInt(live.length);
+			final GameObject removed = live[k];
+			engine.removeObject(removed);
+			live[k] = spare[i];
+			engine.addObject(spare[i]);
+			spare[i] = removed;
+		}
+		return live[0].getHandle();
+	}
+
+	@Override
+	public void tearDown() {
+		engine = null;
+		live = spare = null;
+	}
+}
@@ -0,0 +1,56 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One combination of parameter values for a {@link Benchmark}.
+ */
+public class Params {
+	private final LinkedHashMap<String, String> values;
+
+	Params(LinkedHashMap<String, String> values) {
+		this.values = values;
+	}
+
+	/**
+	 * @param key
+	 *            The name of the parameter.
+	 * @return The value of the parameter.
+	 * @throws IllegalArgumentException
+	 *             If the parameter has no value.
+	 */
+	public String get(String key) {
+		String value = values.get(key);
+		if (value == null) {
+			throw new IllegalArgumentException("No value for parameter \""
+					+ key + "\"");
+		}
+		return value;
+	}
+
+	public int getInt(String key) {
+		try {
+			return Integer.parseInt(get(key));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter \"" + key
+					+ "\" is not an integer: " + get(key));
+		}
+	}
+
+	/**
+	 * @return The values as <code>key=value</code> pairs separated by
+	 *         spaces, in declaration order.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> e : values.entrySet()) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(e.getKey()).append('=').append(e.getValue());
+		}
+		return sb.toString();
+	}
+}
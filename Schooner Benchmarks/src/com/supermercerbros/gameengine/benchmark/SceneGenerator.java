@@ -0,0 +1,150 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.objects.GameObject;
+
+/**
+ * Builds synthetic scenes of static and animated objects for load testing.
+ * The same settings always produce the same scene.
+ */
+public class SceneGenerator {
+	private int staticObjects = 100;
+	private int animatedObjects = 0;
+	private int keyframes = 2;
+	private int verts = 64;
+	private long animationMillis = 1000;
+	private String materials = "basic";
+	private long seed = 1;
+
+	/**
+	 * @param count
+	 *            The number of static GameObjects to generate.
+	 */
+	public SceneGenerator setStaticObjects(int count) {
+		this.staticObjects = count;
+		return this;
+	}
+
+	/**
+	 * @param count
+	 *            The number of AnimatedMeshObjects to generate.
+	 */
+	public SceneGenerator setAnimatedObjects(int count) {
+		this.animatedObjects = count;
+		return this;
+	}
+
+	/**
+	 * @param keyframes
+	 *            The number of keyframes in each animated object's animation.
+	 */
+	public SceneGenerator setKeyframes(int keyframes) {
+		if (keyframes < 1) {
+			throw new IllegalArgumentException("keyframes < 1");
+		}
+		this.keyframes = keyframes;
+		return this;
+	}
+
+	/**
+	 * @param verts
+	 *            The approximate number of vertices of each object. The
+	 *            actual number is rounded up to a square grid (see
+	 *            {@link Meshes#side(int)}).
+	 */
+	public SceneGenerator setVerts(int verts) {
+		Meshes.side(verts); // Validates the count
+		this.verts = verts;
+		return this;
+	}
+
+	/**
+	 * @param millis
+	 *            The length of one loop of each animation.
+	 */
+	public SceneGenerator setAnimationMillis(long millis) {
+		this.animationMillis = millis;
+		return this;
+	}
+
+	/**
+	 * @param materials
+	 *            "basic", "textured", or "mixed".
+	 */
+	public SceneGenerator setMaterials(String materials) {
+		Meshes.material(materials, 0); // Validates the name
+		this.materials = materials;
+		return this;
+	}
+
+	public SceneGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public int getObjectCount() {
+		return staticObjects + animatedObjects;
+	}
+
+	/**
+	 * @return The actual number of vertices of each object.
+	 */
+	public int getVertsPerObject() {
+		final int side = Meshes.side(verts);
+		return side * side;
+	}
+
+	/**
+	 * @return The number of vertices that are animated every frame.
+	 */
+	public int getAnimatedVerts() {
+		return animatedObjects * getVertsPerObject();
+	}
+
+	/**
+	 * Sets {@link Schooner3D#maxObjects}, {@link Schooner3D#vboSize} and
+	 * {@link Schooner3D#iboSize} so that the generated scene fits. This must
+	 * be called before the DataPipe and Engine are constructed.
+	 */
+	public void configureBuffers() {
+		final int side = Meshes.side(verts);
+		final int objects = Math.max(getObjectCount(), 1);
+		Schooner3D.maxObjects = objects;
+		// Largest stride is 8 floats (TexturedMaterial)
+		Schooner3D.vboSize = objects * side * side * 8 * 4;
+		Schooner3D.iboSize = objects * (side - 1) * (side - 1) * 6 * 2;
+	}
+
+	/**
+	 * @return A new list of newly generated GameObjects. Static objects come
+	 *         first.
+	 */
+	public List<GameObject> generate() {
+		final Random random = new Random(seed);
+		final int count = getObjectCount();
+		ArrayList<GameObject> objects = new ArrayList<GameObject>(count);
+		for (int i = 0; i < staticObjects; i++) {
+			objects.add(Meshes.object(verts, Meshes.material(materials, i),
+					random));
+		}
+		for (int i = staticObjects; i < count; i++) {
+			objects.add(Meshes.animated(verts, keyframes, animationMillis,
+					Meshes.material(materials, i), random));
+		}
+		return objects;
+	}
+
+	/**
+	 * @return The settings as <code>key=value</code> pairs.
+	 */
+	@Override
+	public String toString() {
+		return "static=" + staticObjects + " animated=" + animatedObjects
+				+ " keyframes=" + keyframes + " verts=" + getVertsPerObject()
+				+ " materials=" + materials + " seed=" + seed;
+	}
+}
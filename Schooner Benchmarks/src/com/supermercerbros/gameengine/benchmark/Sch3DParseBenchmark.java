@@ -0,0 +1,43 @@
+package com.supermercerbros.gameengine.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import com.supermercerbros.gameengine.objects.Material;
+import com.supermercerbros.gameengine.parsers.Sch3D;
+import com.supermercerbros.gameengine.util.AssetSource;
+
+/**
+ * Measures parsing a Sch3D model from memory, including building the
+ * GameObject (and calculating its normals).
+ */
+public class Sch3DParseBenchmark extends Benchmark {
+	private byte[] file;
+	private Material mtl;
+	private final AssetSource source = new AssetSource() {
+		@Override
+		public InputStream open(String fileName) {
+			return new ByteArrayInputStream(file);
+		}
+	};
+
+	public Sch3DParseBenchmark() {
+		super("sch3d.parse");
+		param("verts", "64", "1024");
+		param("keyframes", "0", "8");
+		param("materials", "basic", "textured");
+	}
+
+	@Override
+	public void setUp(Params p) {
+		mtl = Meshes.material(p.get("materials"), 0);
+		file = Meshes.sch3d(p.getInt("verts"), "textured".equals(p
+				.get("materials")), p.getInt("keyframes"), new Random(1));
+	}
+
+	@Override
+	public int run() throws Exception {
+		return Sch3D.parse(source, "benchmark.sch3d", mtl).verts.length;
+	}
+}